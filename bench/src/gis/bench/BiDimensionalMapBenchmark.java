@@ -0,0 +1,119 @@
+package gis.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gis.BiDimensionalMap;
+import gis.Coordinate;
+import gis.GridIndex;
+import gis.Rectangle;
+
+/**
+ * Measures the single cell operations of BiDimensionalMap and the operations over a slice of it, for each storage
+ * the operations cycle through the coordinates of the dataset, so that every invocation touches a different cell
+ * nearest searches from the corners of the slices, which are not points of the dataset, both over the map and over a grid index of it
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BiDimensionalMapBenchmark {
+
+	@Param({ "10000", "100000" })
+	public int pointCount;
+
+	@Param({ "UNIFORM", "CLUSTERED" })
+	public Datasets.Clustering clustering;
+
+	@Param({ "TREE", "DOUBLE", "CONCURRENT", "MORTON" })
+	public BiDimensionalMap.Storage storage;
+
+	/** the side of the square slices, a hundredth of the area of the data */
+	@Param({ "1000" })
+	public long sliceSide;
+
+	private Coordinate[] coordinates;
+	private Rectangle[] slices;
+	private BiDimensionalMap<Integer> map;
+	private BiDimensionalMap<Integer> growing;
+	private GridIndex<Integer> index;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		coordinates = Datasets.coordinates(pointCount, clustering, 42);
+		map = new BiDimensionalMap<>(storage);
+		for (int i = 0; i < coordinates.length; i++) {
+			map.getUpdater().setCoordinate(coordinates[i]).addValue(i).add();
+		}
+		index = GridIndex.of(map);
+		slices = new Rectangle[Math.min(coordinates.length, 1024)];
+		for (int i = 0; i < slices.length; i++) {
+			slices[i] = Datasets.square(coordinates[i], sliceSide);
+		}
+	}
+
+	/**
+	 * the map being added to starts empty on every iteration, and fills up with the dataset one point per invocation
+	 */
+	@Setup(Level.Iteration)
+	public void setUpIteration() {
+		growing = new BiDimensionalMap<>(storage);
+	}
+
+	@Benchmark
+	public boolean add() {
+		int i = next();
+		return growing.getUpdater().setCoordinate(coordinates[i]).addValue(i).add();
+	}
+
+	@Benchmark
+	public Object get() {
+		return map.get(coordinates[next()]);
+	}
+
+	@Benchmark
+	public BiDimensionalMap<Integer> slice() {
+		return map.slice(slices[next() % slices.length]);
+	}
+
+	@Benchmark
+	public long sliceCollectionSize() {
+		return map.slice(slices[next() % slices.length]).collectionSize();
+	}
+
+	@Benchmark
+	public long nearest() {
+		return map.nearest(slices[next() % slices.length].topRight(), 10).count();
+	}
+
+	@Benchmark
+	public long indexNearest() {
+		return index.nearest(slices[next() % slices.length].topRight(), 10).count();
+	}
+
+	@Benchmark
+	public long collectionSize() {
+		return map.collectionSize();
+	}
+
+	private int next() {
+		int i = next;
+		next = i + 1 == coordinates.length ? 0 : i + 1;
+		return i;
+	}
+}
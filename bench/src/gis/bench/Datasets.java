@@ -0,0 +1,137 @@
+package gis.bench;
+
+import java.math.BigDecimal;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import gis.Coordinate;
+import gis.InterestPoint;
+import gis.Rectangle;
+
+/**
+ * Builds the synthetic points and regions the benchmarks run on, all inside the square [0, EXTENT] x [0, EXTENT]
+ * the data only depends on its parameters and the seed, so every fork and every storage sees the same points
+ */
+public final class Datasets {
+
+	static final int EXTENT = 10000;
+	static final String[] MARKERS = { "a", "b", "c", "d" };
+
+	private static final int CLUSTERS = 16;
+
+	private Datasets() {
+	}
+
+	/**
+	 * how the points are spread over the square
+	 */
+	public enum Clustering {
+		/** evenly over the whole square */
+		UNIFORM,
+		/** around a few centres, so that many points share columns and cells */
+		CLUSTERED
+	}
+
+	/**
+	 * how the rectangles of a region are laid out
+	 */
+	public enum RegionShape {
+		/** tiles touching each other in a square grid over the middle of the square, one connected region */
+		GRID,
+		/** thin vertical strips with gaps between them, every rectangle its own component */
+		STRIPS,
+		/** a diagonal staircase of rectangles each touching the next, one long connected region */
+		STAIRCASE
+	}
+
+	/**
+	 * @param the number of coordinates, their spread and the seed
+	 * @return coordinates with one decimal place, repeated coordinates being likely when clustered
+	 */
+	static Coordinate[] coordinates(int count, Clustering clustering, long seed) {
+		Random random = new Random(seed);
+		double[][] centres = new double[CLUSTERS][2];
+		for (double[] centre : centres) {
+			centre[0] = random.nextDouble() * EXTENT;
+			centre[1] = random.nextDouble() * EXTENT;
+		}
+		Coordinate[] coordinates = new Coordinate[count];
+		for (int i = 0; i < count; i++) {
+			double x, y;
+			if (clustering == Clustering.UNIFORM) {
+				x = random.nextDouble() * EXTENT;
+				y = random.nextDouble() * EXTENT;
+			} else {
+				double[] centre = centres[random.nextInt(CLUSTERS)];
+				x = centre[0] + random.nextGaussian() * EXTENT / 50;
+				y = centre[1] + random.nextGaussian() * EXTENT / 50;
+			}
+			coordinates[i] = new Coordinate(tenths(x), tenths(y));
+		}
+		return coordinates;
+	}
+
+	/**
+	 * @param the coordinates of the points and the seed for their markers
+	 * @return an interest point at each coordinate with a marker from MARKERS
+	 */
+	static InterestPoint<String>[] interestPoints(Coordinate[] coordinates, long seed) {
+		Random random = new Random(seed);
+		@SuppressWarnings("unchecked")
+		InterestPoint<String>[] points = new InterestPoint[coordinates.length];
+		for (int i = 0; i < points.length; i++) {
+			points[i] = new InterestPoint<>(coordinates[i], MARKERS[random.nextInt(MARKERS.length)]);
+		}
+		return points;
+	}
+
+	/**
+	 * @param the layout and the number of rectangles, which is rounded up to a square number for GRID
+	 * @return non-overlapping rectangles with integer corners
+	 */
+	static Set<Rectangle> rectangles(RegionShape shape, int count) {
+		Set<Rectangle> rectangles = new HashSet<>();
+		switch (shape) {
+		case GRID:
+			int side = (int) Math.ceil(Math.sqrt(count));
+			long tile = Math.max(1, EXTENT / 2 / side);
+			for (int i = 0; i < side; i++) {
+				for (int j = 0; j < side; j++) {
+					rectangles.add(rectangle(EXTENT / 4 + i * tile, EXTENT / 4 + j * tile, EXTENT / 4 + (i + 1) * tile, EXTENT / 4 + (j + 1) * tile));
+				}
+			}
+			break;
+		case STRIPS:
+			long pitch = Math.max(2, EXTENT / count);
+			for (int i = 0; i < count; i++) {
+				rectangles.add(rectangle(i * pitch, EXTENT / 4, i * pitch + pitch / 2, EXTENT * 3 / 4));
+			}
+			break;
+		case STAIRCASE:
+			long step = Math.max(1, EXTENT / (count + 1));
+			for (int i = 0; i < count; i++) {
+				rectangles.add(rectangle(i * step, i * step, (i + 1) * step, (i + 2) * step));
+			}
+			break;
+		}
+		return rectangles;
+	}
+
+	/**
+	 * @param the centre of the square and its side
+	 * @return a square query rectangle, which may stick out of the data
+	 */
+	static Rectangle square(Coordinate centre, long side) {
+		BigDecimal half = BigDecimal.valueOf(side, 0).divide(BigDecimal.valueOf(2));
+		return new Rectangle(new Coordinate(centre.x().subtract(half), centre.y().subtract(half)), new Coordinate(centre.x().add(half), centre.y().add(half)));
+	}
+
+	private static Rectangle rectangle(long left, long bottom, long right, long top) {
+		return new Rectangle(new Coordinate(BigDecimal.valueOf(left), BigDecimal.valueOf(bottom)), new Coordinate(BigDecimal.valueOf(right), BigDecimal.valueOf(top)));
+	}
+
+	private static BigDecimal tenths(double value) {
+		return BigDecimal.valueOf(Math.round(Math.min(Math.max(value, 0), EXTENT) * 10), 1);
+	}
+}
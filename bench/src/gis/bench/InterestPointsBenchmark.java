@@ -0,0 +1,81 @@
+package gis.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gis.BiDimensionalMap;
+import gis.InterestPoint;
+import gis.InterestPoints;
+import gis.RectilinearRegion;
+
+/**
+ * Measures counting the points with a marker in a region, with each storage and each of the indexes build can add
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InterestPointsBenchmark {
+
+	@Param({ "10000", "100000" })
+	public int pointCount;
+
+	@Param({ "UNIFORM", "CLUSTERED" })
+	public Datasets.Clustering clustering;
+
+	@Param({ "GRID", "STRIPS", "STAIRCASE" })
+	public Datasets.RegionShape shape;
+
+	@Param({ "64" })
+	public int rectangleCount;
+
+	@Param({ "TREE", "DOUBLE", "CONCURRENT", "MORTON" })
+	public BiDimensionalMap.Storage storage;
+
+	@Param({ "NONE", "GRID_INDEX", "PREFIX_SUMS" })
+	public String index;
+
+	private InterestPoints<String> points;
+	private RectilinearRegion region;
+
+	@Setup(Level.Trial)
+	@SuppressWarnings("unchecked")
+	public void setUp() {
+		InterestPoints.Builder builder = new InterestPoints.Builder(storage);
+		for (InterestPoint<String> point : Datasets.interestPoints(Datasets.coordinates(pointCount, clustering, 42), 7)) {
+			builder.add(point);
+		}
+		if (index.equals("GRID_INDEX")) {
+			builder.setIndexed(true);
+		} else if (index.equals("PREFIX_SUMS")) {
+			builder.setPrefixSumMarkers(List.of(Datasets.MARKERS[0]));
+		}
+		points = builder.build();
+		region = RectilinearRegion.of(Datasets.rectangles(shape, rectangleCount));
+	}
+
+	@Benchmark
+	public long count() {
+		return points.count(region, Datasets.MARKERS[0]);
+	}
+
+	@Benchmark
+	public long parallelCount() {
+		return points.parallelCount(region, Datasets.MARKERS[0]);
+	}
+}
@@ -0,0 +1,59 @@
+package gis.bench;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gis.Rectangle;
+import gis.RectilinearRegion;
+
+/**
+ * Measures building a region, which checks it for overlapping rectangles, and finding its connected components
+ * isConnected keeps the number of components after its first call, so the components are timed instead, which is the work of the first call
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RectilinearRegionBenchmark {
+
+	@Param({ "16", "256", "4096" })
+	public int rectangleCount;
+
+	@Param({ "GRID", "STRIPS", "STAIRCASE" })
+	public Datasets.RegionShape shape;
+
+	private Set<Rectangle> rectangles;
+	private RectilinearRegion region;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		rectangles = Datasets.rectangles(shape, rectangleCount);
+		region = RectilinearRegion.of(rectangles);
+	}
+
+	@Benchmark
+	public RectilinearRegion of() {
+		return RectilinearRegion.of(rectangles);
+	}
+
+	@Benchmark
+	public List<Set<Rectangle>> connectedComponents() {
+		return region.connectedComponents();
+	}
+}
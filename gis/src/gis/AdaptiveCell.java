@@ -0,0 +1,253 @@
+package gis;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * The default collection of a cell, which changes its representation with its size: a single value is held inline, a few values in a small array searched linearly, and more in a HashSet
+ * a cell moves to a HashSet when it grows past ARRAY_MAX values, and back to an array when removals take it down to DEMOTE_MAX, so that a cell around the threshold does not switch back and forth
+ * the most common cell, holding one value, then costs one small object instead of a HashSet with its map, table and entry
+ * like HashSet, it allows null and is not safe for several writers
+ */
+final class AdaptiveCell<T> extends AbstractSet<T> {
+
+	/** the largest number of values kept in an array */
+	static final int ARRAY_MAX = 8;
+
+	/** the number of values at which a HashSet goes back to an array */
+	static final int DEMOTE_MAX = 4;
+
+	/**
+	 * the HashSet of a large cell, a class of its own so that it is never mistaken for a value held inline
+	 */
+	private static final class LargeSet<T> extends HashSet<T> {
+
+		private static final long serialVersionUID = 1L;
+
+		LargeSet(int capacity) {
+			super(capacity);
+		}
+	}
+
+	/** a LargeSet of the values, or else null if the cell is empty, the value if it holds one, and an Object[] of them otherwise */
+	private Object data;
+	private int size;
+
+	public int size() {
+		return size;
+	}
+
+	public boolean contains(Object o) {
+		if (data instanceof LargeSet<?> set) {
+			return set.contains(o);
+		}
+		if (size <= 1) {
+			return size == 1 && Objects.equals(data, o);
+		}
+		return indexOf((Object[]) data, o) >= 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	public boolean add(T value) {
+		if (data instanceof LargeSet<?> set) {
+			boolean added = ((LargeSet<T>) set).add(value);
+			size = set.size();
+			return added;
+		}
+		if (size == 0) {
+			data = value;
+			size = 1;
+			return true;
+		}
+		if (size == 1) {
+			if (Objects.equals(data, value)) {
+				return false;
+			}
+			data = new Object[] { data, value };
+			size = 2;
+			return true;
+		}
+		Object[] array = (Object[]) data;
+		if (indexOf(array, value) >= 0) {
+			return false;
+		}
+		if (size == ARRAY_MAX) {
+			LargeSet<T> set = promote(array, size, size + 1);
+			set.add(value);
+			data = set;
+		} else {
+			if (size == array.length) {
+				data = array = Arrays.copyOf(array, Math.min(ARRAY_MAX, size * 2));
+			}
+			array[size] = value;
+		}
+		size++;
+		return true;
+	}
+
+	/**
+	 * adds the values, moving to a HashSet sized for all of them at once if they will not fit in an array
+	 */
+	@SuppressWarnings("unchecked")
+	public boolean addAll(Collection<? extends T> values) {
+		if (data instanceof LargeSet || size + values.size() <= ARRAY_MAX) {
+			return super.addAll(values);
+		}
+		LargeSet<T> set = promote(size == 1 ? new Object[] { data } : (Object[]) data, size, size + values.size());
+		set.addAll(values);
+		int before = size;
+		data = set;
+		size = set.size();
+		return size != before;
+	}
+
+	public boolean remove(Object o) {
+		if (data instanceof LargeSet<?> set) {
+			if (!set.remove(o)) {
+				return false;
+			}
+			size = set.size();
+			if (size <= DEMOTE_MAX) {
+				demote(set);
+			}
+			return true;
+		}
+		if (size <= 1) {
+			if (size == 0 || !Objects.equals(data, o)) {
+				return false;
+			}
+			clear();
+			return true;
+		}
+		int index = indexOf((Object[]) data, o);
+		if (index < 0) {
+			return false;
+		}
+		removeAt(index);
+		return true;
+	}
+
+	public void clear() {
+		data = null;
+		size = 0;
+	}
+
+	/**
+	 * @return if the values are held in a HashSet rather than inline or in an array
+	 */
+	boolean isLarge() {
+		return data instanceof LargeSet;
+	}
+
+	@SuppressWarnings("unchecked")
+	public Iterator<T> iterator() {
+		if (data instanceof LargeSet<?> set) {
+			Iterator<T> iterator = ((LargeSet<T>) set).iterator();
+			return new Iterator<T>() {
+
+				public boolean hasNext() {
+					return iterator.hasNext();
+				}
+
+				public T next() {
+					return iterator.next();
+				}
+
+				/**
+				 * keeps the HashSet however small it gets, since it is being iterated
+				 */
+				public void remove() {
+					iterator.remove();
+					size = set.size();
+				}
+			};
+		}
+		return new Iterator<T>() {
+
+			private int next;
+			private boolean removable;
+
+			public boolean hasNext() {
+				return next < size;
+			}
+
+			public T next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				removable = true;
+				Object value = size == 1 ? data : ((Object[]) data)[next];
+				next++;
+				return (T) value;
+			}
+
+			/**
+			 * the values after the removed one move down, so that the next one is at the same index
+			 */
+			public void remove() {
+				if (!removable) {
+					throw new IllegalStateException();
+				}
+				removable = false;
+				removeAt(--next);
+			}
+		};
+	}
+
+	/**
+	 * helper
+	 * removes the value at the index, keeping the order of the others and holding the last one inline if it is alone
+	 */
+	private void removeAt(int index) {
+		if (size == 1) {
+			clear();
+			return;
+		}
+		Object[] array = (Object[]) data;
+		System.arraycopy(array, index + 1, array, index, size - index - 1);
+		array[--size] = null;
+		if (size == 1) {
+			data = array[0];
+		}
+	}
+
+	/**
+	 * helper
+	 * @return a HashSet of the first size values of the array, with room for the given number of values
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> LargeSet<T> promote(Object[] array, int size, int capacity) {
+		LargeSet<T> set = new LargeSet<>(Math.max(16, (int) (capacity / 0.75f) + 1));
+		for (int i = 0; i < size; i++) {
+			set.add((T) array[i]);
+		}
+		return set;
+	}
+
+	/**
+	 * helper
+	 * moves the values of a small HashSet to an array, or inline if there is only one
+	 */
+	private void demote(LargeSet<?> set) {
+		Object[] array = set.toArray(new Object[Math.max(ARRAY_MAX / 2, size)]);
+		data = size == 0 ? null : size == 1 ? array[0] : array;
+	}
+
+	/**
+	 * helper
+	 * @return the index of a value equal to o in the first size values of the array, or -1 if there is none
+	 */
+	private int indexOf(Object[] array, Object o) {
+		for (int i = 0; i < size; i++) {
+			if (Objects.equals(array[i], o)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,119 @@
+package gis;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.Test;
+
+public class AdaptiveCellTest {
+
+	private static AdaptiveCell<Integer> cell(int size) {
+		AdaptiveCell<Integer> cell = new AdaptiveCell<>();
+		for (int i = 0; i < size; i++) {
+			cell.add(i);
+		}
+		return cell;
+	}
+
+	//a cell moves to a HashSet on the value after ARRAY_MAX, and not on a value it already holds
+	@Test
+	public void testPromotion() {
+		AdaptiveCell<Integer> cell = cell(AdaptiveCell.ARRAY_MAX);
+		assertFalse(cell.isLarge());
+		assertFalse(cell.add(0));
+		assertFalse(cell.isLarge());
+		assertTrue(cell.add(AdaptiveCell.ARRAY_MAX));
+		assertTrue(cell.isLarge());
+		assertEquals(AdaptiveCell.ARRAY_MAX + 1, cell.size());
+		for (int i = 0; i <= AdaptiveCell.ARRAY_MAX; i++) {
+			assertTrue(cell.contains(i));
+		}
+	}
+
+	//a HashSet goes back to an array only once removals take it down to DEMOTE_MAX, and keeps its values
+	@Test
+	public void testDemotion() {
+		AdaptiveCell<Integer> cell = cell(AdaptiveCell.ARRAY_MAX + 1);
+		for (int i = AdaptiveCell.ARRAY_MAX; i > AdaptiveCell.DEMOTE_MAX; i--) {
+			assertTrue(cell.remove(i));
+			assertTrue(cell.isLarge());
+		}
+		assertFalse(cell.remove(-1));
+		assertTrue(cell.remove(AdaptiveCell.DEMOTE_MAX));
+		assertFalse(cell.isLarge());
+		assertEquals(Set.of(0, 1, 2, 3), new HashSet<>(cell));
+		assertTrue(cell.add(9));
+		assertTrue(cell.remove(0));
+		assertEquals(Set.of(1, 2, 3, 9), cell);
+	}
+
+	//addAll moves straight to a HashSet when the values will not fit in an array, counting only the new ones
+	@Test
+	public void testAddAll() {
+		AdaptiveCell<Integer> cell = cell(3);
+		assertTrue(cell.addAll(List.of(2, 3, 4)));
+		assertFalse(cell.isLarge());
+		assertEquals(5, cell.size());
+		assertFalse(cell.addAll(List.of(0, 1, 2, 3, 4, 0)));
+		assertTrue(cell.addAll(List.of(4, 5, 6, 7, 8, 8)));
+		assertTrue(cell.isLarge());
+		assertEquals(9, cell.size());
+		assertEquals(cell(9), new HashSet<>(cell));
+		AdaptiveCell<Integer> single = cell(1);
+		assertTrue(single.addAll(List.of(1, 2, 3, 4, 5, 6, 7, 8, 9)));
+		assertEquals(10, single.size());
+	}
+
+	//a single value is held inline, including null and values that are themselves arrays or sets
+	@Test
+	public void testInlineValues() {
+		AdaptiveCell<Object> cell = new AdaptiveCell<>();
+		assertFalse(cell.contains(null));
+		assertFalse(cell.remove(null));
+		assertTrue(cell.add(null));
+		assertTrue(cell.contains(null));
+		assertFalse(cell.add(null));
+		assertEquals(1, cell.size());
+		assertTrue(cell.remove(null));
+		assertTrue(cell.isEmpty());
+		Object[] array = { 1, 2 };
+		Set<Integer> set = new HashSet<>(Set.of(1, 2));
+		assertTrue(cell.add(array));
+		assertFalse(cell.contains(1));
+		assertTrue(cell.add(set));
+		assertEquals(2, cell.size());
+		assertTrue(cell.remove(array));
+		assertEquals(1, cell.size());
+		assertTrue(cell.contains(set));
+		assertSame(set, cell.iterator().next());
+	}
+
+	//removing through the iterator visits every value once in every representation, and a HashSet is kept while it is iterated
+	@Test
+	public void testIteratorRemove() {
+		for (int size : new int[] { 1, 2, AdaptiveCell.ARRAY_MAX, AdaptiveCell.ARRAY_MAX + 4 }) {
+			AdaptiveCell<Integer> cell = cell(size);
+			Set<Integer> seen = new HashSet<>();
+			Iterator<Integer> iterator = cell.iterator();
+			assertThrows(IllegalStateException.class, iterator::remove);
+			while (iterator.hasNext()) {
+				int value = iterator.next();
+				assertTrue(seen.add(value));
+				if (value % 2 == 0) {
+					iterator.remove();
+				}
+			}
+			assertThrows(NoSuchElementException.class, iterator::next);
+			assertEquals(size, seen.size());
+			assertEquals(size / 2, cell.size());
+			for (int value = 0; value < size; value++) {
+				assertEquals(value % 2 != 0, cell.contains(value));
+			}
+			cell.removeIf(value -> true);
+			assertTrue(cell.isEmpty());
+			assertTrue(cell.add(7));
+			assertEquals(Set.of(7), cell);
+		}
+	}
+}
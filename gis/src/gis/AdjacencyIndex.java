@@ -0,0 +1,126 @@
+package gis;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.function.Function;
+
+/**
+ * Finds which rectangles of a region are connected, two rectangles being connected when the top of one lies on the bottom of the other, or the right of one on the left of the other, and the two edges share at least a point
+ * the rectangles are sorted by each kind of edge, so that only rectangles with an edge on the same line are compared, and the connections are joined with union-find
+ * the rectangles must not overlap, so that the edges lying on one line are ordered the same way by their start and by their end
+ */
+final class AdjacencyIndex {
+
+	private final Rectangle[] rectangles;
+	private final int[] parent;
+
+	/**
+	 * @param the non-overlapping rectangles to be joined
+	 */
+	private AdjacencyIndex(Rectangle[] rectangles) {
+		this.rectangles = rectangles;
+		this.parent = new int[rectangles.length];
+		for (int i = 0; i < parent.length; i++) {
+			parent[i] = i;
+		}
+	}
+
+	/**
+	 * labels the connected components of the rectangles in O(n log n)
+	 * @param the non-overlapping rectangles
+	 * @return for each rectangle the number of its component, the components being numbered from 0 in the order their first rectangle appears
+	 */
+	static int[] components(Rectangle[] rectangles) {
+		AdjacencyIndex index = new AdjacencyIndex(rectangles);
+		index.join(Rectangle::top, Rectangle::bottom, Rectangle::left, Rectangle::right);
+		index.join(Rectangle::right, Rectangle::left, Rectangle::bottom, Rectangle::top);
+		int[] labels = new int[rectangles.length];
+		int[] labelOfRoot = new int[rectangles.length];
+		Arrays.fill(labelOfRoot, -1);
+		int count = 0;
+		for (int i = 0; i < rectangles.length; i++) {
+			int root = index.find(i);
+			if (labelOfRoot[root] < 0) {
+				labelOfRoot[root] = count++;
+			}
+			labels[i] = labelOfRoot[root];
+		}
+		return labels;
+	}
+
+	/**
+	 * helper
+	 * joins every rectangle whose edge lies on the opposite edge of another rectangle, walking the two sorted lists of edges line by line
+	 * @param the edge of the first rectangle, the opposite edge of the second, and the start and end of the edges along their line
+	 */
+	private void join(Function<Rectangle, BigDecimal> edge, Function<Rectangle, BigDecimal> opposite, Function<Rectangle, BigDecimal> start, Function<Rectangle, BigDecimal> end) {
+		Integer[] byEdge = sorted(edge, start);
+		Integer[] byOpposite = sorted(opposite, start);
+		int next = 0;
+		for (int i = 0; i < byEdge.length; ) {
+			BigDecimal line = edge.apply(rectangles[byEdge[i]]);
+			int lineEnd = i;
+			while (lineEnd < byEdge.length && edge.apply(rectangles[byEdge[lineEnd]]).compareTo(line) == 0) {
+				lineEnd++;
+			}
+			while (next < byOpposite.length && opposite.apply(rectangles[byOpposite[next]]).compareTo(line) < 0) {
+				next++;
+			}
+			int oppositeEnd = next;
+			while (oppositeEnd < byOpposite.length && opposite.apply(rectangles[byOpposite[oppositeEnd]]).compareTo(line) == 0) {
+				oppositeEnd++;
+			}
+			for (; i < lineEnd; i++) {
+				Rectangle rect = rectangles[byEdge[i]];
+				for (int k = firstEndingAfter(byOpposite, next, oppositeEnd, end, start.apply(rect)); k < oppositeEnd && start.apply(rectangles[byOpposite[k]]).compareTo(end.apply(rect)) <= 0; k++) {
+					union(byEdge[i], byOpposite[k]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * helper
+	 * @return the first position in [from, to) of the sorted edges whose end is not before value
+	 */
+	private int firstEndingAfter(Integer[] sorted, int from, int to, Function<Rectangle, BigDecimal> end, BigDecimal value) {
+		while (from < to) {
+			int mid = (from + to) >>> 1;
+			if (end.apply(rectangles[sorted[mid]]).compareTo(value) < 0) {
+				from = mid + 1;
+			} else {
+				to = mid;
+			}
+		}
+		return from;
+	}
+
+	/**
+	 * helper
+	 * @return the positions of the rectangles sorted by the line of the edge and then by where the edge starts
+	 */
+	private Integer[] sorted(Function<Rectangle, BigDecimal> edge, Function<Rectangle, BigDecimal> start) {
+		Integer[] order = new Integer[rectangles.length];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, Comparator.comparing((Integer i) -> edge.apply(rectangles[i])).thenComparing(i -> start.apply(rectangles[i])));
+		return order;
+	}
+
+	private int find(int i) {
+		while (parent[i] != i) {
+			parent[i] = parent[parent[i]];
+			i = parent[i];
+		}
+		return i;
+	}
+
+	private void union(int first, int second) {
+		int firstRoot = find(first), secondRoot = find(second);
+		if (firstRoot != secondRoot) {
+			parent[Math.max(firstRoot, secondRoot)] = Math.min(firstRoot, secondRoot);
+		}
+	}
+}
@@ -3,27 +3,33 @@ package gis;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
-import java.util.SortedMap;
-import java.util.TreeMap;
+import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Stream;
 
 /**
- * A 2D map used to maintain information about multiple landmarks in a geographical area organized as a SortedMap of SortedMaps
+ * A 2D map used to maintain information about multiple landmarks in a geographical area organized as a SortedMap of SortedMaps, or as sorted primitive arrays depending on its Storage
  */
 public final class BiDimensionalMap<T> {
 	
-	private final SortedMap<BigDecimal, SortedMap<BigDecimal, Collection<T>>> points = new TreeMap<>();
+	private final CellStore<T> points;
+	
+	/** the factory for the collections of new cells */
+	private final Supplier<Collection<T>> collectionFactory;
 	
 	/**
 	 * enters a new empty hash map in all the points of xCoord and yCoord
 	 * @param the collection of x and y coordinates
 	 */
 	BiDimensionalMap(Collection<BigDecimal> xCoord, Collection<BigDecimal> yCoord) {
+		this();
 		for (BigDecimal x : Objects.requireNonNull(xCoord)) {
 			for (BigDecimal y : Objects.requireNonNull(yCoord)) {
 				this.getUpdater().setCoordinate(new Coordinate(x, y)).set();
@@ -32,6 +38,36 @@ public final class BiDimensionalMap<T> {
 	}
 	
 	public BiDimensionalMap() {
+		this(Storage.TREE);
+	}
+	
+	/**
+	 * @param the storage used for the coordinates of the map
+	 */
+	public BiDimensionalMap(Storage storage) {
+		this(Objects.requireNonNull(storage).<T>create());
+	}
+	
+	/**
+	 * @param the storage used for the coordinates of the map and the factory for the collections of new cells, used by Updaters unless they are given another one
+	 */
+	public BiDimensionalMap(Storage storage, Supplier<Collection<T>> collectionFactory) {
+		this(Objects.requireNonNull(storage).<T>create(), Objects.requireNonNull(collectionFactory));
+	}
+	
+	/**
+	 * @param the store holding the cells of the map
+	 */
+	BiDimensionalMap(CellStore<T> points) {
+		this(points, points.collectionFactory());
+	}
+	
+	/**
+	 * @param the store holding the cells of the map and the factory for the collections of new cells
+	 */
+	private BiDimensionalMap(CellStore<T> points, Supplier<Collection<T>> collectionFactory) {
+		this.points = points;
+		this.collectionFactory = collectionFactory;
 	}
 
 	/**
@@ -40,9 +76,24 @@ public final class BiDimensionalMap<T> {
 	 */
 	public final void addEverywhere(T value) {
 		Objects.requireNonNull(value);
-		this.collectionList().forEach(col -> {
-			col.add(value);
-		});
+		this.forEachCell((x, y, values) -> values.add(value));
+	}
+	
+	/**
+	 * adds a batch of values in one pass, sorting them by their coordinates once and filling each cell with a single collection instead of going through an Updater per value
+	 * @param the values to be added and the function giving the coordinate of a value
+	 * @return if the map changed because of this call
+	 * @throws NullPointerException if a value or its coordinate is null
+	 */
+	@SuppressWarnings("unchecked")
+	public final boolean addAll(Collection<? extends T> values, Function<? super T, Coordinate> coordinate) {
+		Objects.requireNonNull(coordinate);
+		T[] batch = (T[]) Objects.requireNonNull(values).toArray();
+		Coordinate[] coordinates = new Coordinate[batch.length];
+		for (int i = 0; i < batch.length; i++) {
+			coordinates[i] = Coordinate.validate(coordinate.apply(Objects.requireNonNull(batch[i])));
+		}
+		return points.addAll(batch, coordinates, collectionFactory);
 	}
 	
 	/**
@@ -54,6 +105,20 @@ public final class BiDimensionalMap<T> {
 		return get(new Coordinate(x, y));
 	}
 	
+	/**
+	 * access the information about a specific location without building BigDecimal keys, which is direct in the DOUBLE storage
+	 * @param x and y coordinate
+	 * @return the collection at the given coordinate
+	 */
+	public final Collection<T> get(double x, double y) {
+		Metrics.Probe probe = Metrics.start(Metrics.Operation.GET);
+		Collection<T> cell = points.get(x, y);
+		if (probe != null) {
+			probe.stop(1);
+		}
+		return cell;
+	}
+	
 	/**
 	 * validate and access the information about a specific location
 	 * @param the coordinate location
@@ -61,18 +126,19 @@ public final class BiDimensionalMap<T> {
 	 */
 	public final Collection<T> get(Coordinate coordinate) {
 		Coordinate.validate(coordinate);
-		if (points.get(coordinate.x()) == null) {
-			return null;
-		} else  {
-			return points.get(coordinate.x()).get(coordinate.y());
+		Metrics.Probe probe = Metrics.start(Metrics.Operation.GET);
+		Collection<T> cell = points.get(coordinate.x(), coordinate.y());
+		if (probe != null) {
+			probe.stop(1);
 		}
+		return cell;
 	} 
 	
 	/**
 	 * @return the collection of x coordinates in the map 
 	 */
 	public final Set<BigDecimal> xSet() {
-		return points.keySet();
+		return points.xSet();
 	}
 	
 	/**
@@ -83,7 +149,7 @@ public final class BiDimensionalMap<T> {
 		if (x == null) {
 			return null;
 		}
-		return(points.get(x).keySet());
+		return(points.ySet(x));
 	}
 	
 	/**
@@ -91,11 +157,7 @@ public final class BiDimensionalMap<T> {
 	 */
 	public final List<Coordinate> coordinateSet() {
 		List<Coordinate> set = new ArrayList<Coordinate>();
-		for (BigDecimal x: this.xSet()) {
-			for (BigDecimal y: this.ySet(x)) {
-				set.add(new Coordinate(x, y));
-			}
-		}
+		this.forEachCell((x, y, values) -> set.add(new Coordinate(x, y)));
 		return set;
 	}
 	
@@ -104,17 +166,25 @@ public final class BiDimensionalMap<T> {
 	 */
 	public final List<Collection<T>> collectionList() {
 		List<Collection<T>> list = new ArrayList<Collection<T>>();
-		for (Coordinate coordinate : coordinateSet()) {
-			list.add(get(coordinate));
-		}
+		this.forEachCell((x, y, values) -> list.add(values));
 		return list;
 	}
 	
+	/**
+	 * visits every cell of the map once, sorted by their coordinates, without building intermediate lists or coordinates
+	 * @param the visitor receiving the x and y coordinate and the collection of every cell
+	 */
+	public final void forEachCell(CellVisitor<T> visitor) {
+		points.forEach(Objects.requireNonNull(visitor));
+	}
+	
 	/**
 	 * @return the number of entries that are stored throughout the map 
 	 */
 	public final long collectionSize() {
-		return this.collectionSize(value -> true);
+		long[] size = new long[1];
+		this.forEachCell((x, y, values) -> size[0] += values.size());
+		return size[0];
 	}
 	
 	/**
@@ -123,16 +193,57 @@ public final class BiDimensionalMap<T> {
 	 * @return number of entries that satisfy the predicate
 	 */
 	public final long collectionSize(Predicate<? super T> filter) {
-		long size = 0;
-		for (Collection<T> list : collectionList()) {
-			for (T value : list) {
+		Objects.requireNonNull(filter);
+		long[] size = new long[1];
+		this.forEachCell((x, y, values) -> {
+			for (T value : values) {
 				if (filter.test(value)) {
-					size++;
+					size[0]++;
 				}
 			}
-			
-		}
-		return size;
+		});
+		return size[0];
+	}
+	
+	/**
+	 * @param the function giving the number to be summed for each entry
+	 * @return the sum over all the entries stored throughout the map
+	 */
+	public final double sum(ToDoubleFunction<? super T> function) {
+		Objects.requireNonNull(function);
+		double[] sum = new double[1];
+		this.forEachCell((x, y, values) -> {
+			for (T value : values) {
+				sum[0] += function.applyAsDouble(value);
+			}
+		});
+		return sum[0];
+	}
+	
+	/**
+	 * @param the comparator ordering the entries
+	 * @return the smallest entry stored throughout the map, or an empty Optional if there is none
+	 */
+	public final Optional<T> min(Comparator<? super T> comparator) {
+		return max(Objects.requireNonNull(comparator).reversed());
+	}
+	
+	/**
+	 * @param the comparator ordering the entries
+	 * @return the largest entry stored throughout the map, or an empty Optional if there is none
+	 */
+	public final Optional<T> max(Comparator<? super T> comparator) {
+		Objects.requireNonNull(comparator);
+		List<T> max = new ArrayList<>(1);
+		max.add(null);
+		this.forEachCell((x, y, values) -> {
+			for (T value : values) {
+				if (max.get(0) == null || comparator.compare(value, max.get(0)) > 0) {
+					max.set(0, value);
+				}
+			}
+		});
+		return Optional.ofNullable(max.get(0));
 	}
 	
 	/**
@@ -141,22 +252,102 @@ public final class BiDimensionalMap<T> {
 	 * @return a  new  two-dimensional  map  containing  only  the  points  in the given valid rectangle
 	 */
 	public final BiDimensionalMap<T> slice(Rectangle rectangle) {
-		BiDimensionalMap<T> rect = new BiDimensionalMap<>();
-		SortedMap<BigDecimal, SortedMap<BigDecimal, Collection<T>>> xCoord = this.points.subMap(Rectangle.validate(rectangle).left(), rectangle.right());
-		xCoord.forEach((x, yCoord) ->  { 
-			rect.points.put(x, new TreeMap<>()); 
-			yCoord.subMap(rectangle.bottom(), rectangle.top()).forEach((y, collection) -> {
-				rect.points.get(x).put(y, this.points.get(x).get(y));
-			});
-		});
-		return rect;
+		Rectangle.validate(rectangle);
+		Metrics.Probe probe = Metrics.start(Metrics.Operation.SLICE);
+		CellStore<T> cells = points.slice(rectangle);
+		if (probe != null) {
+			probe.stop(cells.size());
+		}
+		BiDimensionalMap<T> slice = new BiDimensionalMap<>(cells, collectionFactory);
+		return slice;
+	}
+	
+	/**
+	 * find the points in the given valid rectangle like slice, without copying them into a new map
+	 * @param rectangle to be viewed
+	 * @return a two-dimensional map backed by this map and limited to the rectangle, so that changes to either are seen by the other and writes outside the rectangle throw IllegalArgumentException
+	 */
+	public final BiDimensionalMap<T> view(Rectangle rectangle) {
+		return new BiDimensionalMap<>(points.view(Rectangle.validate(rectangle)), collectionFactory);
+	}
+	
+	/**
+	 * finds the values closest to a coordinate with a best-first search over the sorted columns of the map, opening a column or a cell only once nothing closer is left
+	 * every column whose x lies within the distance of the farthest value found is opened, each with a search of the store, so a search costs O(c log n) for the c columns within that distance even if they hold few of the values
+	 * for many searches over a map with many columns, GridIndex.of(map).nearest opens only the buckets around the coordinate
+	 * @param the coordinate and the largest number of values to be found
+	 * @return a lazy stream of the k values closest to the coordinate in ascending distance, cells at the same distance coming in the order of their coordinates
+	 * @throws NullPointerException if the coordinate is null
+	 * @throws IllegalArgumentException if k is negative
+	 */
+	public final Stream<Neighbor<T>> nearest(Coordinate coordinate, int k) {
+		return NearestSearch.of(points, Coordinate.validate(coordinate)).nearest(k);
+	}
+	
+	/**
+	 * finds the values within a distance of a coordinate like nearest, the border of the circle being included, opening every column within the distance like nearest does
+	 * @param the coordinate and the distance
+	 * @return a lazy stream of the values within the distance of the coordinate in ascending distance
+	 * @throws NullPointerException if the coordinate or the distance is null
+	 * @throws IllegalArgumentException if the distance is negative
+	 */
+	public final Stream<Neighbor<T>> withinDistance(Coordinate coordinate, BigDecimal distance) {
+		return NearestSearch.of(points, Coordinate.validate(coordinate)).within(distance);
 	}
 	
 	/**
 	 * @return a compact and informative string  representation of the map
 	 */
 	public String toString() {
-		return("Map Size " + this.collectionSize() + " .Values: " + this.coordinateSet());
+		StringBuilder values = new StringBuilder();
+		this.forEachCell((x, y, collection) -> {
+			values.append(values.length() == 0 ? "" : ", ").append("Coordinate[x=").append(x).append(", y=").append(y).append(']');
+		});
+		return("Map Size " + this.collectionSize() + " .Values: [" + values + "]");
+	}
+	
+	/**
+	 * the ways a map can store its coordinates, chosen when the map is built
+	 */
+	public enum Storage {
+		
+		/**
+		 * exact BigDecimal coordinates in a SortedMap of SortedMaps
+		 */
+		TREE {
+			<T> CellStore<T> create() {
+				return new TreeCellStore<>(false);
+			}
+		},
+		
+		/**
+		 * coordinates rounded to primitive doubles in sorted parallel arrays, using far less memory per point and hashing them for direct lookups
+		 */
+		DOUBLE {
+			<T> CellStore<T> create() {
+				return new DoubleCellStore<>();
+			}
+		},
+		
+		/**
+		 * exact BigDecimal coordinates in a ConcurrentSkipListMap of ConcurrentSkipListMaps with concurrent sets as cells, so that Updaters on several threads can add and set without a lock and without losing writes
+		 */
+		CONCURRENT {
+			<T> CellStore<T> create() {
+				return new TreeCellStore<>(true);
+			}
+		},
+		
+		/**
+		 * coordinates rounded to primitive doubles in parallel arrays sorted by a Z-order key interleaving x and y, so that a slice or a count scans a few runs of nearby cells whatever the shape of its rectangle
+		 */
+		MORTON {
+			<T> CellStore<T> create() {
+				return new MortonCellStore<>();
+			}
+		};
+		
+		abstract <T> CellStore<T> create();
 	}
 	
 	/**
@@ -173,9 +364,10 @@ public final class BiDimensionalMap<T> {
 		
 		private BigDecimal x, y = new BigDecimal(0);
 		
-		private Supplier<Collection<T>> collectionFactory = HashSet::new;
+		private Supplier<Collection<T>> collectionFactory = BiDimensionalMap.this.collectionFactory;
 		
-		private Collection<T> values = collectionFactory.get();
+		/** the values to be written, buffered in an AdaptiveCell rather than a cell of the map, since they are copied into the cell anyway, and a set so that a value added twice is written once whatever the collections of the cells */
+		private Collection<T> values = new AdaptiveCell<>();
 		
 		/**
 		 * adds a single value to the Updater values
@@ -192,13 +384,9 @@ public final class BiDimensionalMap<T> {
 		 * @return the previous collection at (x, y) if any, or null otherwise
 		 */	
 		public final Collection<T> set() {
-			points.computeIfAbsent(this.x, k -> {
-				SortedMap<BigDecimal, Collection<T>> map = new TreeMap<>();
-				return map;
-			});
 			Collection<T> collection = collectionFactory.get();
 			collection.addAll(values);
-			return points.get(this.x).put(y, collection);
+			return points.put(Objects.requireNonNull(x), Objects.requireNonNull(y), collection);
 		}
 		
 		/**
@@ -206,30 +394,12 @@ public final class BiDimensionalMap<T> {
 		 * @return if the interest points previously associated with location (x, y) changed because of this call
 		 */	
 		public final boolean add() {
-			this.getMap();
-			points.get(x).computeIfAbsent(y, k -> collectionFactory.get());
-			return get(this.x, this.y).addAll(this.getCollection());
-		}
-		
-		/**
-		 * helper
-		 * @return a map if there isnt any
-		 */
-		private void getMap() {
-			points.computeIfAbsent(this.x, k -> {
-				SortedMap<BigDecimal, Collection<T>> newMap = new TreeMap<>();
-				return newMap;
-			});
-		}
-		
-		/**
-		 * helper
-		 * @return a collection with all the values added
-		 */
-		private Collection<T> getCollection() {
-			Collection<T> collection = collectionFactory.get();
-			collection.addAll(values);
-			return collection;
+			Metrics.Probe probe = Metrics.start(Metrics.Operation.ADD);
+			boolean changed = points.computeIfAbsent(Objects.requireNonNull(x), Objects.requireNonNull(y), collectionFactory).addAll(values);
+			if (probe != null) {
+				probe.stop(1);
+			}
+			return changed;
 		}
 		
 		/**
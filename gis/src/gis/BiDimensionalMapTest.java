@@ -0,0 +1,255 @@
+package gis;
+
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+
+public class BiDimensionalMapTest {
+
+	//same points in both storages give the same coordinates and slices
+	@Test
+	public void testDoubleStorageMatchesTree() {
+		BiDimensionalMap<Integer> tree = new BiDimensionalMap<>();
+		BiDimensionalMap<Integer> primitive = new BiDimensionalMap<>(BiDimensionalMap.Storage.DOUBLE);
+		for (int i = 0; i < 100; i++) {
+			Coordinate c1 = new Coordinate(new BigDecimal((i * 7) % 10), new BigDecimal((i * 3) % 10));
+			tree.getUpdater().setCoordinate(c1).addValue(i).add();
+			primitive.getUpdater().setCoordinate(c1).addValue(i).add();
+		}
+		assertEquals(tree.coordinateSet(), primitive.coordinateSet());
+		Rectangle r1 = new Rectangle(new Coordinate(new BigDecimal(2), new BigDecimal(1)), new Coordinate(new BigDecimal(6), new BigDecimal(4)));
+		assertEquals(tree.slice(r1).coordinateSet(), primitive.slice(r1).coordinateSet());
+		assertEquals(tree.slice(r1).collectionSize(), primitive.slice(r1).collectionSize());
+	}
+
+	//set replaces the previous collection and returns it
+	@Test
+	public void testDoubleStorageSet() {
+		BiDimensionalMap<String> map = new BiDimensionalMap<>(BiDimensionalMap.Storage.DOUBLE);
+		Coordinate c1 = new Coordinate(new BigDecimal("1.5"), new BigDecimal(2));
+		assertNull(map.getUpdater().setCoordinate(c1).addValue("a").set());
+		Collection<String> previous = map.getUpdater().setCoordinate(c1).addValue("b").set();
+		assertEquals(Set.of("a"), previous);
+		assertEquals(Set.of("b"), map.get(c1));
+		assertEquals(Set.of("b"), map.get(1.5, 2));
+	}
+
+	//cells added out of order are still returned sorted
+	@Test
+	public void testDoubleStorageSorted() {
+		BiDimensionalMap<String> map = new BiDimensionalMap<>(BiDimensionalMap.Storage.DOUBLE);
+		map.getUpdater().setX(new BigDecimal(3)).setY(new BigDecimal(1)).addValue("a").add();
+		map.getUpdater().setX(new BigDecimal(1)).setY(new BigDecimal(5)).addValue("b").add();
+		map.getUpdater().setX(new BigDecimal(1)).setY(new BigDecimal(-2)).addValue("c").add();
+		List<Coordinate> expected = List.of(new Coordinate(new BigDecimal(1), new BigDecimal(-2)), new Coordinate(new BigDecimal(1), new BigDecimal(5)), new Coordinate(new BigDecimal(3), new BigDecimal(1)));
+		assertEquals(expected, map.coordinateSet());
+	}
+
+	//writes to a view reach the map and reads see the map, in both storages
+	@Test
+	public void testViewWritesThrough() {
+		for (BiDimensionalMap.Storage storage : BiDimensionalMap.Storage.values()) {
+			BiDimensionalMap<String> map = new BiDimensionalMap<>(storage);
+			Coordinate c1 = new Coordinate(new BigDecimal(1), new BigDecimal(1));
+			Coordinate c2 = new Coordinate(new BigDecimal(3), new BigDecimal(1));
+			map.getUpdater().setCoordinate(c1).addValue("a").add();
+			map.getUpdater().setCoordinate(c2).addValue("b").add();
+			Rectangle r1 = new Rectangle(new Coordinate(new BigDecimal(0), new BigDecimal(0)), new Coordinate(new BigDecimal(2), new BigDecimal(2)));
+			BiDimensionalMap<String> view = map.view(r1);
+			assertEquals(List.of(c1), view.coordinateSet());
+			view.addEverywhere("c");
+			assertEquals(Set.of("a", "c"), map.get(c1));
+			assertEquals(Set.of("b"), map.get(c2));
+			Coordinate c3 = new Coordinate(new BigDecimal(0), new BigDecimal(1));
+			view.getUpdater().setCoordinate(c3).addValue("d").add();
+			assertEquals(Set.of("d"), map.get(c3));
+			map.getUpdater().setCoordinate(new Coordinate(new BigDecimal(1), new BigDecimal(0))).addValue("e").add();
+			assertEquals(3, view.coordinateSet().size());
+		}
+	}
+
+	//writes outside a view are rejected
+	@Test(expected = IllegalArgumentException.class)
+	public void testViewOutOfRange() {
+		BiDimensionalMap<String> map = new BiDimensionalMap<>();
+		Rectangle r1 = new Rectangle(new Coordinate(new BigDecimal(0), new BigDecimal(0)), new Coordinate(new BigDecimal(2), new BigDecimal(2)));
+		map.view(r1).getUpdater().setCoordinate(new Coordinate(new BigDecimal(1), new BigDecimal(2))).addValue("a").add();
+	}
+
+	//the reducers walk every entry of the map
+	@Test
+	public void testReducers() {
+		BiDimensionalMap<Integer> map = new BiDimensionalMap<>();
+		for (int i = 1; i <= 10; i++) {
+			map.getUpdater().setCoordinate(new Coordinate(new BigDecimal(i % 3), new BigDecimal(i % 4))).addValue(i).add();
+		}
+		assertEquals(10, map.collectionSize());
+		assertEquals(5, map.collectionSize(value -> value % 2 == 0));
+		assertEquals(55.0, map.sum(value -> value), 0);
+		assertEquals(Optional.of(1), map.min(Comparator.naturalOrder()));
+		assertEquals(Optional.of(10), map.max(Comparator.naturalOrder()));
+		assertEquals(Optional.empty(), new BiDimensionalMap<Integer>().max(Comparator.naturalOrder()));
+	}
+
+	//a batch whose x values differ exactly but round to the same double gives the cells of adding the values one by one, sorted by the exact x before y where the storage keeps exact values
+	@Test
+	public void testAddAllCloseX() {
+		BigDecimal x1 = new BigDecimal("0.1"), x2 = new BigDecimal("0.10000000000000000001");
+		List<Coordinate> coordinates = List.of(new Coordinate(x1, new BigDecimal(5)), new Coordinate(x2, new BigDecimal(3)), new Coordinate(x1, new BigDecimal(3)));
+		for (BiDimensionalMap.Storage storage : BiDimensionalMap.Storage.values()) {
+			BiDimensionalMap<String> expected = new BiDimensionalMap<>(storage);
+			for (String value : List.of("a", "b", "c")) {
+				expected.getUpdater().setCoordinate(coordinates.get(value.charAt(0) - 'a')).addValue(value).add();
+			}
+			BiDimensionalMap<String> map = new BiDimensionalMap<>(storage);
+			assertTrue(map.addAll(List.of("a", "b", "c"), value -> coordinates.get(value.charAt(0) - 'a')));
+			assertEquals(expected.coordinateSet(), map.coordinateSet());
+			for (Coordinate coordinate : coordinates) {
+				assertEquals(expected.get(coordinate), map.get(coordinate));
+			}
+			assertEquals(3, map.collectionSize());
+			if (storage == BiDimensionalMap.Storage.TREE || storage == BiDimensionalMap.Storage.CONCURRENT) {
+				assertEquals(List.of(x1, x2), new ArrayList<>(map.xSet()));
+				assertEquals(Set.of("b"), map.get(x2, new BigDecimal(3)));
+			} else {
+				assertEquals(Set.of("b", "c"), map.get(x1, new BigDecimal(3)));
+			}
+		}
+	}
+
+	//several threads adding to the same cells lose no values
+	@Test
+	public void testConcurrentAdd() throws InterruptedException {
+		BiDimensionalMap<Integer> map = new BiDimensionalMap<>(BiDimensionalMap.Storage.CONCURRENT);
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			int offset = t * 1000;
+			threads.add(new Thread(() -> {
+				for (int i = 0; i < 1000; i++) {
+					map.getUpdater().setCoordinate(new Coordinate(new BigDecimal(i % 10), new BigDecimal(i % 7))).addValue(offset + i).add();
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(4000, map.collectionSize());
+	}
+
+	//lookups running while another reader sorts the cells added out of order always find them
+	@Test
+	public void testGetWhileSorting() throws InterruptedException {
+		for (BiDimensionalMap.Storage storage : new BiDimensionalMap.Storage[] { BiDimensionalMap.Storage.DOUBLE, BiDimensionalMap.Storage.MORTON }) {
+			for (int round = 0; round < 50; round++) {
+				BiDimensionalMap<Integer> map = new BiDimensionalMap<>(storage);
+				for (int i = 0; i < 2000; i++) {
+					map.getUpdater().setCoordinate(new Coordinate(new BigDecimal(-i), new BigDecimal(i % 7))).addValue(i).add();
+				}
+				AtomicInteger missed = new AtomicInteger();
+				List<Thread> readers = new ArrayList<>();
+				for (int t = 0; t < 3; t++) {
+					readers.add(new Thread(() -> {
+						for (int i = 0; i < 2000; i++) {
+							if (map.get(-i, i % 7) == null) {
+								missed.incrementAndGet();
+							}
+						}
+					}));
+				}
+				readers.add(new Thread(map::xSet));
+				for (Thread reader : readers) {
+					reader.start();
+				}
+				for (Thread reader : readers) {
+					reader.join();
+				}
+				assertEquals(0, missed.get());
+			}
+		}
+	}
+
+	//an updater adding the same value twice writes it once, even into cells that are lists
+	@Test
+	public void testUpdaterBuffer() {
+		Supplier<Collection<String>> lists = ArrayList::new;
+		BiDimensionalMap<String> map = new BiDimensionalMap<>(BiDimensionalMap.Storage.TREE, lists);
+		Coordinate c1 = new Coordinate(new BigDecimal(1), new BigDecimal(1));
+		map.getUpdater().setCoordinate(c1).addValue("a").addValue("a").add();
+		assertEquals(List.of("a"), map.get(c1));
+		map.getUpdater().setCoordinate(c1).addValue("b").addValue("b").set();
+		assertEquals(List.of("b"), map.get(c1));
+	}
+
+	//the nearest values of a 10 by 10 grid come in distance order, then coordinate order, from the map and from a grid index
+	@Test
+	public void testNearest() {
+		for (BiDimensionalMap.Storage storage : BiDimensionalMap.Storage.values()) {
+			BiDimensionalMap<Integer> map = new BiDimensionalMap<>(storage);
+			for (int i = 0; i < 100; i++) {
+				map.getUpdater().setCoordinate(new Coordinate(new BigDecimal(i / 10), new BigDecimal(i % 10))).addValue(i).add();
+			}
+			Coordinate c1 = new Coordinate(new BigDecimal("4.5"), new BigDecimal(3));
+			List<Integer> expected = List.of(43, 53, 42, 44, 52, 54, 33, 63, 32, 34, 62, 64);
+			assertEquals(expected, map.nearest(c1, 12).map(Neighbor::value).toList());
+			assertEquals(expected, GridIndex.of(map).nearest(c1, 12).map(Neighbor::value).toList());
+			assertEquals(new BigDecimal("0.25"), map.nearest(c1, 1).findFirst().get().squaredDistance());
+			assertEquals(expected.subList(0, 8), map.withinDistance(c1, new BigDecimal("1.5")).map(Neighbor::value).toList());
+			assertEquals(expected.subList(0, 8), GridIndex.of(map).withinDistance(c1, new BigDecimal("1.5")).map(Neighbor::value).toList());
+			assertEquals(100, map.nearest(c1, 1000).count());
+			Rectangle r1 = new Rectangle(new Coordinate(new BigDecimal(5), new BigDecimal(0)), new Coordinate(new BigDecimal(7), new BigDecimal(3)));
+			assertEquals(List.of(52, 62, 51, 61, 50, 60), map.view(r1).nearest(c1, 10).map(Neighbor::value).toList());
+		}
+	}
+
+	//a grid index over a tight cluster and a few far cells counts and finds the nearest values like the map
+	@Test
+	public void testGridIndexClustered() {
+		BiDimensionalMap<Integer> map = new BiDimensionalMap<>();
+		for (int i = 0; i < 400; i++) {
+			map.getUpdater().setCoordinate(new Coordinate(new BigDecimal(i % 20).movePointLeft(3), new BigDecimal(i / 20).movePointLeft(3))).addValue(i).add();
+		}
+		for (int i = 0; i < 4; i++) {
+			map.getUpdater().setCoordinate(new Coordinate(new BigDecimal(1000 * (i % 2)), new BigDecimal(1000 * (i / 2) + 500))).addValue(400 + i).add();
+		}
+		GridIndex<Integer> index = GridIndex.of(map);
+		Rectangle[] rectangles = { new Rectangle(new Coordinate(new BigDecimal("0.005"), new BigDecimal("0.002")), new Coordinate(new BigDecimal("0.0125"), new BigDecimal("0.019"))),
+				new Rectangle(new Coordinate(new BigDecimal(-1), new BigDecimal(-1)), new Coordinate(new BigDecimal(2000), new BigDecimal(2000))),
+				new Rectangle(new Coordinate(new BigDecimal(500), new BigDecimal(0)), new Coordinate(new BigDecimal(1001), new BigDecimal(1501))) };
+		for (Rectangle rectangle : rectangles) {
+			assertEquals(map.slice(rectangle).collectionSize(), index.count(rectangle));
+		}
+		for (Coordinate coordinate : List.of(new Coordinate(new BigDecimal("0.0071"), new BigDecimal("0.0133")), new Coordinate(new BigDecimal(900), new BigDecimal(700)), new Coordinate(new BigDecimal(-5), new BigDecimal(3)))) {
+			assertEquals(map.nearest(coordinate, 30).toList(), index.nearest(coordinate, 30).toList());
+		}
+	}
+
+	//the probe of a slice reports the cells copied into it, in every storage
+	@Test
+	public void testSliceMetrics() {
+		Rectangle r1 = new Rectangle(new Coordinate(new BigDecimal(5), new BigDecimal(0)), new Coordinate(new BigDecimal(7), new BigDecimal(3)));
+		for (BiDimensionalMap.Storage storage : BiDimensionalMap.Storage.values()) {
+			BiDimensionalMap<Integer> map = new BiDimensionalMap<>(storage);
+			for (int i = 0; i < 100; i++) {
+				map.getUpdater().setCoordinate(new Coordinate(new BigDecimal(i / 10), new BigDecimal(i % 10))).addValue(i).add();
+			}
+			HistogramSink sink = new HistogramSink();
+			Metrics.setSink(sink);
+			try {
+				map.slice(r1);
+				map.view(r1).slice(r1);
+			} finally {
+				Metrics.setSink(null);
+			}
+			assertEquals(2, sink.get(Metrics.Operation.SLICE).count());
+			assertEquals(12, sink.get(Metrics.Operation.SLICE).cells());
+		}
+	}
+}
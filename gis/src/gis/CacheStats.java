@@ -0,0 +1,16 @@
+package gis;
+
+/**
+ * The statistics of the count cache of InterestPoints
+ * @param the lookups answered by the cache, those that had to count, the results dropped to make room and the number of results held
+ */
+public record CacheStats(long hits, long misses, long evictions, int size) {
+
+	/**
+	 * @return the share of lookups answered by the cache, or 0 if there were none
+	 */
+	public double hitRate() {
+		long lookups = hits + misses;
+		return lookups == 0 ? 0 : (double) hits / lookups;
+	}
+}
@@ -0,0 +1,301 @@
+package gis;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * Keeps the collections of the cells of maps off the heap as contiguous runs of value ids in direct memory, the run of every cell being found by its ordinal
+ * a map uses it through its collection factory, new BiDimensionalMap<>(storage, arena::newCell), and its cells are then small views holding only an ordinal instead of a HashSet with a table and an entry per value
+ * the values themselves are objects, so they stay on the heap, referenced once from a flat table of pages that the ids index
+ * a run that fills up moves to the end of the memory with twice its capacity, and the runs are compacted once the space they left behind is as large as the space in use
+ * cells are never freed, so that the arena suits maps that are added to, a cell replaced with set keeping its memory and values until the arena is dropped
+ * like HashSet, it is not safe for several writers
+ */
+public final class CellArena<T> {
+
+	private static final int PAGE_BITS = 14;
+	private static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+	/** the ints of the directory per cell: the start, length and capacity of its run */
+	private static final int ENTRY = 3;
+
+	/** the largest number of ints in one direct buffer */
+	private static final int MAX_INTS = Integer.MAX_VALUE / Integer.BYTES;
+
+	private IntBuffer runs = allocate(1024);
+	private IntBuffer directory = allocate(ENTRY * 256);
+	private int used;
+	private int garbage;
+	private int cellCount;
+
+	private Object[][] pages = new Object[16][];
+	private int valueCount;
+	private int[] free = new int[16];
+	private int freeCount;
+
+	/**
+	 * @return a new empty cell, to be used as the collection factory of a map
+	 * @throws IllegalStateException if the arena holds as many cells as its memory can index
+	 */
+	public Collection<T> newCell() {
+		if (ENTRY * (cellCount + 1) > directory.capacity()) {
+			directory = grow(directory, ENTRY * (cellCount + 1));
+		}
+		int entry = ENTRY * cellCount;
+		directory.put(entry, used);
+		directory.put(entry + 1, 0);
+		directory.put(entry + 2, 0);
+		return new Cell(cellCount++);
+	}
+
+	/**
+	 * @return the number of cells made by the arena
+	 */
+	public int cellCount() {
+		return cellCount;
+	}
+
+	/**
+	 * @return the bytes of direct memory held by the runs and the directory of the cells
+	 */
+	public long offHeapBytes() {
+		return (long) (runs.capacity() + directory.capacity()) * Integer.BYTES;
+	}
+
+	/**
+	 * the collection of one cell, reading and writing its run in the arena
+	 * equal values are kept once, like in a HashSet
+	 */
+	private final class Cell extends AbstractSet<T> {
+
+		private final int ordinal;
+
+		Cell(int ordinal) {
+			this.ordinal = ordinal;
+		}
+
+		public int size() {
+			return directory.get(ENTRY * ordinal + 1);
+		}
+
+		public boolean contains(Object o) {
+			return indexOf(ordinal, o) >= 0;
+		}
+
+		public boolean add(T value) {
+			if (indexOf(ordinal, value) >= 0) {
+				return false;
+			}
+			append(ordinal, value);
+			return true;
+		}
+
+		public boolean remove(Object o) {
+			int index = indexOf(ordinal, o);
+			if (index < 0) {
+				return false;
+			}
+			removeAt(ordinal, index);
+			return true;
+		}
+
+		public void clear() {
+			for (int i = size() - 1; i >= 0; i--) {
+				removeAt(ordinal, i);
+			}
+		}
+
+		public Iterator<T> iterator() {
+			return new Iterator<T>() {
+
+				private int next;
+				private boolean removable;
+
+				public boolean hasNext() {
+					return next < size();
+				}
+
+				public T next() {
+					if (!hasNext()) {
+						throw new NoSuchElementException();
+					}
+					removable = true;
+					return value(ordinal, next++);
+				}
+
+				/**
+				 * the last value of the run takes the place of the removed one, so that it is the next one returned
+				 */
+				public void remove() {
+					if (!removable) {
+						throw new IllegalStateException();
+					}
+					removable = false;
+					removeAt(ordinal, --next);
+				}
+			};
+		}
+	}
+
+	/**
+	 * helper
+	 * @return the value at the index of the run of the cell
+	 */
+	@SuppressWarnings("unchecked")
+	private T value(int ordinal, int index) {
+		int id = runs.get(directory.get(ENTRY * ordinal) + index);
+		return (T) pages[id >>> PAGE_BITS][id & (PAGE_SIZE - 1)];
+	}
+
+	/**
+	 * helper
+	 * @return the index of a value equal to o in the run of the cell, or -1 if there is none
+	 */
+	private int indexOf(int ordinal, Object o) {
+		int start = directory.get(ENTRY * ordinal), length = directory.get(ENTRY * ordinal + 1);
+		for (int i = 0; i < length; i++) {
+			int id = runs.get(start + i);
+			if (Objects.equals(pages[id >>> PAGE_BITS][id & (PAGE_SIZE - 1)], o)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * helper
+	 * adds the value at the end of the run of the cell, moving the run first if it is full
+	 */
+	private void append(int ordinal, T value) {
+		int entry = ENTRY * ordinal;
+		int length = directory.get(entry + 1), capacity = directory.get(entry + 2);
+		if (length == capacity) {
+			move(ordinal, Math.max(1, capacity * 2));
+		}
+		runs.put(directory.get(entry) + length, store(value));
+		directory.put(entry + 1, length + 1);
+	}
+
+	/**
+	 * helper
+	 * removes the value at the index of the run of the cell, putting the last value of the run in its place
+	 */
+	private void removeAt(int ordinal, int index) {
+		int entry = ENTRY * ordinal;
+		int start = directory.get(entry), last = directory.get(entry + 1) - 1;
+		release(runs.get(start + index));
+		runs.put(start + index, runs.get(start + last));
+		directory.put(entry + 1, last);
+	}
+
+	/**
+	 * helper
+	 * copies the run of the cell to the end of the memory with the given capacity, compacting every run first if half of the memory is left behind by moved runs
+	 */
+	private void move(int ordinal, int capacity) {
+		int entry = ENTRY * ordinal;
+		int oldCapacity = directory.get(entry + 2);
+		if (garbage > used - garbage && garbage > PAGE_SIZE) {
+			compact();
+		}
+		reserve(capacity);
+		runs.put(used, runs, directory.get(entry), directory.get(entry + 1));
+		directory.put(entry, used);
+		directory.put(entry + 2, capacity);
+		used += capacity;
+		garbage += oldCapacity;
+	}
+
+	/**
+	 * helper
+	 * copies every run next to each other into new memory, keeping their capacities
+	 */
+	private void compact() {
+		IntBuffer compacted = allocate(Math.max(1024, used - garbage));
+		int end = 0;
+		for (int entry = 0; entry < ENTRY * cellCount; entry += ENTRY) {
+			compacted.put(end, runs, directory.get(entry), directory.get(entry + 1));
+			directory.put(entry, end);
+			end += directory.get(entry + 2);
+		}
+		runs = compacted;
+		used = end;
+		garbage = 0;
+	}
+
+	/**
+	 * helper
+	 * grows the memory of the runs so that it has room for the given number of ints after the runs in use
+	 * @throws IllegalStateException if the runs would not fit in one direct buffer
+	 */
+	private void reserve(int ints) {
+		if ((long) used + ints > MAX_INTS) {
+			throw new IllegalStateException("the arena is full");
+		}
+		if (used + ints > runs.capacity()) {
+			runs = grow(runs, used + ints);
+		}
+	}
+
+	/**
+	 * helper
+	 * @return the id of the value in the table, reusing the id of a removed value if any
+	 */
+	private int store(T value) {
+		int id;
+		if (freeCount > 0) {
+			id = free[--freeCount];
+		} else {
+			if (valueCount == Integer.MAX_VALUE) {
+				throw new IllegalStateException("the arena is full");
+			}
+			id = valueCount++;
+			int page = id >>> PAGE_BITS;
+			if (page == pages.length) {
+				pages = Arrays.copyOf(pages, pages.length * 2);
+			}
+			if (pages[page] == null) {
+				pages[page] = new Object[PAGE_SIZE];
+			}
+		}
+		pages[id >>> PAGE_BITS][id & (PAGE_SIZE - 1)] = value;
+		return id;
+	}
+
+	/**
+	 * helper
+	 * drops the value with the id from the table so that it can be collected, keeping the id for the next value stored
+	 */
+	private void release(int id) {
+		pages[id >>> PAGE_BITS][id & (PAGE_SIZE - 1)] = null;
+		if (freeCount == free.length) {
+			free = Arrays.copyOf(free, free.length * 2);
+		}
+		free[freeCount++] = id;
+	}
+
+	/**
+	 * helper
+	 * @return new direct memory with at least the given number of ints, holding the ints of the buffer
+	 * @throws IllegalStateException if the ints would not fit in one direct buffer
+	 */
+	private static IntBuffer grow(IntBuffer buffer, int ints) {
+		if (ints > MAX_INTS) {
+			throw new IllegalStateException("the arena is full");
+		}
+		IntBuffer grown = allocate((int) Math.min(MAX_INTS, Math.max(ints, 2L * buffer.capacity())));
+		grown.put(0, buffer, 0, buffer.capacity());
+		return grown;
+	}
+
+	private static IntBuffer allocate(int ints) {
+		return ByteBuffer.allocateDirect(ints * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+	}
+}
@@ -0,0 +1,183 @@
+package gis;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * the storage behind a BiDimensionalMap, holding the collection of every (x, y) cell ordered by x and then by y
+ */
+interface CellStore<T> {
+
+	/**
+	 * @param x and y coordinate
+	 * @return the collection at the given coordinate, or null if there is none
+	 */
+	Collection<T> get(BigDecimal x, BigDecimal y);
+
+	/**
+	 * @param x and y coordinate as doubles
+	 * @return the collection at the given coordinate, or null if there is none
+	 */
+	default Collection<T> get(double x, double y) {
+		return get(BigDecimal.valueOf(x), BigDecimal.valueOf(y));
+	}
+
+	/**
+	 * replaces the collection at the given coordinate
+	 * @param x and y coordinate and the new collection
+	 * @return the previous collection at (x, y) if any, or null otherwise
+	 */
+	Collection<T> put(BigDecimal x, BigDecimal y, Collection<T> collection);
+
+	/**
+	 * @param x and y coordinate and the factory used if the cell is empty
+	 * @return the collection at the given coordinate, created with the factory if there was none
+	 */
+	Collection<T> computeIfAbsent(BigDecimal x, BigDecimal y, Supplier<Collection<T>> factory);
+
+	/**
+	 * @return the x coordinates in the store in ascending order
+	 */
+	Set<BigDecimal> xSet();
+
+	/**
+	 * @param value of x
+	 * @return the y coordinates of the column at x in ascending order
+	 */
+	Set<BigDecimal> ySet(BigDecimal x);
+
+	/**
+	 * @param value of x and if a column at x itself may be returned
+	 * @return the x coordinate of the first column after the given x, or null if there is none
+	 */
+	BigDecimal nextX(BigDecimal x, boolean inclusive);
+
+	/**
+	 * @param value of x and if a column at x itself may be returned
+	 * @return the x coordinate of the last column before the given x, or null if there is none
+	 */
+	BigDecimal previousX(BigDecimal x, boolean inclusive);
+
+	/**
+	 * @param x and y coordinate and if a cell at y itself may be returned
+	 * @return the y coordinate of the first cell of the column at x after the given y, or null if there is none
+	 */
+	BigDecimal nextY(BigDecimal x, BigDecimal y, boolean inclusive);
+
+	/**
+	 * @param x and y coordinate and if a cell at y itself may be returned
+	 * @return the y coordinate of the last cell of the column at x before the given y, or null if there is none
+	 */
+	BigDecimal previousY(BigDecimal x, BigDecimal y, boolean inclusive);
+
+	/**
+	 * visits every cell of the store once, ordered by x and then y
+	 * @param the visitor receiving the cells
+	 */
+	void forEach(CellVisitor<T> visitor);
+
+	/**
+	 * @return the number of cells in the store, counted with forEach unless the store keeps it
+	 */
+	default int size() {
+		int[] count = new int[1];
+		forEach((x, y, values) -> count[0]++);
+		return count[0];
+	}
+
+	/**
+	 * @param the valid rectangle to be sliced
+	 * @return a new store of the same kind sharing the collections of the cells inside the rectangle
+	 */
+	CellStore<T> slice(Rectangle rectangle);
+
+	/**
+	 * @param the valid rectangle to be viewed
+	 * @return a store limited to the rectangle that reads and writes through to this store, throwing IllegalArgumentException on writes outside the rectangle
+	 */
+	CellStore<T> view(Rectangle rectangle);
+
+	/**
+	 * adds a batch of values, sorting them by their exact coordinates once and handing the cells of the new collections of the factory to load
+	 * stores that round coordinates override it to sort and group the values on the rounded values, which they work out once per value
+	 * @param the values, their valid coordinates in the same order, and the factory of new cells
+	 * @return if the store changed because of this call
+	 */
+	@SuppressWarnings("unchecked")
+	default boolean addAll(T[] values, Coordinate[] coordinates, Supplier<Collection<T>> factory) {
+		int[] order = CoordinateSort.order(coordinates);
+		BigDecimal[] xs = new BigDecimal[values.length];
+		BigDecimal[] ys = new BigDecimal[values.length];
+		Collection<T>[] cells = (Collection<T>[]) new Collection<?>[values.length];
+		int size = 0;
+		Coordinate previous = null;
+		for (int i = 0; i < order.length; i++) {
+			Coordinate current = coordinates[order[i]];
+			if (previous == null || current.compareTo(previous) != 0) {
+				previous = current;
+				xs[size] = current.x();
+				ys[size] = current.y();
+				cells[size++] = factory.get();
+			}
+			cells[size - 1].add(values[order[i]]);
+		}
+		return load(xs, ys, cells, size);
+	}
+
+	/**
+	 * adds a batch of cells sorted by x and then y, each coordinate appearing once, merging them into cells that already exist
+	 * @param the x and y coordinates of the cells, their collections, and the number of cells in the arrays
+	 * @return if the store changed because of this call
+	 */
+	default boolean load(BigDecimal[] xs, BigDecimal[] ys, Collection<T>[] cells, int size) {
+		boolean changed = false;
+		for (int i = 0; i < size; i++) {
+			Collection<T> cell = cells[i];
+			Collection<T> existing = computeIfAbsent(xs[i], ys[i], () -> cell);
+			changed |= existing == cell || existing.addAll(cell);
+		}
+		return changed;
+	}
+
+	/**
+	 * @return the factory an Updater uses for new cells unless it is given another one, whose cells hold one value inline and grow into an array and then a HashSet
+	 */
+	default Supplier<Collection<T>> collectionFactory() {
+		return AdaptiveCell::new;
+	}
+
+	/**
+	 * limits a rectangle to the bounds of a view
+	 * @param the bounds of the view, or null if there are none, and the rectangle to be limited
+	 * @return the part of the rectangle inside the bounds, which is empty rather than invalid if they do not meet
+	 */
+	static Rectangle clamp(Rectangle bounds, Rectangle rectangle) {
+		if (bounds == null) {
+			return rectangle;
+		}
+		BigDecimal left = bounds.left().max(rectangle.left());
+		BigDecimal bottom = bounds.bottom().max(rectangle.bottom());
+		BigDecimal right = bounds.right().min(rectangle.right()).max(left);
+		BigDecimal top = bounds.top().min(rectangle.top()).max(bottom);
+		return new Rectangle(new Coordinate(left, bottom), new Coordinate(right, top));
+	}
+
+	/**
+	 * @param a rectangle returned by clamp
+	 * @return if the rectangle covers no coordinates
+	 */
+	static boolean isEmpty(Rectangle range) {
+		return range.left().compareTo(range.right()) >= 0 || range.bottom().compareTo(range.top()) >= 0;
+	}
+
+	/**
+	 * @param the bounds of a view, or null if there are none, and the x and y coordinate
+	 * @return if the coordinate lies within the bounds
+	 */
+	static boolean contains(Rectangle bounds, BigDecimal x, BigDecimal y) {
+		return bounds == null || (bounds.left().compareTo(x) <= 0 && x.compareTo(bounds.right()) < 0
+				&& bounds.bottom().compareTo(y) <= 0 && y.compareTo(bounds.top()) < 0);
+	}
+}
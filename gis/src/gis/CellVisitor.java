@@ -0,0 +1,16 @@
+package gis;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+
+/**
+ * receives the cells of a map one at a time, without a Coordinate being built for each of them
+ */
+@FunctionalInterface
+public interface CellVisitor<T> {
+
+	/**
+	 * @param the x and y coordinate of the cell and the collection stored there
+	 */
+	void visit(BigDecimal x, BigDecimal y, Collection<T> values);
+}
@@ -0,0 +1,145 @@
+package gis;
+
+import java.util.Arrays;
+
+/**
+ * Sorts coordinates by x and then y on primitive doubles, going back to the exact BigDecimal values only where doubles are equal
+ * rounding to a double never reverses the order of two values, but it can make different values equal, so a run of equal x doubles is sorted exactly if its x values differ, and otherwise only the coordinates whose y doubles are also equal are
+ */
+final class CoordinateSort {
+
+	private CoordinateSort() {
+	}
+
+	/**
+	 * @param the coordinates to be sorted
+	 * @return the positions of the coordinates in ascending order
+	 */
+	static int[] order(Coordinate[] coordinates) {
+		int size = coordinates.length;
+		double[] xs = new double[size];
+		double[] ys = new double[size];
+		for (int i = 0; i < size; i++) {
+			xs[i] = coordinates[i].x().doubleValue();
+			ys[i] = coordinates[i].y().doubleValue();
+		}
+		int[] order = order(xs, ys, size);
+		for (int from = 0, to; from < size; from = to) {
+			boolean exactX = true;
+			for (to = from + 1; to < size && xs[order[to]] == xs[order[from]]; to++) {
+				exactX &= coordinates[order[to]].x().compareTo(coordinates[order[from]].x()) == 0;
+			}
+			if (!exactX) {
+				sortExactly(coordinates, order, from, to);
+				continue;
+			}
+			for (int start = from, end; start < to; start = end) {
+				for (end = start + 1; end < to && ys[order[end]] == ys[order[start]]; end++) {
+				}
+				if (end - start > 1) {
+					sortExactly(coordinates, order, start, end);
+				}
+			}
+		}
+		return order;
+	}
+
+	/**
+	 * @param the x and y values and the number of them to be sorted
+	 * @return the positions [0, size) in ascending order of x and then y, equal pairs keeping their order
+	 */
+	static int[] order(double[] xs, double[] ys, int size) {
+		int[] order = new int[size];
+		for (int i = 0; i < size; i++) {
+			order[i] = i;
+		}
+		long[] keys = new long[size];
+		int shift = sortByPrefix(xs, order, keys, 0, size);
+		int[] buffer = null;
+		for (int from = 0, to; from < size; from = to) {
+			for (to = from + 1; to < size && keys[to] >> shift == keys[from] >> shift; to++) {
+			}
+			if (to - from > 1) {
+				if (buffer == null) {
+					buffer = new int[size];
+				}
+				sortByPrefix(ys, order, keys, from, to);
+				sort(xs, ys, order, buffer, from, to);
+			}
+		}
+		return order;
+	}
+
+	/**
+	 * helper
+	 * sorts order[from, to) by the leading bits of the values the positions point at, packing each with its place in the range into a long so that one primitive sort orders them and keeps equal leading bits in their order
+	 * values differing only in the bits dropped for the place stay in their order, so the range is left for the merge sort to finish, which then only merges the runs of such values
+	 * @return the number of bits of the keys holding the place, the leading bits of the values being the keys shifted right by it
+	 */
+	private static int sortByPrefix(double[] values, int[] order, long[] keys, int from, int to) {
+		int shift = 32 - Integer.numberOfLeadingZeros(Math.max(to - from - 1, 1));
+		for (int i = from; i < to; i++) {
+			keys[i] = sortable(values[order[i]]) >> shift << shift | i - from;
+		}
+		Arrays.sort(keys, from, to);
+		int[] positions = Arrays.copyOfRange(order, from, to);
+		long mask = (1L << shift) - 1;
+		for (int i = from; i < to; i++) {
+			order[i] = positions[(int) (keys[i] & mask)];
+		}
+		return shift;
+	}
+
+	/**
+	 * helper
+	 * @return a long that orders the doubles as Double.compare does
+	 */
+	private static long sortable(double value) {
+		long bits = Double.doubleToRawLongBits(value);
+		return bits ^ (bits >> 63 & Long.MAX_VALUE);
+	}
+
+	/**
+	 * helper
+	 * merge sorts order[from, to) by the values the positions point at
+	 */
+	private static void sort(double[] xs, double[] ys, int[] order, int[] buffer, int from, int to) {
+		if (to - from < 2) {
+			return;
+		}
+		int mid = (from + to) >>> 1;
+		sort(xs, ys, order, buffer, from, mid);
+		sort(xs, ys, order, buffer, mid, to);
+		if (compare(xs, ys, order[mid - 1], order[mid]) <= 0) {
+			return;
+		}
+		System.arraycopy(order, from, buffer, from, to - from);
+		for (int i = from, left = from, right = mid; i < to; i++) {
+			if (right >= to || (left < mid && compare(xs, ys, buffer[left], buffer[right]) <= 0)) {
+				order[i] = buffer[left++];
+			} else {
+				order[i] = buffer[right++];
+			}
+		}
+	}
+
+	/**
+	 * helper
+	 * sorts order[from, to) by the exact coordinates the positions point at
+	 */
+	private static void sortExactly(Coordinate[] coordinates, int[] order, int from, int to) {
+		Integer[] ties = new Integer[to - from];
+		for (int i = from; i < to; i++) {
+			ties[i - from] = order[i];
+		}
+		Arrays.sort(ties, (first, second) -> coordinates[first].compareTo(coordinates[second]));
+		for (int i = from; i < to; i++) {
+			order[i] = ties[i - from];
+		}
+	}
+
+	private static int compare(double[] xs, double[] ys, int first, int second) {
+		int compare = Double.compare(xs[first], xs[second]);
+		return compare != 0 ? compare : Double.compare(ys[first], ys[second]);
+	}
+}
@@ -0,0 +1,157 @@
+package gis;
+
+import java.math.BigDecimal;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongSupplier;
+
+/**
+ * A bounded cache of counts keyed by the rectangles of a region, a marker and the generation of the InterestPoints counting them, dropping the least recently used result when full
+ * the generation keeps apart the counts of the InterestPoints built from one builder, which read the same points but may answer from indexes frozen at different times
+ * a write to a coordinate drops the results of the regions containing it, and every write bumps a version so that a count that ran while the points changed is not kept
+ * the cache is guarded by its own lock, while the counts themselves run outside it
+ */
+final class CountCache {
+
+	/**
+	 * the rectangles of a region and a marker with the generation counting them
+	 */
+	private record Key(RegionKey region, int generation) {
+	}
+
+	/**
+	 * a cached count with the bounding box of its region, which rules out most writes without testing every rectangle
+	 */
+	private static final class Entry {
+
+		private final long count;
+		private final Rectangle bounds;
+
+		private Entry(long count, Rectangle bounds) {
+			this.count = count;
+			this.bounds = bounds;
+		}
+	}
+
+	private final Map<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private int maximumSize;
+	private long version;
+	private long hits, misses, evictions;
+
+	/**
+	 * @param the largest number of results to be kept
+	 */
+	CountCache(int maximumSize) {
+		this.maximumSize = maximumSize;
+	}
+
+	/**
+	 * @param the rectangles of the region, the marker, the generation of the InterestPoints counting and the count to be run if the result is not cached
+	 * @return the cached count, or the one just run
+	 */
+	long get(Set<Rectangle> rectangles, Object marker, int generation, LongSupplier count) {
+		Key key = new Key(new RegionKey(rectangles, marker), generation);
+		long version;
+		synchronized (this) {
+			Entry entry = entries.get(key);
+			if (entry != null) {
+				hits++;
+				return entry.count;
+			}
+			misses++;
+			version = this.version;
+		}
+		long result = count.getAsLong();
+		synchronized (this) {
+			if (version == this.version && maximumSize > 0) {
+				entries.put(key, new Entry(result, bounds(rectangles)));
+				evict();
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * drops the results of the regions containing a coordinate, with the same borders as BiDimensionalMap.slice
+	 * @param the x and y coordinate written to
+	 */
+	synchronized void invalidate(BigDecimal x, BigDecimal y) {
+		version++;
+		Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<Key, Entry> entry = iterator.next();
+			if (CellStore.contains(entry.getValue().bounds, x, y) && contains(entry.getKey().region().rectangles(), x, y)) {
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * drops every result, for writes to many coordinates at once
+	 */
+	synchronized void clear() {
+		version++;
+		entries.clear();
+	}
+
+	/**
+	 * @param the largest number of results to be kept, dropping the least recently used ones over it
+	 */
+	synchronized void resize(int maximumSize) {
+		this.maximumSize = maximumSize;
+		evict();
+	}
+
+	/**
+	 * @return the statistics of the cache
+	 */
+	synchronized CacheStats stats() {
+		return new CacheStats(hits, misses, evictions, entries.size());
+	}
+
+	/**
+	 * helper
+	 * drops the least recently used results over the largest size
+	 */
+	private void evict() {
+		Iterator<Key> iterator = entries.keySet().iterator();
+		while (entries.size() > maximumSize) {
+			iterator.next();
+			iterator.remove();
+			evictions++;
+		}
+	}
+
+	/**
+	 * helper
+	 * @return if one of the rectangles contains the coordinate
+	 */
+	private static boolean contains(Set<Rectangle> rectangles, BigDecimal x, BigDecimal y) {
+		for (Rectangle rectangle : rectangles) {
+			if (CellStore.contains(rectangle, x, y)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * helper
+	 * @return the smallest rectangle around the rectangles, or an empty one if there are none
+	 */
+	private static Rectangle bounds(Set<Rectangle> rectangles) {
+		BigDecimal left = null, bottom = null, right = null, top = null;
+		for (Rectangle rectangle : rectangles) {
+			left = left == null ? rectangle.left() : left.min(rectangle.left());
+			bottom = bottom == null ? rectangle.bottom() : bottom.min(rectangle.bottom());
+			right = right == null ? rectangle.right() : right.max(rectangle.right());
+			top = top == null ? rectangle.top() : top.max(rectangle.top());
+		}
+		if (left == null) {
+			left = bottom = right = top = BigDecimal.ZERO;
+		}
+		return new Rectangle(new Coordinate(left, bottom), new Coordinate(right, top));
+	}
+}
@@ -0,0 +1,537 @@
+package gis;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * a cell store keeping the coordinates as primitive doubles in parallel arrays sorted by x and then y, with an open addressing hash table for direct lookups
+ * coordinates are rounded to the nearest double, and all comparisons are made on the rounded values
+ * new cells are appended, and the arrays are sorted again only when an ordered operation needs them, under a lock so that threads only reading the store can share it
+ * the arrays and the hash table indexing them are replaced together by one volatile write, so that a lookup running while another reader sorts sees either the old cells or the new ones
+ */
+final class DoubleCellStore<T> implements CellStore<T> {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	/** the range of a store that is not a view */
+	private static final Range NO_BOUNDS = new Range(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+
+	private volatile Columns<T> columns = new Columns<>(new double[INITIAL_CAPACITY], new double[INITIAL_CAPACITY], newCells(INITIAL_CAPACITY), 0, INITIAL_CAPACITY * 2);
+	private int size;
+	private volatile boolean sorted = true;
+
+	public Collection<T> get(BigDecimal x, BigDecimal y) {
+		return get(x.doubleValue(), y.doubleValue());
+	}
+
+	public Collection<T> get(double x, double y) {
+		Columns<T> columns = this.columns;
+		int index = columns.indexOf(normalize(x), normalize(y));
+		return index < 0 ? null : columns.cells[index];
+	}
+
+	public Collection<T> put(BigDecimal x, BigDecimal y, Collection<T> collection) {
+		double dx = normalize(x.doubleValue());
+		double dy = normalize(y.doubleValue());
+		Columns<T> columns = this.columns;
+		int index = columns.indexOf(dx, dy);
+		if (index < 0) {
+			append(dx, dy, collection);
+			return null;
+		}
+		Collection<T> previous = columns.cells[index];
+		columns.cells[index] = collection;
+		return previous;
+	}
+
+	public Collection<T> computeIfAbsent(BigDecimal x, BigDecimal y, Supplier<Collection<T>> factory) {
+		double dx = normalize(x.doubleValue());
+		double dy = normalize(y.doubleValue());
+		Columns<T> columns = this.columns;
+		int index = columns.indexOf(dx, dy);
+		if (index >= 0) {
+			return columns.cells[index];
+		}
+		Collection<T> collection = factory.get();
+		append(dx, dy, collection);
+		return collection;
+	}
+
+	/**
+	 * rounds every coordinate once and sorts the values on the rounded doubles, so that values rounding to the same pair form one group whatever their exact order
+	 * the groups come in the order of the arrays, so that they are appended without sorting again if the store is empty, and otherwise merged into the cells they round to
+	 */
+	public boolean addAll(T[] values, Coordinate[] coordinates, Supplier<Collection<T>> factory) {
+		int size = values.length;
+		double[] xs = new double[size], ys = new double[size];
+		for (int i = 0; i < size; i++) {
+			xs[i] = normalize(coordinates[i].x().doubleValue());
+			ys[i] = normalize(coordinates[i].y().doubleValue());
+		}
+		int[] order = CoordinateSort.order(xs, ys, size);
+		int groups = 0;
+		for (int i = 0; i < size; i++) {
+			if (i == 0 || xs[order[i]] != xs[order[i - 1]] || ys[order[i]] != ys[order[i - 1]]) {
+				groups++;
+			}
+		}
+		if (this.size + groups > columns.xs.length) {
+			grow(Integer.highestOneBit(this.size + groups - 1) << 1);
+		}
+		boolean empty = this.size == 0, changed = false;
+		Collection<T> cell = null;
+		for (int i = 0; i < size; i++) {
+			int value = order[i];
+			double x = xs[value], y = ys[value];
+			if (i == 0 || x != xs[order[i - 1]] || y != ys[order[i - 1]]) {
+				Columns<T> columns = this.columns;
+				int index = empty ? -1 : columns.indexOf(x, y);
+				if (index < 0) {
+					cell = factory.get();
+					append(x, y, cell);
+				} else {
+					cell = columns.cells[index];
+				}
+			}
+			changed |= cell.add(values[value]);
+		}
+		return changed;
+	}
+
+	public Set<BigDecimal> xSet() {
+		Columns<T> columns = ensureSorted();
+		Set<BigDecimal> set = new LinkedHashSet<>();
+		for (int i = 0; i < size; i = columns.columnEnd(i, size)) {
+			set.add(toBigDecimal(columns.xs[i]));
+		}
+		return Collections.unmodifiableSet(set);
+	}
+
+	public Set<BigDecimal> ySet(BigDecimal x) {
+		return ySet(normalize(x.doubleValue()), Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+	}
+
+	public BigDecimal nextX(BigDecimal x, boolean inclusive) {
+		return nextX(x, inclusive, NO_BOUNDS);
+	}
+
+	public BigDecimal previousX(BigDecimal x, boolean inclusive) {
+		return previousX(x, inclusive, NO_BOUNDS);
+	}
+
+	public BigDecimal nextY(BigDecimal x, BigDecimal y, boolean inclusive) {
+		return nextY(x, y, inclusive, NO_BOUNDS);
+	}
+
+	public BigDecimal previousY(BigDecimal x, BigDecimal y, boolean inclusive) {
+		return previousY(x, y, inclusive, NO_BOUNDS);
+	}
+
+	public void forEach(CellVisitor<T> visitor) {
+		forEach(0, size, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, visitor);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public CellStore<T> slice(Rectangle rectangle) {
+		Columns<T> columns = ensureSorted();
+		DoubleCellStore<T> rect = new DoubleCellStore<>();
+		Range range = new Range(rectangle);
+		int end = columns.lowerBound(range.right, Double.NEGATIVE_INFINITY, 0, size);
+		for (int i = columns.lowerBound(range.left, Double.NEGATIVE_INFINITY, 0, size); i < end; i = columns.columnEnd(i, end)) {
+			int columnEnd = columns.columnEnd(i, end);
+			int last = columns.lowerBound(columns.xs[i], range.top, i, columnEnd);
+			for (int j = columns.lowerBound(columns.xs[i], range.bottom, i, columnEnd); j < last; j++) {
+				rect.append(columns.xs[j], columns.ys[j], columns.cells[j]);
+			}
+		}
+		return rect;
+	}
+
+	public CellStore<T> view(Rectangle rectangle) {
+		return new View(rectangle);
+	}
+
+	/**
+	 * helper
+	 * visits the cells in [from, to) whose y lies in [bottom, top), building each x BigDecimal once per column
+	 */
+	private void forEach(int from, int to, double bottom, double top, CellVisitor<T> visitor) {
+		Columns<T> columns = ensureSorted();
+		for (int i = from; i < to; i = columns.columnEnd(i, to)) {
+			int columnEnd = columns.columnEnd(i, to);
+			BigDecimal x = toBigDecimal(columns.xs[i]);
+			for (int j = columns.lowerBound(columns.xs[i], bottom, i, columnEnd); j < columnEnd && columns.ys[j] < top; j++) {
+				visitor.visit(x, toBigDecimal(columns.ys[j]), columns.cells[j]);
+			}
+		}
+	}
+
+	/**
+	 * helper
+	 * @param the rounded x value and the y range [bottom, top) of the column
+	 * @return the y coordinates of the column in the range in ascending order
+	 */
+	private Set<BigDecimal> ySet(double x, double bottom, double top) {
+		Columns<T> columns = ensureSorted();
+		Set<BigDecimal> set = new LinkedHashSet<>();
+		for (int i = columns.lowerBound(x, bottom, 0, size); i < size && columns.xs[i] == x && columns.ys[i] < top; i++) {
+			set.add(toBigDecimal(columns.ys[i]));
+		}
+		return Collections.unmodifiableSet(set);
+	}
+
+	/**
+	 * helper
+	 * @return the x of the first column after x within the range, or null if there is none
+	 */
+	private BigDecimal nextX(BigDecimal x, boolean inclusive, Range range) {
+		Columns<T> columns = ensureSorted();
+		double dx = normalize(x.doubleValue());
+		int next = Math.max(columns.lowerBound(inclusive ? dx : Math.nextUp(dx), Double.NEGATIVE_INFINITY, 0, size), columns.lowerBound(range.left, Double.NEGATIVE_INFINITY, 0, size));
+		return next < columns.lowerBound(range.right, Double.NEGATIVE_INFINITY, 0, size) ? toBigDecimal(columns.xs[next]) : null;
+	}
+
+	/**
+	 * helper
+	 * @return the x of the last column before x within the range, or null if there is none
+	 */
+	private BigDecimal previousX(BigDecimal x, boolean inclusive, Range range) {
+		Columns<T> columns = ensureSorted();
+		double dx = normalize(x.doubleValue());
+		int previous = Math.min(columns.lowerBound(inclusive ? Math.nextUp(dx) : dx, Double.NEGATIVE_INFINITY, 0, size), columns.lowerBound(range.right, Double.NEGATIVE_INFINITY, 0, size)) - 1;
+		return previous >= columns.lowerBound(range.left, Double.NEGATIVE_INFINITY, 0, size) ? toBigDecimal(columns.xs[previous]) : null;
+	}
+
+	/**
+	 * helper
+	 * @return the y of the first cell of the column at x after y within the range, or null if there is none
+	 */
+	private BigDecimal nextY(BigDecimal x, BigDecimal y, boolean inclusive, Range range) {
+		Columns<T> columns = ensureSorted();
+		double dx = normalize(x.doubleValue()), dy = normalize(y.doubleValue());
+		if (dx < range.left || dx >= range.right) {
+			return null;
+		}
+		int next = columns.lowerBound(dx, Math.max(inclusive ? dy : Math.nextUp(dy), range.bottom), 0, size);
+		return next < size && columns.xs[next] == dx && columns.ys[next] < range.top ? toBigDecimal(columns.ys[next]) : null;
+	}
+
+	/**
+	 * helper
+	 * @return the y of the last cell of the column at x before y within the range, or null if there is none
+	 */
+	private BigDecimal previousY(BigDecimal x, BigDecimal y, boolean inclusive, Range range) {
+		Columns<T> columns = ensureSorted();
+		double dx = normalize(x.doubleValue()), dy = normalize(y.doubleValue());
+		if (dx < range.left || dx >= range.right) {
+			return null;
+		}
+		int previous = columns.lowerBound(dx, Math.min(inclusive ? Math.nextUp(dy) : dy, range.top), 0, size) - 1;
+		return previous >= 0 && columns.xs[previous] == dx && columns.ys[previous] >= range.bottom ? toBigDecimal(columns.ys[previous]) : null;
+	}
+
+	/**
+	 * the borders of a rectangle rounded to doubles
+	 */
+	private static final class Range {
+
+		private final double left, right, bottom, top;
+
+		Range(Rectangle rectangle) {
+			this(normalize(rectangle.left().doubleValue()), normalize(rectangle.right().doubleValue()), normalize(rectangle.bottom().doubleValue()), normalize(rectangle.top().doubleValue()));
+		}
+
+		Range(double left, double right, double bottom, double top) {
+			this.left = left;
+			this.right = right;
+			this.bottom = bottom;
+			this.top = top;
+		}
+
+		boolean contains(double x, double y) {
+			return left <= x && x < right && bottom <= y && y < top;
+		}
+	}
+
+	/**
+	 * a part of the store limited to a rectangle, which reads and writes through to the store
+	 */
+	private final class View implements CellStore<T> {
+
+		private final Rectangle bounds;
+		private final Range range;
+
+		View(Rectangle bounds) {
+			this.bounds = bounds;
+			this.range = new Range(bounds);
+		}
+
+		public Collection<T> get(BigDecimal x, BigDecimal y) {
+			return get(x.doubleValue(), y.doubleValue());
+		}
+
+		public Collection<T> get(double x, double y) {
+			return range.contains(normalize(x), normalize(y)) ? DoubleCellStore.this.get(x, y) : null;
+		}
+
+		public Collection<T> put(BigDecimal x, BigDecimal y, Collection<T> collection) {
+			check(x, y);
+			return DoubleCellStore.this.put(x, y, collection);
+		}
+
+		public Collection<T> computeIfAbsent(BigDecimal x, BigDecimal y, Supplier<Collection<T>> factory) {
+			check(x, y);
+			return DoubleCellStore.this.computeIfAbsent(x, y, factory);
+		}
+
+		public Set<BigDecimal> xSet() {
+			Columns<T> columns = ensureSorted();
+			Set<BigDecimal> set = new LinkedHashSet<>();
+			int end = columns.lowerBound(range.right, Double.NEGATIVE_INFINITY, 0, size);
+			for (int i = columns.lowerBound(range.left, Double.NEGATIVE_INFINITY, 0, size); i < end; i = columns.columnEnd(i, end)) {
+				int first = columns.lowerBound(columns.xs[i], range.bottom, i, end);
+				if (first < end && columns.xs[first] == columns.xs[i] && columns.ys[first] < range.top) {
+					set.add(toBigDecimal(columns.xs[i]));
+				}
+			}
+			return Collections.unmodifiableSet(set);
+		}
+
+		public Set<BigDecimal> ySet(BigDecimal x) {
+			double dx = normalize(x.doubleValue());
+			if (dx < range.left || dx >= range.right) {
+				return Collections.emptySet();
+			}
+			return DoubleCellStore.this.ySet(dx, range.bottom, range.top);
+		}
+
+		public BigDecimal nextX(BigDecimal x, boolean inclusive) {
+			return DoubleCellStore.this.nextX(x, inclusive, range);
+		}
+
+		public BigDecimal previousX(BigDecimal x, boolean inclusive) {
+			return DoubleCellStore.this.previousX(x, inclusive, range);
+		}
+
+		public BigDecimal nextY(BigDecimal x, BigDecimal y, boolean inclusive) {
+			return DoubleCellStore.this.nextY(x, y, inclusive, range);
+		}
+
+		public BigDecimal previousY(BigDecimal x, BigDecimal y, boolean inclusive) {
+			return DoubleCellStore.this.previousY(x, y, inclusive, range);
+		}
+
+		public void forEach(CellVisitor<T> visitor) {
+			Columns<T> columns = ensureSorted();
+			int from = columns.lowerBound(range.left, Double.NEGATIVE_INFINITY, 0, size);
+			DoubleCellStore.this.forEach(from, columns.lowerBound(range.right, Double.NEGATIVE_INFINITY, from, size), range.bottom, range.top, visitor);
+		}
+
+		public CellStore<T> slice(Rectangle rectangle) {
+			return DoubleCellStore.this.slice(CellStore.clamp(bounds, rectangle));
+		}
+
+		public CellStore<T> view(Rectangle rectangle) {
+			return new View(CellStore.clamp(bounds, rectangle));
+		}
+
+		/**
+		 * helper
+		 * @throws IllegalArgumentException if the coordinate is outside the view
+		 */
+		private void check(BigDecimal x, BigDecimal y) {
+			if (!range.contains(normalize(x.doubleValue()), normalize(y.doubleValue()))) {
+				throw new IllegalArgumentException("key out of range");
+			}
+		}
+	}
+
+	/**
+	 * converts a stored double back to a BigDecimal without trailing zeros, so that whole numbers keep a scale of 0
+	 * @param the stored value
+	 * @return the BigDecimal with the same value
+	 */
+	static BigDecimal toBigDecimal(double value) {
+		BigDecimal decimal = BigDecimal.valueOf(value).stripTrailingZeros();
+		return decimal.scale() < 0 ? decimal.setScale(0) : decimal;
+	}
+
+	/**
+	 * helper
+	 * @return the value with negative zero folded into positive zero, so that equal coordinates share a key
+	 */
+	private static double normalize(double value) {
+		return value + 0.0;
+	}
+
+	/**
+	 * helper
+	 * adds a new cell at the end of the arrays, which stay sorted only if it comes after the last cell
+	 */
+	private void append(double x, double y, Collection<T> collection) {
+		if (size == columns.xs.length) {
+			grow(columns.xs.length * 2);
+		}
+		Columns<T> columns = this.columns;
+		if (size > 0 && compare(columns.xs[size - 1], columns.ys[size - 1], x, y) > 0) {
+			sorted = false;
+		}
+		columns.xs[size] = x;
+		columns.ys[size] = y;
+		columns.cells[size] = collection;
+		size++;
+		columns.insert(size - 1);
+	}
+
+	/**
+	 * helper
+	 * copies the arrays into arrays of the capacity, a power of two, and rebuilds the hash table
+	 */
+	private void grow(int capacity) {
+		Columns<T> columns = this.columns;
+		this.columns = new Columns<>(Arrays.copyOf(columns.xs, capacity), Arrays.copyOf(columns.ys, capacity), Arrays.copyOf(columns.cells, capacity), size, capacity * 2);
+	}
+
+	/**
+	 * helper
+	 * sorts the cells by x and then y if an append broke the order
+	 * @return the sorted columns
+	 */
+	private Columns<T> ensureSorted() {
+		if (!sorted) {
+			synchronized (this) {
+				if (!sorted) {
+					sortCells();
+				}
+			}
+		}
+		return columns;
+	}
+
+	/**
+	 * helper
+	 * builds arrays ordered by x and then y with their own hash table, and publishes them only once they are complete
+	 */
+	private void sortCells() {
+		Columns<T> columns = this.columns;
+		int[] order = CoordinateSort.order(columns.xs, columns.ys, size);
+		double[] sortedXs = new double[columns.xs.length];
+		double[] sortedYs = new double[columns.ys.length];
+		Collection<T>[] sortedCells = newCells(columns.cells.length);
+		for (int i = 0; i < size; i++) {
+			sortedXs[i] = columns.xs[order[i]];
+			sortedYs[i] = columns.ys[order[i]];
+			sortedCells[i] = columns.cells[order[i]];
+		}
+		this.columns = new Columns<>(sortedXs, sortedYs, sortedCells, size, columns.table.length);
+		sorted = true;
+	}
+
+	/**
+	 * the coordinates and cells in parallel arrays, with the hash table indexing them
+	 * a sort or a growth makes new columns instead of changing these arrays, so that a reader holding them always sees a table matching its arrays
+	 */
+	private static final class Columns<T> {
+
+		private final double[] xs;
+		private final double[] ys;
+		private final Collection<T>[] cells;
+
+		/** slots holding the index of a cell plus one, or 0 if the slot is empty */
+		private final int[] table;
+
+		/**
+		 * @param the arrays, the number of cells in them and the number of slots of the hash table, which is filled with those cells
+		 */
+		Columns(double[] xs, double[] ys, Collection<T>[] cells, int size, int slots) {
+			this.xs = xs;
+			this.ys = ys;
+			this.cells = cells;
+			this.table = new int[slots];
+			for (int i = 0; i < size; i++) {
+				insert(i);
+			}
+		}
+
+		/**
+		 * @return the index of the cell at (x, y), or -1 if there is none
+		 */
+		int indexOf(double x, double y) {
+			int mask = table.length - 1;
+			for (int slot = hash(x, y) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+				int index = table[slot] - 1;
+				if (xs[index] == x && ys[index] == y) {
+					return index;
+				}
+			}
+			return -1;
+		}
+
+		/**
+		 * puts the cell at index in the first free slot of its probe sequence
+		 */
+		void insert(int index) {
+			int mask = table.length - 1;
+			int slot = hash(xs[index], ys[index]) & mask;
+			while (table[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = index + 1;
+		}
+
+		/**
+		 * @return the first index in [from, to) whose cell is not before (x, y)
+		 */
+		int lowerBound(double x, double y, int from, int to) {
+			while (from < to) {
+				int mid = (from + to) >>> 1;
+				if (compare(xs[mid], ys[mid], x, y) < 0) {
+					from = mid + 1;
+				} else {
+					to = mid;
+				}
+			}
+			return from;
+		}
+
+		/**
+		 * @return the index after the last cell of the column starting at from, searching no further than to
+		 */
+		int columnEnd(int from, int to) {
+			double x = xs[from];
+			while (from < to) {
+				int mid = (from + to) >>> 1;
+				if (xs[mid] <= x) {
+					from = mid + 1;
+				} else {
+					to = mid;
+				}
+			}
+			return from;
+		}
+	}
+
+	private static int compare(double x1, double y1, double x2, double y2) {
+		int compare = Double.compare(x1, x2);
+		return compare != 0 ? compare : Double.compare(y1, y2);
+	}
+
+	private static int hash(double x, double y) {
+		long h = Double.doubleToLongBits(x) * 0x9E3779B97F4A7C15L + Double.doubleToLongBits(y);
+		h *= 0xBF58476D1CE4E5B9L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> Collection<T>[] newCells(int capacity) {
+		return (Collection<T>[]) new Collection<?>[capacity];
+	}
+}
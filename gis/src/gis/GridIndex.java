@@ -0,0 +1,307 @@
+package gis;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * A frozen index over the cells of a BiDimensionalMap, bulk loaded into a grid of buckets so that rectangle queries only visit the buckets they cover
+ * the edges of the columns and rows are quantiles of the x and y values of the cells, so that clustered cells are spread over the buckets like uniform ones instead of piling up in a few of them
+ * the index shares the collections of the map, but cells added to the map after the index was built are not seen by it
+ */
+public final class GridIndex<T> {
+
+	/** the number of cells aimed for in every bucket */
+	private static final int CELLS_PER_BUCKET = 8;
+
+	private final BigDecimal[] xs;
+	private final BigDecimal[] ys;
+	private final Collection<T>[] cells;
+
+	/** the coordinates of the cells rounded to doubles, for the bounds of nearest */
+	private final double[] xValues;
+	private final double[] yValues;
+	private final int[] bucketStart;
+	private final int columns;
+	private final int rows;
+
+	/** the lowest x of every column followed by the highest x of the cells, and the same for the rows */
+	private final double[] xEdges;
+	private final double[] yEdges;
+
+	/**
+	 * sorts the cells into their buckets, keeping the cells of a bucket ordered by their coordinates
+	 * @param the x and y coordinates and the collections of the cells, ordered by their coordinates
+	 */
+	@SuppressWarnings("unchecked")
+	private GridIndex(List<BigDecimal> xList, List<BigDecimal> yList, List<Collection<T>> cellList) {
+		int size = cellList.size();
+		double[] xOf = new double[size], yOf = new double[size];
+		for (int i = 0; i < size; i++) {
+			xOf[i] = xList.get(i).doubleValue();
+			yOf[i] = yList.get(i).doubleValue();
+		}
+		int side = (int) Math.ceil(Math.sqrt(Math.max(1, size / CELLS_PER_BUCKET)));
+		xEdges = edges(xOf.clone(), side);
+		yEdges = edges(yOf.clone(), side);
+		columns = xEdges.length - 1;
+		rows = yEdges.length - 1;
+
+		int[] bucketOf = new int[size];
+		bucketStart = new int[columns * rows + 1];
+		for (int i = 0; i < size; i++) {
+			bucketOf[i] = bucket(column(xOf[i]), row(yOf[i]));
+			bucketStart[bucketOf[i] + 1]++;
+		}
+		for (int b = 0; b < columns * rows; b++) {
+			bucketStart[b + 1] += bucketStart[b];
+		}
+		xs = new BigDecimal[size];
+		ys = new BigDecimal[size];
+		cells = (Collection<T>[]) new Collection<?>[size];
+		xValues = new double[size];
+		yValues = new double[size];
+		int[] next = bucketStart.clone();
+		for (int i = 0; i < size; i++) {
+			int position = next[bucketOf[i]]++;
+			xs[position] = xList.get(i);
+			ys[position] = yList.get(i);
+			cells[position] = cellList.get(i);
+			xValues[position] = xOf[i];
+			yValues[position] = yOf[i];
+		}
+	}
+
+	/**
+	 * helper
+	 * sorts the values and takes the value at every side-th part of them as the lowest value of a column, so that the columns hold about as many values each
+	 * equal values make equal edges, which leave the columns between them empty
+	 * @return the lowest value of every column and the highest value, a single column from 0 to 0 if there is no value and a single column if the values are all equal
+	 */
+	private static double[] edges(double[] values, int side) {
+		int size = values.length;
+		if (size == 0) {
+			return new double[2];
+		}
+		Arrays.sort(values);
+		if (values[0] == values[size - 1]) {
+			return new double[] { values[0], values[0] };
+		}
+		double[] edges = new double[side + 1];
+		for (int i = 0; i < side; i++) {
+			edges[i] = values[(int) ((long) i * size / side)];
+		}
+		edges[side] = values[size - 1];
+		return edges;
+	}
+
+	/**
+	 * bulk loads a new index from the cells currently in the map
+	 * @param the map to be indexed
+	 * @return the index over the map
+	 */
+	public static <T> GridIndex<T> of(BiDimensionalMap<T> map) {
+		List<BigDecimal> xList = new ArrayList<>();
+		List<BigDecimal> yList = new ArrayList<>();
+		List<Collection<T>> cellList = new ArrayList<>();
+		Objects.requireNonNull(map).forEachCell((x, y, values) -> {
+			xList.add(x);
+			yList.add(y);
+			cellList.add(values);
+		});
+		return new GridIndex<>(xList, yList, cellList);
+	}
+
+	/**
+	 * visits every cell in the given valid rectangle, with the same borders as BiDimensionalMap.slice, bucket by bucket
+	 * @param the rectangle to be queried and the visitor receiving the cells
+	 */
+	public void forEach(Rectangle rectangle, CellVisitor<T> visitor) {
+		Rectangle.validate(rectangle);
+		int firstColumn = column(rectangle.left().doubleValue()), lastColumn = column(rectangle.right().doubleValue());
+		int firstRow = row(rectangle.bottom().doubleValue()), lastRow = row(rectangle.top().doubleValue());
+		for (int column = firstColumn; column <= lastColumn; column++) {
+			for (int row = firstRow; row <= lastRow; row++) {
+				boolean inside = firstColumn < column && column < lastColumn && firstRow < row && row < lastRow;
+				int bucket = bucket(column, row);
+				for (int i = bucketStart[bucket]; i < bucketStart[bucket + 1]; i++) {
+					if (inside || contains(rectangle, xs[i], ys[i])) {
+						visitor.visit(xs[i], ys[i], cells[i]);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param the rectangle to be queried
+	 * @return the number of entries stored in the given valid rectangle
+	 */
+	public long count(Rectangle rectangle) {
+		long[] count = new long[1];
+		forEach(rectangle, (x, y, values) -> count[0] += values.size());
+		return count[0];
+	}
+
+	/**
+	 * @param the rectangle to be queried and the predicate to be satisfied
+	 * @return the number of entries stored in the given valid rectangle that satisfy the predicate
+	 */
+	public long count(Rectangle rectangle, Predicate<? super T> filter) {
+		Objects.requireNonNull(filter);
+		long[] count = new long[1];
+		forEach(rectangle, (x, y, values) -> {
+			for (T value : values) {
+				if (filter.test(value)) {
+					count[0]++;
+				}
+			}
+		});
+		return count[0];
+	}
+
+	/**
+	 * finds the values closest to a coordinate like BiDimensionalMap.nearest, opening the buckets ring by ring around the bucket of the coordinate
+	 * @param the coordinate and the largest number of values to be found
+	 * @return a lazy stream of the k values closest to the coordinate in ascending distance
+	 * @throws NullPointerException if the coordinate is null
+	 * @throws IllegalArgumentException if k is negative
+	 */
+	public Stream<Neighbor<T>> nearest(Coordinate coordinate, int k) {
+		return search(coordinate).nearest(k);
+	}
+
+	/**
+	 * finds the values within a distance of a coordinate like BiDimensionalMap.withinDistance, opening the buckets ring by ring around the bucket of the coordinate
+	 * @param the coordinate and the distance
+	 * @return a lazy stream of the values within the distance of the coordinate in ascending distance
+	 * @throws NullPointerException if the coordinate or the distance is null
+	 * @throws IllegalArgumentException if the distance is negative
+	 */
+	public Stream<Neighbor<T>> withinDistance(Coordinate coordinate, BigDecimal distance) {
+		return search(coordinate).within(distance);
+	}
+
+	/**
+	 * @return the number of cells in the index
+	 */
+	public int size() {
+		return cells.length;
+	}
+
+	/**
+	 * helper
+	 * @return a search starting from the ring made of the bucket of the coordinate alone
+	 */
+	private NearestSearch<T> search(Coordinate coordinate) {
+		NearestSearch<T> search = new NearestSearch<>(Coordinate.validate(coordinate));
+		addRing(search, coordinate, column(coordinate.x().doubleValue()), row(coordinate.y().doubleValue()), 0);
+		return search;
+	}
+
+	/**
+	 * helper
+	 * queues the buckets whose column or row is ring buckets away from those of the coordinate, followed by the next ring once they are queued
+	 * a cell of such a bucket lies beyond the lowest edge of the column ring - 1 columns to the left, the highest edge of the column ring - 1 columns to the right, or the same edges of the rows
+	 */
+	private void addRing(NearestSearch<T> search, Coordinate coordinate, int column, int row, int ring) {
+		if (ring >= Math.max(columns, rows)) {
+			return;
+		}
+		double x = coordinate.x().doubleValue(), y = coordinate.y().doubleValue();
+		double bound = ring == 0 ? 0 : Double.POSITIVE_INFINITY;
+		if (ring > 0 && column - ring >= 0) {
+			bound = Math.min(bound, search.lowerBound(Math.min(x, xEdges[column - ring + 1]), y));
+		}
+		if (ring > 0 && column + ring < columns) {
+			bound = Math.min(bound, search.lowerBound(Math.max(x, xEdges[column + ring]), y));
+		}
+		if (ring > 0 && row - ring >= 0) {
+			bound = Math.min(bound, search.lowerBound(x, Math.min(y, yEdges[row - ring + 1])));
+		}
+		if (ring > 0 && row + ring < rows) {
+			bound = Math.min(bound, search.lowerBound(x, Math.max(y, yEdges[row + ring])));
+		}
+		search.addPart(bound, part -> {
+			for (int c = Math.max(0, column - ring); c <= Math.min(columns - 1, column + ring); c++) {
+				if (Math.abs(c - column) == ring) {
+					for (int r = Math.max(0, row - ring); r <= Math.min(rows - 1, row + ring); r++) {
+						addBucket(search, x, y, c, r);
+					}
+				} else {
+					addBucket(search, x, y, c, row - ring);
+					addBucket(search, x, y, c, row + ring);
+				}
+			}
+			addRing(search, coordinate, column, row, ring + 1);
+		});
+	}
+
+	/**
+	 * helper
+	 * queues the bucket, if its row is in the grid and it holds any cell, to be opened once nothing left is closer than the point of the bucket closest to the coordinate
+	 */
+	private void addBucket(NearestSearch<T> search, double x, double y, int column, int row) {
+		if (row < 0 || row >= rows) {
+			return;
+		}
+		int bucket = bucket(column, row);
+		if (bucketStart[bucket] == bucketStart[bucket + 1]) {
+			return;
+		}
+		double closestX = Math.max(xEdges[column], Math.min(x, xEdges[column + 1]));
+		double closestY = Math.max(yEdges[row], Math.min(y, yEdges[row + 1]));
+		search.addPart(search.lowerBound(closestX, closestY), part -> {
+			for (int i = bucketStart[bucket]; i < bucketStart[bucket + 1]; i++) {
+				search.addCell(xs[i], ys[i], xValues[i], yValues[i], cells[i]);
+			}
+		});
+	}
+
+	/**
+	 * helper
+	 * the exact test for cells in buckets crossed by the border of the rectangle
+	 */
+	private static boolean contains(Rectangle rectangle, BigDecimal x, BigDecimal y) {
+		return rectangle.left().compareTo(x) <= 0 && x.compareTo(rectangle.right()) < 0
+				&& rectangle.bottom().compareTo(y) <= 0 && y.compareTo(rectangle.top()) < 0;
+	}
+
+	/**
+	 * helper
+	 * the bucket column of a value, the last column whose lowest edge is not above it, which never decreases as the value grows so that buckets strictly between two borders lie inside them
+	 */
+	private int column(double x) {
+		return index(xEdges, columns, x);
+	}
+
+	private int row(double y) {
+		return index(yEdges, rows, y);
+	}
+
+	/**
+	 * helper
+	 * @return the index of the last of the first count edges not above the value, or 0 if none of them is
+	 */
+	private static int index(double[] edges, int count, double value) {
+		int low = 1, high = count;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (edges[mid] <= value) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low - 1;
+	}
+
+	private int bucket(int column, int row) {
+		return column * rows + row;
+	}
+}
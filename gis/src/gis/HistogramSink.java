@@ -0,0 +1,123 @@
+package gis;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A sink keeping a latency histogram per operation, with the cells read and the bytes allocated by the operations
+ */
+public final class HistogramSink implements MetricsSink {
+
+	/**
+	 * the measurements of one operation
+	 */
+	public static final class Stats {
+
+		private final LatencyHistogram latency = new LatencyHistogram();
+		private final LongAdder tracked = new LongAdder();
+		private final LongAdder cells = new LongAdder();
+		private final LongAdder measured = new LongAdder();
+		private final LongAdder bytes = new LongAdder();
+
+		private Stats() {
+		}
+
+		/**
+		 * @return the histogram of the latencies in nanoseconds
+		 */
+		public LatencyHistogram latency() {
+			return latency;
+		}
+
+		/**
+		 * @return the number of recorded operations
+		 */
+		public long count() {
+			return latency.count();
+		}
+
+		/**
+		 * @return the total of the cells read by the operations that track them
+		 */
+		public long cells() {
+			return cells.sum();
+		}
+
+		/**
+		 * @return the mean of the cells read per operation, over the operations that track them, or 0 if none did
+		 */
+		public double cellsPerOperation() {
+			long n = tracked.sum();
+			return n == 0 ? 0 : (double) cells.sum() / n;
+		}
+
+		/**
+		 * @return the total of the bytes allocated by the operations, if the JVM can tell
+		 */
+		public long bytes() {
+			return bytes.sum();
+		}
+
+		/**
+		 * @return the mean of the bytes allocated per operation, or 0 if the JVM cannot tell
+		 */
+		public double bytesPerOperation() {
+			long n = measured.sum();
+			return n == 0 ? 0 : (double) bytes.sum() / n;
+		}
+
+		/**
+		 * forgets the measurements
+		 */
+		public void reset() {
+			latency.reset();
+			tracked.reset();
+			cells.reset();
+			measured.reset();
+			bytes.reset();
+		}
+
+		/**
+		 * helper
+		 */
+		private void record(long nanos, long cells, long bytes) {
+			latency.record(nanos);
+			if (cells >= 0) {
+				tracked.increment();
+				this.cells.add(cells);
+			}
+			if (bytes >= 0) {
+				measured.increment();
+				this.bytes.add(bytes);
+			}
+		}
+	}
+
+	private final Map<Metrics.Operation, Stats> stats = new EnumMap<>(Metrics.Operation.class);
+
+	public HistogramSink() {
+		for (Metrics.Operation operation : Metrics.Operation.values()) {
+			stats.put(operation, new Stats());
+		}
+	}
+
+	public void record(Metrics.Operation operation, long nanos, long cells, long bytes) {
+		stats.get(operation).record(nanos, cells, bytes);
+	}
+
+	/**
+	 * @param the operation
+	 * @return the measurements of the operation
+	 */
+	public Stats get(Metrics.Operation operation) {
+		return stats.get(operation);
+	}
+
+	/**
+	 * forgets the measurements of every operation
+	 */
+	public void reset() {
+		stats.values().forEach(Stats::reset);
+	}
+}
@@ -1,8 +1,22 @@
 package gis;
 
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 
 /**
@@ -10,29 +24,141 @@ import java.util.Objects;
  */
 public final class InterestPoints<M> {
 
+	/** the number of rectangles from which a region is counted in one walk over its bounds, if its mask covers enough of them */
+	private static final int MASK_RECTANGLES = 16;
+	
+	/** the share of its bounds a region has to cover to be counted in one walk, so that the cells walked outside it stay fewer than those inside */
+	private static final double MASK_COVERAGE = 0.5;
+
 	private final BiDimensionalMap<InterestPoint> points;
 	
+	private final GridIndex<InterestPoint> index;
+	
+	private final PrefixSumIndex prefixSums;
+	
+	/** the mapped file the points are read from, or null if they are on the heap */
+	private final MappedCellStore snapshot;
+	
+	/** the ids of the markers kept as bits in the cells, or null if markers are not encoded */
+	private final MarkerDictionary dictionary;
+	
+	/** the counts cached for regions and markers, shared with the builder that writes to the same points, or null if counts are not cached */
+	private final CountCache cache;
+	
+	/** the number of InterestPoints the builder built before this one, keeping its cached counts apart from theirs */
+	private final int generation;
+	
 	/**
 	 * @param builder for an InterestPoints
 	 */
 	private InterestPoints(Builder builder) {
 		points = builder.points;
+		index = builder.indexed ? GridIndex.of(points) : null;
+		prefixSums = builder.prefixSumMarkers.isEmpty() ? null : new PrefixSumIndex(points, builder.prefixSumMarkers);
+		snapshot = null;
+		dictionary = builder.dictionary;
+		cache = builder.cache;
+		generation = builder.built++;
+	}
+	
+	/**
+	 * @param the read-only store holding the points, such as a mapped snapshot or a version of VersionedInterestPoints
+	 */
+	private InterestPoints(CellStore<InterestPoint> store) {
+		points = new BiDimensionalMap<>(store);
+		index = null;
+		prefixSums = null;
+		snapshot = store instanceof MappedCellStore mapped ? mapped : null;
+		dictionary = null;
+		cache = null;
+		generation = 0;
+	}
+	
+	/**
+	 * @param the read-only store holding the points
+	 * @return interest points reading the store
+	 */
+	static <M> InterestPoints<M> of(CellStore<InterestPoint> store) {
+		return new InterestPoints<>(store);
+	}
+	
+	/**
+	 * @return the map holding the interest points
+	 */
+	final BiDimensionalMap<InterestPoint> points() {
+		return points;
+	}
+	
+	/**
+	 * writes the interest points to a snapshot file that open maps back without rebuilding them, storing every marker as its toString
+	 * @param the file to be written, replaced if it exists
+	 * @throws IOException if the file cannot be written
+	 * @throws IllegalArgumentException if a coordinate has more digits than a long holds
+	 */
+	public final void write(Path path) throws IOException {
+		write(path, String::valueOf);
+	}
+	
+	/**
+	 * writes the interest points to a snapshot file that open maps back without rebuilding them
+	 * only the markers of the points are stored, and they come back with the coordinate of their cell as the storage gives it, so that DOUBLE storage drops trailing zeros
+	 * @param the file to be written, replaced if it exists, and the function turning a marker into the string stored for it
+	 * @throws IOException if the file cannot be written
+	 * @throws IllegalArgumentException if a coordinate has more digits than a long holds
+	 */
+	@SuppressWarnings("unchecked")
+	public final void write(Path path, Function<? super M, String> encoder) throws IOException {
+		Objects.requireNonNull(encoder);
+		MappedCellStore.write(points, Objects.requireNonNull(path), marker -> encoder.apply((M) marker));
+	}
+	
+	/**
+	 * maps a snapshot file written with string markers
+	 * @param the snapshot file
+	 * @return read-only interest points backed by the file
+	 * @throws IOException if the file cannot be read or is not a snapshot
+	 */
+	public static final InterestPoints<String> open(Path path) throws IOException {
+		return open(path, Function.identity());
+	}
+	
+	/**
+	 * maps a snapshot file, reading only its header and marker dictionary, so that the points stay in the file off the heap and count reads them there
+	 * @param the snapshot file and the function turning a stored string back into its marker
+	 * @return read-only interest points backed by the file, which stays mapped as long as they are reachable
+	 * @throws IOException if the file cannot be read or is not a snapshot
+	 */
+	public static final <M> InterestPoints<M> open(Path path, Function<String, ? extends M> decoder) throws IOException {
+		return new InterestPoints<>(MappedCellStore.open(Objects.requireNonNull(path), Objects.requireNonNull(decoder)));
 	}
 	
 	/**
 	 * @param the coordinate to be checked
-	 * @return the interest points at the given valid coordinate
+	 * @return the interest points at the given valid coordinate, whose changes drop the cached counts of the regions containing it if counts are cached
 	 * @throws NullPointerExcception if coordinate fails to validate
 	 */
 	public final Collection<InterestPoint> get(Coordinate coordinate) {
-		return points.get(Coordinate.validate(coordinate));
+		Collection<InterestPoint> cell = points.get(Coordinate.validate(coordinate));
+		return cache == null || cell == null ? cell : new CachedCell(coordinate.x(), coordinate.y(), cell, cache);
 	}
 	
 	/**
-	 * @return the list of interest points ordered by their coordinates
+	 * @return the list of interest points ordered by their coordinates, whose changes drop the cached counts like those of get
 	 */
 	public final List<Collection<InterestPoint>> interestPoints() {
-		return points.collectionList();
+		if (cache == null) {
+			return points.collectionList();
+		}
+		List<Collection<InterestPoint>> list = new ArrayList<>();
+		points.forEachCell((x, y, values) -> list.add(new CachedCell(x, y, values, cache)));
+		return list;
+	}
+	
+	/**
+	 * @return the statistics of the count cache, all zero if counts are not cached
+	 */
+	public final CacheStats cacheStats() {
+		return cache == null ? new CacheStats(0, 0, 0, 0) : cache.stats();
 	}
 	
 	/**
@@ -45,21 +171,450 @@ public final class InterestPoints<M> {
 	/**
 	 * @param given non-overlapping region
 	 * @param given marker to be checked for
-	 * @return returns the number of interest points that has the given marker within the given region
+	 * @return returns the number of interest points that has the given marker within the given region, answered by the count cache, or the prefix sums of the marker or the grid index if they were built
 	 */
 	public final long count(RectilinearRegion region,M marker) {
+		Metrics.Probe probe = Metrics.start(Metrics.Operation.COUNT);
+		long count = cache == null ? count(region, marker, probe) : cache.get(region.getRectangles(), marker, generation, () -> count(region, marker, probe));
+		if (probe != null) {
+			probe.stop();
+		}
+		return count;
+	}
+	
+	/**
+	 * counts like count, with the rectangles of the region counted in parallel on the common ForkJoinPool, since they do not overlap, and rectangles over many x columns further split into strips of columns
+	 * @param given non-overlapping region
+	 * @param given marker to be checked for
+	 * @return returns the number of interest points that has the given marker within the given region
+	 */
+	public final long parallelCount(RectilinearRegion region,M marker) {
+		if (prefixSums != null && prefixSums.contains(marker)) {
+			return count(region, marker);
+		}
+		Metrics.Probe probe = Metrics.start(Metrics.Operation.COUNT);
+		long count = cache == null ? parallelCount(region.getRectangles(), marker, probe) : cache.get(region.getRectangles(), marker, generation, () -> parallelCount(region.getRectangles(), marker, probe));
+		if (probe != null) {
+			probe.stop();
+		}
+		return count;
+	}
+	
+	/**
+	 * counts every marker in every region with one plane sweep over the points within the bounds of the regions, instead of a count per pair, which suits many regions such as the districts of a city
+	 * the regions may overlap each other, and a region given twice is counted twice
+	 * @param the regions and the markers to be counted
+	 * @return the matrix of counts, whose [i][j] entry is the number of interest points with the jth marker within the ith region
+	 * @throws NullPointerException if the regions, the markers or one of the regions is null
+	 */
+	public final long[][] countAll(List<RectilinearRegion> regions, List<M> markers) {
+		return countAll(regions, markers, false);
+	}
+	
+	/**
+	 * counts like countAll, with the x columns within the bounds of the regions split into strips swept in parallel on the common ForkJoinPool and their matrices added up
+	 * @param the regions and the markers to be counted
+	 * @return the matrix of counts, whose [i][j] entry is the number of interest points with the jth marker within the ith region
+	 * @throws NullPointerException if the regions, the markers or one of the regions is null
+	 */
+	public final long[][] parallelCountAll(List<RectilinearRegion> regions, List<M> markers) {
+		return countAll(regions, markers, true);
+	}
+	
+	/**
+	 * helper
+	 * @return the matrix of counts of countAll, swept in strips of columns if parallel
+	 */
+	private long[][] countAll(List<RectilinearRegion> regions, List<M> markers, boolean parallel) {
+		Objects.requireNonNull(markers);
+		RegionJoin join = new RegionJoin(Objects.requireNonNull(regions));
+		Metrics.Probe probe = Metrics.start(Metrics.Operation.COUNT_ALL);
+		long[][] counts = new long[regions.size()][markers.size()];
+		Rectangle bounds = join.bounds();
+		if (bounds != null && !markers.isEmpty()) {
+			BiDimensionalMap<InterestPoint> cells = points.view(bounds);
+			BigDecimal[] columns = parallel ? cells.xSet().toArray(new BigDecimal[0]) : new BigDecimal[0];
+			if (columns.length <= StripCount.COLUMNS_PER_STRIP) {
+				countAll(join, cells, markers, counts, probe);
+			} else {
+				int strips = Math.min(columns.length / StripCount.COLUMNS_PER_STRIP, 4 * ForkJoinPool.getCommonPoolParallelism());
+				IntStream.range(0, strips).parallel().mapToObj(strip -> {
+					BigDecimal left = columns[(int) ((long) columns.length * strip / strips)];
+					BigDecimal right = strip + 1 < strips ? columns[(int) ((long) columns.length * (strip + 1) / strips)] : bounds.right();
+					long[][] part = new long[regions.size()][markers.size()];
+					countAll(join, points.view(new Rectangle(new Coordinate(left, bounds.bottom()), new Coordinate(right, bounds.top()))), markers, part, probe);
+					return part;
+				}).forEachOrdered(part -> {
+					for (int i = 0; i < counts.length; i++) {
+						for (int j = 0; j < counts[i].length; j++) {
+							counts[i][j] += part[i][j];
+						}
+					}
+				});
+			}
+		}
+		if (probe != null) {
+			probe.stop();
+		}
+		return counts;
+	}
+	
+	/**
+	 * helper
+	 * adds the counts of the cells to the matrix, counting the markers of a cell once for all the regions containing it
+	 */
+	private void countAll(RegionJoin join, BiDimensionalMap<InterestPoint> cells, List<M> markers, long[][] counts, Metrics.Probe probe) {
+		int[] ids = new int[markers.size()];
+		for (int j = 0; j < ids.length; j++) {
+			ids[j] = id(markers.get(j));
+		}
+		long[] cell = new long[ids.length];
+		long swept = join.sweep(cells, (values, regions, found) -> {
+			for (int j = 0; j < ids.length; j++) {
+				cell[j] = count(values, ids[j], markers.get(j));
+			}
+			for (int r = 0; r < found; r++) {
+				long[] row = counts[regions[r]];
+				for (int j = 0; j < ids.length; j++) {
+					row[j] += cell[j];
+				}
+			}
+		});
+		if (probe != null) {
+			probe.visited(swept);
+		}
+	}
+	
+	/**
+	 * helper
+	 * @return the number of interest points in the region that has the given marker, counted one rectangle after the other, or in one walk over the bounds of a region tiled from many rectangles that mostly cover them, testing every cell against the mask of the region if its grid of edges is small enough to be rasterized
+	 */
+	private long count(RectilinearRegion region, M marker, Metrics.Probe probe) {
+		Set<Rectangle> rectangles = region.getRectangles();
+		if (rectangles.size() >= MASK_RECTANGLES && snapshot == null && (prefixSums == null || !prefixSums.contains(marker))) {
+			RegionMask mask = region.mask();
+			if (mask.coverage() >= MASK_COVERAGE && mask.isRasterizable()) {
+				int id = id(marker);
+				long[] count = new long[2];
+				CellVisitor<InterestPoint> visitor = (x, y, values) -> {
+					if (mask.contains(x, y)) {
+						count[0] += count(values, id, marker);
+					}
+					count[1]++;
+				};
+				if (index != null) {
+					index.forEach(mask.bounds(), visitor);
+				} else {
+					points.view(mask.bounds()).forEachCell(visitor);
+				}
+				if (probe != null) {
+					probe.visited(count[1]);
+				}
+				return count[0];
+			}
+		}
+		long count = 0;
+		for (Rectangle rectangle : rectangles) {
+			count += count(rectangle, marker, probe);
+		}
+		return count;
+	}
+	
+	/**
+	 * helper
+	 * @return the number of interest points in the rectangles that has the given marker, counted in parallel
+	 */
+	private long parallelCount(Set<Rectangle> rectangles, M marker, Metrics.Probe probe) {
+		return rectangles.parallelStream().mapToLong(rectangle -> {
+			if (index != null || snapshot != null) {
+				return count(rectangle, marker, probe);
+			}
+			BigDecimal[] columns = points.view(rectangle).xSet().toArray(new BigDecimal[0]);
+			if (columns.length <= StripCount.COLUMNS_PER_STRIP) {
+				return count(rectangle, marker, probe);
+			}
+			return new StripCount(rectangle, columns, 0, columns.length, marker, probe).invoke();
+		}).sum();
+	}
+	
+	/**
+	 * helper
+	 * @return the number of interest points in the rectangle that has the given marker, answered by the prefix sums of the marker or the grid index if they were built, or straight from the mapped file of a snapshot
+	 * the cells read by the grid index or the map are added to the probe, if any
+	 */
+	private long count(Rectangle rectangle, M marker, Metrics.Probe probe) {
+		if (prefixSums != null && prefixSums.contains(marker)) {
+			return prefixSums.count(Rectangle.validate(rectangle), marker);
+		}
+		if (snapshot != null) {
+			return snapshot.count(Rectangle.validate(rectangle), marker);
+		}
+		if (index == null) {
+			return count(points.view(rectangle), marker, probe);
+		}
+		int id = id(marker);
+		long[] count = new long[2];
+		index.forEach(rectangle, (x, y, values) -> {
+			count[0] += count(values, id, marker);
+			count[1]++;
+		});
+		if (probe != null) {
+			probe.visited(count[1]);
+		}
+		return count[0];
+	}
+	
+	/**
+	 * helper
+	 * @return the number of interest points in the map that has the given marker, adding the cells read to the probe, if any
+	 */
+	private long count(BiDimensionalMap<InterestPoint> cells, M marker, Metrics.Probe probe) {
+		int id = id(marker);
+		long[] count = new long[2];
+		cells.forEachCell((x, y, values) -> {
+			count[0] += count(values, id, marker);
+			count[1]++;
+		});
+		if (probe != null) {
+			probe.visited(count[1]);
+		}
+		return count[0];
+	}
+	
+	/**
+	 * helper
+	 * @return the id of the marker if markers are encoded and it has one, or -1 otherwise
+	 */
+	private int id(M marker) {
+		return dictionary == null ? -1 : dictionary.idOf(marker);
+	}
+	
+	/**
+	 * helper
+	 * @return the number of interest points in the cell that has the given marker, testing the bit of the marker if the cell encodes its markers
+	 */
+	private static long count(Collection<InterestPoint> values, int id, Object marker) {
+		if (values instanceof MarkerSet) {
+			return ((MarkerSet) values).count(id, marker);
+		}
 		long count = 0;
-		for (Rectangle rectangle : region.getRectangles()) {
-			count += points.slice(rectangle).collectionSize(a -> a.hasMarker(marker));
+		for (InterestPoint value : values) {
+			if (value.hasMarker(marker)) {
+				count++;
+			}
 		}
 		return count;
 	}
 	
+	/**
+	 * counts a rectangle by halving its x columns until each strip of columns is small enough to be counted through a view
+	 */
+	private final class StripCount extends RecursiveTask<Long> {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private static final int COLUMNS_PER_STRIP = 64;
+		
+		private final Rectangle rectangle;
+		private final BigDecimal[] columns;
+		private final int from, to;
+		private final M marker;
+		private final Metrics.Probe probe;
+		
+		/**
+		 * @param the rectangle, its x columns, the columns [from, to) of the strip, the marker and the probe of the count, if any
+		 */
+		StripCount(Rectangle rectangle, BigDecimal[] columns, int from, int to, M marker, Metrics.Probe probe) {
+			this.rectangle = rectangle;
+			this.columns = columns;
+			this.from = from;
+			this.to = to;
+			this.marker = marker;
+			this.probe = probe;
+		}
+		
+		protected Long compute() {
+			if (to - from <= COLUMNS_PER_STRIP) {
+				BigDecimal right = to < columns.length ? columns[to] : rectangle.right();
+				Rectangle strip = new Rectangle(new Coordinate(columns[from], rectangle.bottom()), new Coordinate(right, rectangle.top()));
+				return count(points.view(strip), marker, probe);
+			}
+			int mid = (from + to) >>> 1;
+			StripCount left = new StripCount(rectangle, columns, from, mid, marker, probe);
+			left.fork();
+			long right = new StripCount(rectangle, columns, mid, to, marker, probe).compute();
+			return left.join() + right;
+		}
+	}
+	
+	/**
+	 * a cell handed out while counts are cached, which drops the cached counts of the regions containing the cell after every change
+	 */
+	private static final class CachedCell extends AbstractCollection<InterestPoint> {
+		
+		private final BigDecimal x, y;
+		private final Collection<InterestPoint> cell;
+		private final CountCache cache;
+		
+		/**
+		 * @param the x and y coordinate of the cell, the cell and the cache
+		 */
+		CachedCell(BigDecimal x, BigDecimal y, Collection<InterestPoint> cell, CountCache cache) {
+			this.x = x;
+			this.y = y;
+			this.cell = cell;
+			this.cache = cache;
+		}
+		
+		public Iterator<InterestPoint> iterator() {
+			Iterator<InterestPoint> iterator = cell.iterator();
+			return new Iterator<InterestPoint>() {
+				
+				public boolean hasNext() {
+					return iterator.hasNext();
+				}
+				
+				public InterestPoint next() {
+					return iterator.next();
+				}
+				
+				public void remove() {
+					iterator.remove();
+					cache.invalidate(x, y);
+				}
+			};
+		}
+		
+		public int size() {
+			return cell.size();
+		}
+		
+		public boolean contains(Object value) {
+			return cell.contains(value);
+		}
+		
+		public boolean add(InterestPoint value) {
+			return changed(cell.add(value));
+		}
+		
+		public boolean remove(Object value) {
+			return changed(cell.remove(value));
+		}
+		
+		public boolean addAll(Collection<? extends InterestPoint> values) {
+			return changed(cell.addAll(values));
+		}
+		
+		public boolean removeAll(Collection<?> values) {
+			return changed(cell.removeAll(values));
+		}
+		
+		public boolean retainAll(Collection<?> values) {
+			return changed(cell.retainAll(values));
+		}
+		
+		public void clear() {
+			cell.clear();
+			cache.invalidate(x, y);
+		}
+		
+		/**
+		 * helper
+		 * @return if the cell changed, dropping the cached counts when it did
+		 */
+		private boolean changed(boolean changed) {
+			if (changed) {
+				cache.invalidate(x, y);
+			}
+			return changed;
+		}
+	}
+	
 	/**
 	 * Builder class to make sure that only valid interest points are being added,
 	 */
 	public static class Builder {
-		private final BiDimensionalMap<InterestPoint> points = new BiDimensionalMap<>();
+		private BiDimensionalMap<InterestPoint> points;
+		
+		private final BiDimensionalMap.Storage storage;
+		
+		private final boolean concurrent;
+		
+		private MarkerDictionary dictionary;
+		
+		private CellArena<InterestPoint> arena;
+		
+		private boolean indexed;
+		
+		private final Set<Object> prefixSumMarkers = new HashSet<>();
+		
+		/** the count cache shared by every InterestPoints built, since they read the same points */
+		private CountCache cache;
+		
+		/** the number of InterestPoints built */
+		private int built;
+		
+		public Builder() {
+			this(BiDimensionalMap.Storage.TREE);
+		}
+		
+		/**
+		 * @param the storage of the map holding the interest points, CONCURRENT allowing several threads to add to the same builder
+		 */
+		public Builder(BiDimensionalMap.Storage storage) {
+			points = new BiDimensionalMap<>(storage);
+			this.storage = storage;
+			concurrent = storage == BiDimensionalMap.Storage.CONCURRENT;
+		}
+		
+		/**
+		 * chooses whether markers are interned to small ids and every cell keeps its markers as bits instead of a HashSet of points, which suits markers from a small vocabulary and makes count test one bit per cell
+		 * @param if the markers are to be encoded
+		 * @return the current builder
+		 * @throws IllegalStateException if points were already added, or the storage is CONCURRENT, whose cells must be safe for several writers
+		 */
+		public final Builder setEncodedMarkers(boolean encoded) {
+			if (!points.xSet().isEmpty()) {
+				throw new IllegalStateException("markers must be encoded before points are added");
+			}
+			if (encoded && concurrent) {
+				throw new IllegalStateException("encoded markers are not safe for several writers");
+			}
+			if (encoded && arena != null) {
+				throw new IllegalStateException("encoded markers keep their own cells on the heap");
+			}
+			dictionary = encoded ? new MarkerDictionary() : null;
+			points = encoded ? new BiDimensionalMap<>(storage, dictionary::newCell) : new BiDimensionalMap<>(storage);
+			return this;
+		}
+		
+		/**
+		 * chooses whether the collections of the cells are kept off the heap in a CellArena instead of a HashSet each, which suits maps of many cells holding a few points
+		 * @param if the cells are to be kept off the heap
+		 * @return the current builder
+		 * @throws IllegalStateException if points were already added, the storage is CONCURRENT, whose cells must be safe for several writers, or markers are encoded
+		 */
+		public final Builder setOffHeapCells(boolean offHeap) {
+			if (!points.xSet().isEmpty()) {
+				throw new IllegalStateException("cells must be moved off the heap before points are added");
+			}
+			if (offHeap && concurrent) {
+				throw new IllegalStateException("off-heap cells are not safe for several writers");
+			}
+			if (offHeap && dictionary != null) {
+				throw new IllegalStateException("encoded markers keep their own cells on the heap");
+			}
+			arena = offHeap ? new CellArena<>() : null;
+			points = offHeap ? new BiDimensionalMap<>(storage, arena::newCell) : new BiDimensionalMap<>(storage);
+			return this;
+		}
+		
+		/**
+		 * @return if several threads may add to the builder at once
+		 */
+		final boolean isConcurrent() {
+			return concurrent;
+		}
 		
 		/**
 		 * adds a valid interest point to the  map (and treats an invalid point as an error that needs to be handled)
@@ -68,9 +623,83 @@ public final class InterestPoints<M> {
 		 */
 		public final boolean add(InterestPoint interestPoint) {
 			BiDimensionalMap.Updater updater = points.new Updater();
-			updater.setCoordinate(interestPoint.validate().coordinate());
-			updater.addValue(interestPoint.marker());
-			return(updater.add());
+			Coordinate coordinate = interestPoint.validate().coordinate();
+			updater.setCoordinate(coordinate);
+			updater.addValue(interestPoint);
+			boolean changed = updater.add();
+			if (changed && cache != null) {
+				cache.invalidate(coordinate.x(), coordinate.y());
+			}
+			return changed;
+		}
+		
+		/**
+		 * adds a batch of valid interest points, sorting them by coordinate once and building the columns and cells of the map bottom-up when they are new
+		 * @param interest points to be added
+		 * @return if the map changed because of this call
+		 * @throws NullPointerException if an interest point is invalid
+		 */
+		public final boolean addAll(Iterable<InterestPoint> interestPoints) {
+			List<InterestPoint> batch = new ArrayList<>();
+			for (InterestPoint interestPoint : interestPoints) {
+				batch.add(InterestPoint.validate(interestPoint));
+			}
+			boolean changed = points.addAll(batch, InterestPoint::coordinate);
+			if (changed && cache != null) {
+				cache.clear();
+			}
+			return changed;
+		}
+		
+		/**
+		 * @param interest points to be added
+		 * @return if the map changed because of this call
+		 * @throws NullPointerException if an interest point is invalid
+		 */
+		public final boolean addAll(Stream<InterestPoint> interestPoints) {
+			return addAll(interestPoints.collect(Collectors.toList()));
+		}
+		
+		/**
+		 * chooses whether build bulk loads a frozen grid index that answers count, which suits points that are no longer added to once built
+		 * @param if the index is to be built
+		 * @return the current builder
+		 */
+		public final Builder setIndexed(boolean indexed) {
+			this.indexed = indexed;
+			return this;
+		}
+		
+		/**
+		 * chooses markers for which build sums up the points of the marker over the grid of distinct coordinates, so that count takes a few lookups per rectangle for them
+		 * like the grid index, the sums are those of the points added before build is called
+		 * @param the markers to be indexed
+		 * @return the current builder
+		 */
+		public final Builder setPrefixSumMarkers(Collection<?> markers) {
+			prefixSumMarkers.clear();
+			prefixSumMarkers.addAll(Objects.requireNonNull(markers));
+			return this;
+		}
+		
+		/**
+		 * chooses how many counts are cached by region and marker, dropping the least recently used ones beyond it, so that count and parallelCount over the same regions and markers are answered without counting again
+		 * the cache is shared by every InterestPoints this builder builds, each of which only answers from the counts it ran itself, since its indexes may be older than those of the others
+		 * writes through the builder or the collections of get and interestPoints drop the counts of the regions they touch, while a batch from addAll drops every count
+		 * @param the largest number of cached counts, 0 for none
+		 * @return the current builder
+		 * @throws IllegalArgumentException if the size is negative
+		 */
+		public final Builder setCacheSize(int maximumSize) {
+			if (maximumSize < 0) {
+				throw new IllegalArgumentException("the cache size is negative");
+			}
+			if (cache != null) {
+				cache.resize(maximumSize);
+			} else if (maximumSize > 0) {
+				cache = new CountCache(maximumSize);
+			}
+			return this;
 		}
 		
 		/**
@@ -0,0 +1,303 @@
+package gis;
+
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+import org.junit.Test;
+
+public class InterestPointsTest {
+
+	private static InterestPoints.Builder points(InterestPoints.Builder builder) {
+		for (int i = 0; i < 10; i++) {
+			for (int j = 0; j < 10; j++) {
+				Coordinate c1 = new Coordinate(new BigDecimal(i), new BigDecimal(j));
+				builder.add(new InterestPoint<>(c1, (i + j) % 2 == 0 ? "even" : "odd"));
+			}
+		}
+		return builder;
+	}
+
+	private static RectilinearRegion region() {
+		Coordinate c1 = new Coordinate(new BigDecimal(0), new BigDecimal(0));  //left bot
+		Coordinate c2 = new Coordinate(new BigDecimal(2), new BigDecimal(2));  //right top
+		Coordinate c3 = new Coordinate(new BigDecimal(2), new BigDecimal(0));  //left bot
+		Coordinate c4 = new Coordinate(new BigDecimal(5), new BigDecimal(1));  //right top
+		Set<Rectangle> rectangles = new HashSet<Rectangle>();
+		rectangles.add(new Rectangle(c1, c2));
+		rectangles.add(new Rectangle(c3, c4));
+		return RectilinearRegion.of(rectangles);
+	}
+
+	//counts the points with the marker in a two rectangle region
+	@Test
+	public void testCount() {
+		InterestPoints<String> test = points(new InterestPoints.Builder()).build();
+		assertEquals(4, test.count(region(), "even"));
+		assertEquals(3, test.count(region(), "odd"));
+	}
+
+	//the grid index gives the same counts as slicing the map
+	@Test
+	public void testCountIndexed() {
+		InterestPoints<String> test = points(new InterestPoints.Builder().setIndexed(true)).build();
+		assertEquals(4, test.count(region(), "even"));
+		assertEquals(3, test.count(region(), "odd"));
+	}
+
+	//the parallel count agrees with the sequential count
+	@Test
+	public void testParallelCount() {
+		InterestPoints.Builder builder = new InterestPoints.Builder();
+		for (int i = 0; i < 300; i++) {
+			for (int j = 0; j < 10; j++) {
+				builder.add(new InterestPoint<>(new Coordinate(new BigDecimal(i), new BigDecimal(j)), j % 3 == 0 ? "a" : "b"));
+			}
+		}
+		InterestPoints<String> test = builder.build();
+		Coordinate c1 = new Coordinate(new BigDecimal(0), new BigDecimal(0));  //left bot
+		Coordinate c2 = new Coordinate(new BigDecimal(250), new BigDecimal(5));  //right top
+		Set<Rectangle> rectangles = new HashSet<Rectangle>();
+		rectangles.add(new Rectangle(c1, c2));
+		RectilinearRegion wide = RectilinearRegion.of(rectangles);
+		assertEquals(500, test.count(wide, "a"));
+		assertEquals(500, test.parallelCount(wide, "a"));
+		assertEquals(test.count(region(), "b"), test.parallelCount(region(), "b"));
+	}
+
+	//the prefix sums give the same counts as slicing the map
+	@Test
+	public void testCountPrefixSums() {
+		InterestPoints<String> test = points(new InterestPoints.Builder().setPrefixSumMarkers(List.of("even"))).build();
+		assertEquals(4, test.count(region(), "even"));
+		assertEquals(3, test.count(region(), "odd"));
+		assertEquals(4, test.parallelCount(region(), "even"));
+	}
+
+	//adding a batch in any order gives the same counts as adding the points one by one
+	@Test
+	public void testAddAll() {
+		for (BiDimensionalMap.Storage storage : BiDimensionalMap.Storage.values()) {
+			List<InterestPoint> batch = new ArrayList<>();
+			for (int i = 9; i >= 0; i--) {
+				for (int j = 0; j < 10; j++) {
+					batch.add(new InterestPoint<>(new Coordinate(new BigDecimal(i), new BigDecimal(j)), (i + j) % 2 == 0 ? "even" : "odd"));
+				}
+			}
+			batch.add(new InterestPoint<>(new Coordinate(new BigDecimal(1), new BigDecimal(1)), "extra"));
+			InterestPoints.Builder builder = new InterestPoints.Builder(storage);
+			assertTrue(builder.addAll(batch));
+			InterestPoints<String> test = builder.build();
+			assertEquals(4, test.count(region(), "even"));
+			assertEquals(3, test.count(region(), "odd"));
+			assertEquals(1, test.count(region(), "extra"));
+			assertFalse(builder.addAll(batch.stream().limit(1)));
+		}
+	}
+
+	//a snapshot maps back to the same points and counts, its cells being read-only
+	@Test
+	public void testSnapshot() throws java.io.IOException {
+		InterestPoints<String> test = points(new InterestPoints.Builder()).build();
+		java.nio.file.Path file = java.nio.file.Files.createTempFile("points", ".gis");
+		try {
+			test.write(file);
+			InterestPoints<String> snapshot = InterestPoints.open(file);
+			assertEquals(test.toString(), snapshot.toString());
+			assertEquals(4, snapshot.count(region(), "even"));
+			assertEquals(3, snapshot.parallelCount(region(), "odd"));
+			assertEquals(0, snapshot.count(region(), "none"));
+			Coordinate c1 = new Coordinate(new BigDecimal(3), new BigDecimal(4));
+			assertEquals(test.get(c1), snapshot.get(c1));
+			assertEquals(test.get(c1).size(), snapshot.get(c1).size());
+			assertTrue(snapshot.get(c1).contains(new InterestPoint<>(c1, "odd")));
+			assertFalse(snapshot.get(c1).contains(new InterestPoint<>(c1, "even")));
+			assertThrows(UnsupportedOperationException.class, () -> snapshot.get(c1).clear());
+			assertNull(snapshot.get(new Coordinate(new BigDecimal(3), new BigDecimal("4.5"))));
+		} finally {
+			java.nio.file.Files.delete(file);
+		}
+	}
+
+	//encoded markers give the same points and counts, including points at the same position with another scale and more than 64 markers
+	@Test
+	public void testEncodedMarkers() {
+		for (BiDimensionalMap.Storage storage : new BiDimensionalMap.Storage[] { BiDimensionalMap.Storage.TREE, BiDimensionalMap.Storage.DOUBLE }) {
+			InterestPoints.Builder plain = points(new InterestPoints.Builder(storage));
+			InterestPoints.Builder encoded = points(new InterestPoints.Builder(storage).setEncodedMarkers(true));
+			for (InterestPoints.Builder builder : List.of(plain, encoded)) {
+				for (int i = 0; i < 100; i++) {
+					builder.add(new InterestPoint<>(new Coordinate(new BigDecimal(1), new BigDecimal(1)), "m" + i));
+				}
+				builder.add(new InterestPoint<>(new Coordinate(new BigDecimal("1.0"), new BigDecimal(1)), "even"));
+			}
+			InterestPoints<String> expected = plain.build();
+			InterestPoints<String> test = encoded.build();
+			assertEquals(expected.interestPoints(), test.interestPoints());
+			assertEquals(5, test.count(region(), "even"));
+			assertEquals(3, test.count(region(), "odd"));
+			assertEquals(1, test.count(region(), "m70"));
+			assertEquals(0, test.count(region(), "none"));
+			assertEquals(5, test.parallelCount(region(), "even"));
+			Coordinate c1 = new Coordinate(new BigDecimal(1), new BigDecimal(1));
+			assertTrue(test.get(c1).contains(new InterestPoint<>(c1, "m64")));
+			assertTrue(test.get(c1).remove(new InterestPoint<>(c1, "m64")));
+			assertEquals(0, test.count(region(), "m64"));
+		}
+	}
+
+	//off-heap cells give the same points and counts, while their runs move and are compacted as cells grow and points are removed
+	@Test
+	public void testOffHeapCells() {
+		InterestPoints.Builder plain = points(new InterestPoints.Builder(BiDimensionalMap.Storage.DOUBLE));
+		InterestPoints.Builder offHeap = points(new InterestPoints.Builder(BiDimensionalMap.Storage.DOUBLE).setOffHeapCells(true));
+		for (InterestPoints.Builder builder : List.of(plain, offHeap)) {
+			for (int i = 0; i < 20000; i++) {
+				builder.add(new InterestPoint<>(new Coordinate(new BigDecimal(i % 3), new BigDecimal(1)), "m" + i));
+			}
+		}
+		InterestPoints<String> expected = plain.build();
+		InterestPoints<String> test = offHeap.build();
+		assertEquals(expected.interestPoints(), test.interestPoints());
+		assertEquals(4, test.count(region(), "even"));
+		assertEquals(1, test.count(region(), "m70"));
+		Coordinate c1 = new Coordinate(new BigDecimal(1), new BigDecimal(1));
+		assertFalse(test.get(c1).add(new InterestPoint<>(c1, "m1")));
+		test.get(c1).removeIf(point -> !point.marker().equals("m1"));
+		assertEquals(Set.of(new InterestPoint<>(c1, "m1")), test.get(c1));
+		assertEquals(0, test.count(region(), "m70"));
+		assertThrows(IllegalStateException.class, () -> new InterestPoints.Builder().setEncodedMarkers(true).setOffHeapCells(true));
+	}
+
+	//a sink sees the counts and adds with the cells they read, and nothing once it is removed
+	@Test
+	public void testMetrics() {
+		HistogramSink sink = new HistogramSink();
+		Metrics.setSink(sink);
+		try {
+			InterestPoints<String> test = points(new InterestPoints.Builder()).build();
+			assertEquals(4, test.count(region(), "even"));
+			assertEquals(100, sink.get(Metrics.Operation.ADD).count());
+			assertEquals(1, sink.get(Metrics.Operation.COUNT).count());
+			assertEquals(7, sink.get(Metrics.Operation.COUNT).cells());
+			assertEquals(1, sink.get(Metrics.Operation.IS_OVERLAPPING).count());
+		} finally {
+			Metrics.setSink(null);
+		}
+		points(new InterestPoints.Builder()).build();
+		assertEquals(100, sink.get(Metrics.Operation.ADD).count());
+	}
+
+	//a cached count is answered again until a write inside the region drops it
+	@Test
+	public void testCountCache() {
+		InterestPoints.Builder builder = points(new InterestPoints.Builder().setCacheSize(8));
+		InterestPoints<String> test = builder.build();
+		assertEquals(4, test.count(region(), "even"));
+		assertEquals(4, test.count(region(), "even"));
+		assertEquals(3, test.parallelCount(region(), "odd"));
+		assertEquals(new CacheStats(1, 2, 0, 2), test.cacheStats());
+		Coordinate c1 = new Coordinate(new BigDecimal(1), new BigDecimal(1));
+		builder.add(new InterestPoint<>(new Coordinate(new BigDecimal(9), new BigDecimal(9)), "even"));
+		assertEquals(2, test.cacheStats().size());
+		builder.add(new InterestPoint<>(c1, "odd"));
+		assertEquals(4, test.count(region(), "odd"));
+		assertTrue(test.get(c1).remove(new InterestPoint<>(c1, "even")));
+		assertEquals(3, test.count(region(), "even"));
+		assertEquals(1, test.cacheStats().hits());
+	}
+
+	//InterestPoints built at different times from one builder never answer each other's counts, since their grid indexes differ
+	@Test
+	public void testCountCachePerBuild() {
+		InterestPoints.Builder builder = points(new InterestPoints.Builder().setCacheSize(8).setIndexed(true));
+		InterestPoints<String> first = builder.build();
+		builder.add(new InterestPoint<>(new Coordinate(new BigDecimal("0.5"), new BigDecimal("0.5")), "even"));
+		InterestPoints<String> second = builder.build();
+		assertEquals(4, first.count(region(), "even"));
+		assertEquals(5, second.count(region(), "even"));
+		assertEquals(0, second.cacheStats().hits());
+	}
+
+	//a region tiled from many rectangles is counted through its mask like rectangle by rectangle
+	@Test
+	public void testCountTiledRegion() {
+		Set<Rectangle> rectangles = new HashSet<Rectangle>();
+		for (int i = 0; i < 9; i++) {
+			for (int j = 0; j < 3; j++) {
+				if (i != 4 || j != 1) {
+					rectangles.add(new Rectangle(new Coordinate(new BigDecimal(i), new BigDecimal(2 * j)), new Coordinate(new BigDecimal(i + 1), new BigDecimal(2 * j + 2))));
+				}
+			}
+		}
+		RectilinearRegion region = RectilinearRegion.of(rectangles);
+		InterestPoints<String> test = points(new InterestPoints.Builder()).build();
+		InterestPoints<String> indexed = points(new InterestPoints.Builder().setIndexed(true)).build();
+		assertEquals(26, test.count(region, "even"));
+		assertEquals(26, test.count(region, "odd"));
+		assertEquals(26, indexed.count(region, "even"));
+		assertEquals(26, test.parallelCount(region, "odd"));
+	}
+
+	//a staircase whose grid of edges is too large to be rasterized is counted and tested rectangle by rectangle
+	@Test
+	public void testCountLargeGrid() {
+		Set<Rectangle> rectangles = new HashSet<Rectangle>();
+		for (int i = 0; i < 4200; i++) {
+			rectangles.add(new Rectangle(new Coordinate(new BigDecimal(i), new BigDecimal(0)), new Coordinate(new BigDecimal(i + 1), new BigDecimal(i + 1))));
+		}
+		RectilinearRegion region = RectilinearRegion.of(rectangles);
+		assertFalse(region.mask().isRasterizable());
+		InterestPoints<String> test = points(new InterestPoints.Builder()).build();
+		assertEquals(30, test.count(region, "even"));
+		assertEquals(25, test.count(region, "odd"));
+		assertTrue(region.contains(new Coordinate(new BigDecimal("0.5"), new BigDecimal("0.5"))));
+		assertFalse(region.contains(new Coordinate(new BigDecimal("0.5"), new BigDecimal(1))));
+	}
+
+	//the batch counts match a count per region and marker, overlapping regions included, sequential and in strips
+	@Test
+	public void testCountAll() {
+		InterestPoints.Builder builder = new InterestPoints.Builder();
+		for (int i = 0; i < 300; i++) {
+			for (int j = 0; j < 10; j++) {
+				builder.add(new InterestPoint<>(new Coordinate(new BigDecimal(i), new BigDecimal(j)), j % 3 == 0 ? "a" : "b"));
+			}
+		}
+		InterestPoints<String> test = builder.build();
+		List<RectilinearRegion> regions = new ArrayList<>();
+		for (int i = 0; i < 30; i++) {
+			Rectangle rectangle = new Rectangle(new Coordinate(new BigDecimal(7 * i), new BigDecimal(i % 5)), new Coordinate(new BigDecimal(7 * i + 40), new BigDecimal(i % 5 + 4)));
+			regions.add(RectilinearRegion.of(new HashSet<Rectangle>(List.of(rectangle))));
+		}
+		regions.add(region());
+		regions.add(RectilinearRegion.of(new HashSet<Rectangle>()));
+		List<String> markers = List.of("a", "b", "c");
+		long[][] counts = test.countAll(regions, markers);
+		for (int i = 0; i < regions.size(); i++) {
+			for (int j = 0; j < markers.size(); j++) {
+				assertEquals(test.count(regions.get(i), markers.get(j)), counts[i][j]);
+			}
+		}
+		assertArrayEquals(counts, test.parallelCountAll(regions, markers));
+	}
+
+	//a pinned version keeps its counts while updates make new versions
+	@Test
+	public void testVersions() {
+		VersionedInterestPoints<String> versions = VersionedInterestPoints.of(points(new InterestPoints.Builder()).build());
+		InterestPoints<String> first = versions.snapshot();
+		Coordinate c1 = new Coordinate(new BigDecimal(1), new BigDecimal(1));
+		Coordinate c2 = new Coordinate(new BigDecimal(3), new BigDecimal("0.5"));
+		InterestPoints<String> second = versions.update(List.of(new InterestPoint<>(c2, "even")), List.of(new InterestPoint<>(c1, "even")));
+		assertEquals(1, versions.version());
+		assertSame(second, versions.snapshot());
+		assertEquals(4, first.count(region(), "even"));
+		assertEquals(4, second.count(region(), "even"));
+		assertNull(second.get(c1));
+		assertEquals(1, first.get(c1).size());
+		assertSame(second, versions.update(List.of(), List.of(new InterestPoint<>(c1, "even"))));
+		assertEquals(1, versions.version());
+	}
+}
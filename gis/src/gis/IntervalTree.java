@@ -0,0 +1,202 @@
+package gis;
+
+import java.math.BigDecimal;
+import java.util.Random;
+import java.util.function.Predicate;
+
+/**
+ * A set of half-open intervals [low, high) kept in a randomized binary search tree ordered by low, where every node also knows the largest high below it
+ * so that the intervals meeting a query are found without looking at the subtrees that end before it
+ */
+final class IntervalTree<V> {
+
+	/**
+	 * an interval of the tree, which is also the node holding it
+	 */
+	static final class Interval<V> {
+
+		private final BigDecimal low;
+		private final BigDecimal high;
+		private final V value;
+		private final long id;
+		private final int priority;
+		private BigDecimal maxHigh;
+		private Interval<V> left, right;
+
+		private Interval(BigDecimal low, BigDecimal high, V value, long id, int priority) {
+			this.low = low;
+			this.high = high;
+			this.value = value;
+			this.id = id;
+			this.priority = priority;
+			this.maxHigh = high;
+		}
+
+		/**
+		 * @return the value stored with the interval
+		 */
+		V value() {
+			return value;
+		}
+	}
+
+	private final Random random = new Random();
+	private Interval<V> root;
+	private long nextId;
+	private int size;
+
+	/**
+	 * adds a new interval to the tree
+	 * @param the low and high end of the interval and its value
+	 * @return the interval, to be handed to remove
+	 */
+	Interval<V> add(BigDecimal low, BigDecimal high, V value) {
+		Interval<V> interval = new Interval<>(low, high, value, nextId++, random.nextInt());
+		root = insert(root, interval);
+		size++;
+		return interval;
+	}
+
+	/**
+	 * @param an interval returned by add
+	 */
+	void remove(Interval<V> interval) {
+		root = delete(root, interval);
+		size--;
+	}
+
+	/**
+	 * @return the number of intervals in the tree
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * hands every interval sharing more than a single point with [low, high) to the action, until the action returns false
+	 * @param the low and high end of the query and the action
+	 * @return false if the action stopped the search, true otherwise
+	 */
+	boolean overlapping(BigDecimal low, BigDecimal high, Predicate<Interval<V>> action) {
+		return overlapping(root, low, high, action);
+	}
+
+	private boolean overlapping(Interval<V> node, BigDecimal low, BigDecimal high, Predicate<Interval<V>> action) {
+		if (node == null || node.maxHigh.compareTo(low) <= 0) {
+			return true;
+		}
+		if (!overlapping(node.left, low, high, action)) {
+			return false;
+		}
+		if (node.low.compareTo(high) >= 0) {
+			return true;
+		}
+		if (node.high.compareTo(low) > 0 && !action.test(node)) {
+			return false;
+		}
+		return overlapping(node.right, low, high, action);
+	}
+
+	/**
+	 * hands every interval containing the point to the action, until the action returns false
+	 * @param the point and the action
+	 * @return false if the action stopped the search, true otherwise
+	 */
+	boolean containing(BigDecimal point, Predicate<Interval<V>> action) {
+		return containing(root, point, action);
+	}
+
+	private boolean containing(Interval<V> node, BigDecimal point, Predicate<Interval<V>> action) {
+		if (node == null || node.maxHigh.compareTo(point) <= 0) {
+			return true;
+		}
+		if (!containing(node.left, point, action)) {
+			return false;
+		}
+		if (node.low.compareTo(point) > 0) {
+			return true;
+		}
+		if (node.high.compareTo(point) > 0 && !action.test(node)) {
+			return false;
+		}
+		return containing(node.right, point, action);
+	}
+
+	private Interval<V> insert(Interval<V> node, Interval<V> interval) {
+		if (node == null) {
+			return interval;
+		}
+		if (compare(interval, node) < 0) {
+			node.left = insert(node.left, interval);
+			if (node.left.priority > node.priority) {
+				node = rotateRight(node);
+			}
+		} else {
+			node.right = insert(node.right, interval);
+			if (node.right.priority > node.priority) {
+				node = rotateLeft(node);
+			}
+		}
+		return update(node);
+	}
+
+	private Interval<V> delete(Interval<V> node, Interval<V> interval) {
+		if (node == null) {
+			return null;
+		}
+		if (node == interval) {
+			return merge(node.left, node.right);
+		}
+		if (compare(interval, node) < 0) {
+			node.left = delete(node.left, interval);
+		} else {
+			node.right = delete(node.right, interval);
+		}
+		return update(node);
+	}
+
+	private Interval<V> merge(Interval<V> left, Interval<V> right) {
+		if (left == null) {
+			return right;
+		}
+		if (right == null) {
+			return left;
+		}
+		if (left.priority > right.priority) {
+			left.right = merge(left.right, right);
+			return update(left);
+		}
+		right.left = merge(left, right.left);
+		return update(right);
+	}
+
+	private Interval<V> rotateRight(Interval<V> node) {
+		Interval<V> left = node.left;
+		node.left = left.right;
+		left.right = update(node);
+		return left;
+	}
+
+	private Interval<V> rotateLeft(Interval<V> node) {
+		Interval<V> right = node.right;
+		node.right = right.left;
+		right.left = update(node);
+		return right;
+	}
+
+	private Interval<V> update(Interval<V> node) {
+		node.maxHigh = node.high;
+		if (node.left != null && node.left.maxHigh.compareTo(node.maxHigh) > 0) {
+			node.maxHigh = node.left.maxHigh;
+		}
+		if (node.right != null && node.right.maxHigh.compareTo(node.maxHigh) > 0) {
+			node.maxHigh = node.right.maxHigh;
+		}
+		return node;
+	}
+
+	private static int compare(Interval<?> first, Interval<?> second) {
+		int compare = first.low.compareTo(second.low);
+		return compare != 0 ? compare : Long.compare(first.id, second.id);
+	}
+}
@@ -0,0 +1,129 @@
+package gis;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Publishes the measurements of a HistogramSink on the platform MBean server, with an MBean per operation named gis:type=Metrics,operation=...
+ */
+public final class JmxMetrics {
+
+	/**
+	 * the attributes of the MBean of an operation, latencies being in microseconds
+	 */
+	public interface OperationMXBean {
+
+		long getCount();
+
+		double getMean();
+
+		double getP50();
+
+		double getP99();
+
+		double getP999();
+
+		double getMax();
+
+		double getCellsPerOperation();
+
+		double getBytesPerOperation();
+
+		void reset();
+	}
+
+	private final List<ObjectName> names;
+
+	private JmxMetrics(List<ObjectName> names) {
+		this.names = names;
+	}
+
+	/**
+	 * registers the MBeans of a sink, which still has to be installed with Metrics.setSink to receive anything
+	 * @param the sink
+	 * @return the registration, to be unregistered
+	 * @throws IllegalStateException if the MBeans cannot be registered, such as when another sink is registered already
+	 */
+	public static JmxMetrics register(HistogramSink sink) {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		List<ObjectName> names = new ArrayList<>();
+		try {
+			for (Metrics.Operation operation : Metrics.Operation.values()) {
+				ObjectName name = new ObjectName("gis:type=Metrics,operation=" + operation.name());
+				server.registerMBean(new Operation(sink.get(operation)), name);
+				names.add(name);
+			}
+		} catch (JMException e) {
+			new JmxMetrics(names).unregister();
+			throw new IllegalStateException("the metrics cannot be registered", e);
+		}
+		return new JmxMetrics(names);
+	}
+
+	/**
+	 * removes the MBeans from the platform MBean server
+	 */
+	public void unregister() {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		for (ObjectName name : names) {
+			try {
+				server.unregisterMBean(name);
+			} catch (JMException e) {
+				// already unregistered
+			}
+		}
+	}
+
+	/**
+	 * the MBean of an operation
+	 */
+	private static final class Operation implements OperationMXBean {
+
+		private final HistogramSink.Stats stats;
+
+		private Operation(HistogramSink.Stats stats) {
+			this.stats = stats;
+		}
+
+		public long getCount() {
+			return stats.count();
+		}
+
+		public double getMean() {
+			return stats.latency().mean() / 1000;
+		}
+
+		public double getP50() {
+			return stats.latency().percentile(50) / 1000.0;
+		}
+
+		public double getP99() {
+			return stats.latency().percentile(99) / 1000.0;
+		}
+
+		public double getP999() {
+			return stats.latency().percentile(99.9) / 1000.0;
+		}
+
+		public double getMax() {
+			return stats.latency().max() / 1000.0;
+		}
+
+		public double getCellsPerOperation() {
+			return stats.cellsPerOperation();
+		}
+
+		public double getBytesPerOperation() {
+			return stats.bytesPerOperation();
+		}
+
+		public void reset() {
+			stats.reset();
+		}
+	}
+}
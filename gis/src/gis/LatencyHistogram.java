@@ -0,0 +1,122 @@
+package gis;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of non negative values, such as latencies in nanoseconds, on log-linear buckets so that any value is kept within 1/64 of itself in a fixed size
+ * values under 128 have a bucket each, and every power of two above is split into 64 buckets
+ * recording is lock free and may run on several threads, while the percentiles read by another thread may miss the values being recorded
+ */
+public final class LatencyHistogram {
+
+	/** the values below this have a bucket each */
+	private static final int LINEAR = 128;
+
+	/** the number of buckets per power of two above LINEAR, as a power of two */
+	private static final int SUB_BITS = 6;
+
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+	/** the number of buckets, up to the largest long */
+	private static final int BUCKETS = LINEAR + (Long.SIZE - 1 - Integer.numberOfTrailingZeros(LINEAR)) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * @param the value, negative values being recorded as 0
+	 */
+	public void record(long value) {
+		value = Math.max(value, 0);
+		counts.incrementAndGet(index(value));
+		count.increment();
+		sum.add(value);
+		max.accumulate(value);
+	}
+
+	/**
+	 * @return the number of recorded values
+	 */
+	public long count() {
+		return count.sum();
+	}
+
+	/**
+	 * @return the mean of the recorded values, or 0 if there are none
+	 */
+	public double mean() {
+		long n = count.sum();
+		return n == 0 ? 0 : (double) sum.sum() / n;
+	}
+
+	/**
+	 * @return the largest recorded value, or 0 if there are none
+	 */
+	public long max() {
+		return max.get();
+	}
+
+	/**
+	 * @param the percentile, between 0 and 100
+	 * @return the smallest value that the percentile of the recorded values do not exceed, within 1/64 of it, or 0 if there are none
+	 * @throws IllegalArgumentException if the percentile is not between 0 and 100
+	 */
+	public long percentile(double percentile) {
+		if (!(percentile >= 0 && percentile <= 100)) {
+			throw new IllegalArgumentException("the percentile is not between 0 and 100");
+		}
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			total += counts.get(i);
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total)), seen = 0;
+		for (int i = 0; i < BUCKETS && total > 0; i++) {
+			seen += counts.get(i);
+			if (seen >= rank) {
+				return Math.min(highest(i), max());
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * forgets every recorded value, which may lose values recorded at the same time
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+		count.reset();
+		sum.reset();
+		max.reset();
+	}
+
+	/**
+	 * helper
+	 * @return the bucket of a non negative value
+	 */
+	private static int index(long value) {
+		if (value < LINEAR) {
+			return (int) value;
+		}
+		int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value), shift = exponent - SUB_BITS;
+		return LINEAR + (exponent - Integer.numberOfTrailingZeros(LINEAR)) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+	}
+
+	/**
+	 * helper
+	 * @return the largest value of a bucket
+	 */
+	private static long highest(int index) {
+		if (index < LINEAR) {
+			return index;
+		}
+		int bucket = index - LINEAR, shift = bucket / SUB_BUCKETS + Integer.numberOfTrailingZeros(LINEAR) - SUB_BITS;
+		long low = (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+		return low + ((1L << shift) - 1);
+	}
+}
@@ -0,0 +1,539 @@
+package gis;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractSet;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * a read-only cell store of interest points over a snapshot file mapped with FileChannel.map, so that the points stay off the heap and opening the file reads only its header and marker dictionary
+ * the file holds sorted columns: the distinct x coordinates with the offsets of their cells, the y coordinate of every cell with the offsets of its points, and the marker id of every point
+ * coordinates are kept exactly as an unscaled long and a scale, and markers as indexes into a dictionary of strings written at the end of the file
+ * cells are read-only sets over the marker ids of the file, building an InterestPoint with the coordinate of the cell for every id they hand out, while count reads the marker ids directly
+ */
+final class MappedCellStore implements CellStore<InterestPoint> {
+
+	private static final int MAGIC = 0x47495350;
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 32;
+
+	/** the largest number of cells, so that every section fits in one mapping */
+	private static final int MAX_CELLS = (Integer.MAX_VALUE - 8) / Long.BYTES;
+
+	private final LongBuffer xUnscaled;
+	private final IntBuffer xScale;
+	private final IntBuffer columnStart;
+	private final LongBuffer yUnscaled;
+	private final IntBuffer yScale;
+	private final IntBuffer cellStart;
+	private final IntBuffer markerIds;
+	private final Object[] markers;
+	private final Map<Object, Integer> markerIndex;
+	private final int columnCount;
+
+	/** the rectangle a view is limited to, or null if the store is not a view */
+	private final Rectangle bounds;
+
+	/**
+	 * @param the sections of the file, the dictionary of markers and its index, and the rectangle the store is limited to, if any
+	 */
+	private MappedCellStore(LongBuffer xUnscaled, IntBuffer xScale, IntBuffer columnStart, LongBuffer yUnscaled, IntBuffer yScale, IntBuffer cellStart,
+			IntBuffer markerIds, Object[] markers, Map<Object, Integer> markerIndex, Rectangle bounds) {
+		this.xUnscaled = xUnscaled;
+		this.xScale = xScale;
+		this.columnStart = columnStart;
+		this.yUnscaled = yUnscaled;
+		this.yScale = yScale;
+		this.cellStart = cellStart;
+		this.markerIds = markerIds;
+		this.markers = markers;
+		this.markerIndex = markerIndex;
+		this.columnCount = xUnscaled.capacity();
+		this.bounds = bounds;
+	}
+
+	/**
+	 * writes the interest points of a map to a snapshot file, replacing the file if it exists
+	 * @param the map of interest points, the file and the function turning a marker into the string stored in the dictionary
+	 * @throws IOException if the file cannot be written
+	 * @throws IllegalArgumentException if a coordinate has more digits than a long holds
+	 * @throws IllegalStateException if the map has too many cells or points for a snapshot
+	 */
+	static void write(BiDimensionalMap<InterestPoint> points, Path path, Function<Object, String> encoder) throws IOException {
+		Map<Object, Integer> dictionary = new LinkedHashMap<>();
+		long[] counts = new long[3];
+		BigDecimal[] previous = new BigDecimal[1];
+		points.forEachCell((x, y, values) -> {
+			if (previous[0] == null || previous[0].compareTo(x) != 0) {
+				checkDigits(x);
+				previous[0] = x;
+				counts[0]++;
+			}
+			checkDigits(y);
+			counts[1]++;
+			for (InterestPoint value : values) {
+				dictionary.putIfAbsent(value.marker(), dictionary.size());
+				counts[2]++;
+			}
+		});
+		if (counts[1] > MAX_CELLS || counts[2] > Integer.MAX_VALUE / Integer.BYTES) {
+			throw new IllegalStateException("too many cells or points for a snapshot");
+		}
+		int columns = (int) counts[0], cells = (int) counts[1], pointCount = (int) counts[2];
+		ByteBuffer dictionaryBytes = encode(dictionary, encoder);
+		long[] offsets = offsets(columns, cells, pointCount);
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(MAGIC).putInt(VERSION).putInt(columns).putInt(cells).putInt(pointCount).putInt(dictionary.size()).putInt(dictionaryBytes.remaining()).flip();
+			channel.write(header, 0);
+			LongBuffer xUnscaled = map(channel, FileChannel.MapMode.READ_WRITE, offsets, 0).asLongBuffer();
+			LongBuffer yUnscaled = map(channel, FileChannel.MapMode.READ_WRITE, offsets, 1).asLongBuffer();
+			IntBuffer xScale = map(channel, FileChannel.MapMode.READ_WRITE, offsets, 2).asIntBuffer();
+			IntBuffer columnStart = map(channel, FileChannel.MapMode.READ_WRITE, offsets, 3).asIntBuffer();
+			IntBuffer yScale = map(channel, FileChannel.MapMode.READ_WRITE, offsets, 4).asIntBuffer();
+			IntBuffer cellStart = map(channel, FileChannel.MapMode.READ_WRITE, offsets, 5).asIntBuffer();
+			IntBuffer markerIds = map(channel, FileChannel.MapMode.READ_WRITE, offsets, 6).asIntBuffer();
+			points.forEachCell((x, y, values) -> {
+				if (xUnscaled.position() == 0 || previous[0].compareTo(x) != 0) {
+					previous[0] = x;
+					xUnscaled.put(x.unscaledValue().longValueExact());
+					xScale.put(x.scale());
+					columnStart.put(yUnscaled.position());
+				}
+				yUnscaled.put(y.unscaledValue().longValueExact());
+				yScale.put(y.scale());
+				cellStart.put(markerIds.position());
+				for (InterestPoint value : values) {
+					markerIds.put(dictionary.get(value.marker()));
+				}
+			});
+			columnStart.put(cells);
+			cellStart.put(pointCount);
+			channel.write(dictionaryBytes, offsets[7]);
+			channel.force(false);
+		}
+	}
+
+	/**
+	 * maps the sections of a snapshot file, which stay valid after the file is closed and as long as the store is reachable
+	 * @param the file and the function turning the strings of the dictionary back into markers
+	 * @return a read-only store of the interest points in the file
+	 * @throws IOException if the file cannot be read or is not a snapshot
+	 */
+	static MappedCellStore open(Path path, Function<String, ?> decoder) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+			}
+			header.flip();
+			if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC || header.getInt() != VERSION) {
+				throw new IOException("not an interest points snapshot: " + path);
+			}
+			int columns = header.getInt(), cells = header.getInt(), pointCount = header.getInt(), markerCount = header.getInt(), dictionaryLength = header.getInt();
+			long[] offsets = offsets(columns, cells, pointCount);
+			if (channel.size() < offsets[7] + dictionaryLength) {
+				throw new IOException("truncated interest points snapshot: " + path);
+			}
+			ByteBuffer dictionaryBytes = channel.map(FileChannel.MapMode.READ_ONLY, offsets[7], dictionaryLength).order(ByteOrder.LITTLE_ENDIAN);
+			Object[] markers = new Object[markerCount];
+			Map<Object, Integer> markerIndex = new HashMap<>();
+			for (int i = 0; i < markerCount; i++) {
+				byte[] bytes = new byte[dictionaryBytes.getInt()];
+				dictionaryBytes.get(bytes);
+				markers[i] = decoder.apply(new String(bytes, StandardCharsets.UTF_8));
+				markerIndex.put(markers[i], i);
+			}
+			return new MappedCellStore(map(channel, FileChannel.MapMode.READ_ONLY, offsets, 0).asLongBuffer(), map(channel, FileChannel.MapMode.READ_ONLY, offsets, 2).asIntBuffer(),
+					map(channel, FileChannel.MapMode.READ_ONLY, offsets, 3).asIntBuffer(), map(channel, FileChannel.MapMode.READ_ONLY, offsets, 1).asLongBuffer(),
+					map(channel, FileChannel.MapMode.READ_ONLY, offsets, 4).asIntBuffer(), map(channel, FileChannel.MapMode.READ_ONLY, offsets, 5).asIntBuffer(),
+					map(channel, FileChannel.MapMode.READ_ONLY, offsets, 6).asIntBuffer(), markers, markerIndex, null);
+		}
+	}
+
+	public Collection<InterestPoint> get(BigDecimal x, BigDecimal y) {
+		if (!CellStore.contains(bounds, x, y)) {
+			return null;
+		}
+		int column = column(x);
+		if (column < 0) {
+			return null;
+		}
+		int cell = cellLowerBound(y, columnStart.get(column), columnStart.get(column + 1));
+		if (cell == columnStart.get(column + 1) || y(cell).compareTo(y) != 0) {
+			return null;
+		}
+		return cell(cell, x(column), y(cell));
+	}
+
+	public Collection<InterestPoint> put(BigDecimal x, BigDecimal y, Collection<InterestPoint> collection) {
+		throw new UnsupportedOperationException("a snapshot is read-only");
+	}
+
+	public Collection<InterestPoint> computeIfAbsent(BigDecimal x, BigDecimal y, Supplier<Collection<InterestPoint>> factory) {
+		throw new UnsupportedOperationException("a snapshot is read-only");
+	}
+
+	public Set<BigDecimal> xSet() {
+		Set<BigDecimal> set = new LinkedHashSet<>();
+		forEachColumn((column, from, to) -> set.add(x(column)));
+		return Collections.unmodifiableSet(set);
+	}
+
+	public Set<BigDecimal> ySet(BigDecimal x) {
+		Set<BigDecimal> set = new LinkedHashSet<>();
+		int[] range = rows(x);
+		for (int cell = range[0]; cell < range[1]; cell++) {
+			set.add(y(cell));
+		}
+		return Collections.unmodifiableSet(set);
+	}
+
+	public BigDecimal nextX(BigDecimal x, boolean inclusive) {
+		int[] columns = columns();
+		int next = Math.max(columns[0], columnLowerBound(x));
+		if (!inclusive && next < columns[1] && x(next).compareTo(x) == 0) {
+			next++;
+		}
+		return next < columns[1] ? x(next) : null;
+	}
+
+	public BigDecimal previousX(BigDecimal x, boolean inclusive) {
+		int[] columns = columns();
+		int previous = Math.min(columns[1], columnLowerBound(x)) - 1;
+		if (inclusive && previous + 1 < columns[1] && x(previous + 1).compareTo(x) == 0) {
+			previous++;
+		}
+		return previous >= columns[0] ? x(previous) : null;
+	}
+
+	public BigDecimal nextY(BigDecimal x, BigDecimal y, boolean inclusive) {
+		int[] range = rows(x);
+		int next = cellLowerBound(y, range[0], range[1]);
+		if (!inclusive && next < range[1] && y(next).compareTo(y) == 0) {
+			next++;
+		}
+		return next < range[1] ? y(next) : null;
+	}
+
+	public BigDecimal previousY(BigDecimal x, BigDecimal y, boolean inclusive) {
+		int[] range = rows(x);
+		int previous = cellLowerBound(y, range[0], range[1]) - 1;
+		if (inclusive && previous + 1 < range[1] && y(previous + 1).compareTo(y) == 0) {
+			previous++;
+		}
+		return previous >= range[0] ? y(previous) : null;
+	}
+
+	public void forEach(CellVisitor<InterestPoint> visitor) {
+		forEachColumn((column, from, to) -> {
+			BigDecimal x = x(column);
+			for (int cell = from; cell < to; cell++) {
+				BigDecimal y = y(cell);
+				visitor.visit(x, y, cell(cell, x, y));
+			}
+		});
+	}
+
+	/**
+	 * the store being read-only, a slice shares the mapped file with it like a view
+	 */
+	public CellStore<InterestPoint> slice(Rectangle rectangle) {
+		return view(rectangle);
+	}
+
+	public CellStore<InterestPoint> view(Rectangle rectangle) {
+		return new MappedCellStore(xUnscaled, xScale, columnStart, yUnscaled, yScale, cellStart, markerIds, markers, markerIndex, CellStore.clamp(bounds, rectangle));
+	}
+
+	/**
+	 * counts straight from the marker ids in the file, without building any cell
+	 * @param the valid rectangle and the marker
+	 * @return the number of points with the marker in the rectangle, with the same borders as BiDimensionalMap.slice
+	 */
+	long count(Rectangle rectangle, Object marker) {
+		Integer id = markerIndex.get(marker);
+		if (id == null) {
+			return 0;
+		}
+		long[] count = new long[1];
+		((MappedCellStore) view(rectangle)).forEachColumn((column, from, to) -> {
+			for (int i = cellStart.get(from), end = cellStart.get(to); i < end; i++) {
+				if (markerIds.get(i) == id) {
+					count[0]++;
+				}
+			}
+		});
+		return count[0];
+	}
+
+	/**
+	 * visits the columns with cells inside the bounds of the store
+	 */
+	@FunctionalInterface
+	private interface ColumnVisitor {
+		void visit(int column, int from, int to);
+	}
+
+	/**
+	 * helper
+	 * gives the visitor every column inside the bounds with the range [from, to) of its cells inside the bounds, skipping columns with no such cells
+	 */
+	private void forEachColumn(ColumnVisitor visitor) {
+		int[] columns = columns();
+		for (int column = columns[0]; column < columns[1]; column++) {
+			int[] range = rows(column);
+			if (range[0] < range[1]) {
+				visitor.visit(column, range[0], range[1]);
+			}
+		}
+	}
+
+	/**
+	 * helper
+	 * @return the range [from, to) of the columns that lie within the bounds
+	 */
+	private int[] columns() {
+		if (bounds == null) {
+			return new int[] { 0, columnCount };
+		}
+		if (CellStore.isEmpty(bounds)) {
+			return new int[] { 0, 0 };
+		}
+		return new int[] { columnLowerBound(bounds.left()), columnLowerBound(bounds.right()) };
+	}
+
+	/**
+	 * helper
+	 * @return the range [from, to) of the cells of the column at x that lie within the bounds, empty if there is no such column
+	 */
+	private int[] rows(BigDecimal x) {
+		int column = column(x);
+		if (column < 0 || !(bounds == null || (bounds.left().compareTo(x) <= 0 && x.compareTo(bounds.right()) < 0))) {
+			return new int[] { 0, 0 };
+		}
+		return rows(column);
+	}
+
+	/**
+	 * helper
+	 * @return the range [from, to) of the cells of the column that lie within the bounds
+	 */
+	private int[] rows(int column) {
+		int from = columnStart.get(column), to = columnStart.get(column + 1);
+		if (bounds == null) {
+			return new int[] { from, to };
+		}
+		int bottom = cellLowerBound(bounds.bottom(), from, to);
+		return new int[] { bottom, Math.max(bottom, cellLowerBound(bounds.top(), from, to)) };
+	}
+
+	/**
+	 * helper
+	 * @return a read-only view of the interest points of a cell, each with the coordinate of the cell
+	 */
+	private Collection<InterestPoint> cell(int cell, BigDecimal x, BigDecimal y) {
+		return new Cell(new Coordinate(x, y), cellStart.get(cell), cellStart.get(cell + 1));
+	}
+
+	/**
+	 * the interest points of a cell read from its run of marker ids in the file, like count reads them, so that a lookup builds no set and no point until the cell is iterated
+	 * a marker appearing twice in the run, from points whose coordinates differ only in scale, is one interest point of the cell, as the coordinate of the cell is shared
+	 */
+	private final class Cell extends AbstractSet<InterestPoint> {
+
+		private final Coordinate coordinate;
+		private final int from;
+		private final int to;
+
+		/** the number of distinct marker ids in the run, or -1 until it is first asked for */
+		private int size = -1;
+
+		private Cell(Coordinate coordinate, int from, int to) {
+			this.coordinate = coordinate;
+			this.from = from;
+			this.to = to;
+		}
+
+		public int size() {
+			if (size < 0) {
+				BitSet seen = new BitSet(markers.length);
+				for (int i = from; i < to; i++) {
+					seen.set(markerIds.get(i));
+				}
+				size = seen.cardinality();
+			}
+			return size;
+		}
+
+		public boolean contains(Object value) {
+			if (!(value instanceof InterestPoint point) || !coordinate.equals(point.coordinate())) {
+				return false;
+			}
+			Integer id = markerIndex.get(point.marker());
+			if (id == null) {
+				return false;
+			}
+			for (int i = from; i < to; i++) {
+				if (markerIds.get(i) == id) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		public Iterator<InterestPoint> iterator() {
+			return new Iterator<>() {
+				private final BitSet seen = new BitSet(markers.length);
+				private int next = skip(from);
+
+				public boolean hasNext() {
+					return next < to;
+				}
+
+				public InterestPoint next() {
+					if (next >= to) {
+						throw new NoSuchElementException();
+					}
+					int id = markerIds.get(next);
+					seen.set(id);
+					next = skip(next + 1);
+					return new InterestPoint<>(coordinate, markers[id]);
+				}
+
+				/**
+				 * helper
+				 * @return the first position from i whose marker id was not handed out yet
+				 */
+				private int skip(int i) {
+					while (i < to && seen.get(markerIds.get(i))) {
+						i++;
+					}
+					return i;
+				}
+			};
+		}
+	}
+
+	private BigDecimal x(int column) {
+		return BigDecimal.valueOf(xUnscaled.get(column), xScale.get(column));
+	}
+
+	private BigDecimal y(int cell) {
+		return BigDecimal.valueOf(yUnscaled.get(cell), yScale.get(cell));
+	}
+
+	/**
+	 * helper
+	 * @return the index of the column at x, or -1 if there is none
+	 */
+	private int column(BigDecimal x) {
+		int column = columnLowerBound(x);
+		return column < columnCount && x(column).compareTo(x) == 0 ? column : -1;
+	}
+
+	/**
+	 * helper
+	 * @return the first column whose x is not before the given x
+	 */
+	private int columnLowerBound(BigDecimal x) {
+		int from = 0, to = columnCount;
+		while (from < to) {
+			int mid = (from + to) >>> 1;
+			if (x(mid).compareTo(x) < 0) {
+				from = mid + 1;
+			} else {
+				to = mid;
+			}
+		}
+		return from;
+	}
+
+	/**
+	 * helper
+	 * @return the first cell in [from, to) whose y is not before the given y
+	 */
+	private int cellLowerBound(BigDecimal y, int from, int to) {
+		while (from < to) {
+			int mid = (from + to) >>> 1;
+			if (y(mid).compareTo(y) < 0) {
+				from = mid + 1;
+			} else {
+				to = mid;
+			}
+		}
+		return from;
+	}
+
+	/**
+	 * helper
+	 * @throws IllegalArgumentException if the unscaled value of the coordinate does not fit in a long
+	 */
+	private static void checkDigits(BigDecimal value) {
+		if (value.unscaledValue().bitLength() >= Long.SIZE) {
+			throw new IllegalArgumentException("coordinate " + value + " has too many digits for a snapshot");
+		}
+	}
+
+	/**
+	 * helper
+	 * @return the dictionary as the length and UTF-8 bytes of every marker in the order of their ids
+	 */
+	private static ByteBuffer encode(Map<Object, Integer> dictionary, Function<Object, String> encoder) {
+		byte[][] encoded = new byte[dictionary.size()][];
+		int length = 0;
+		for (Map.Entry<Object, Integer> entry : dictionary.entrySet()) {
+			encoded[entry.getValue()] = encoder.apply(entry.getKey()).getBytes(StandardCharsets.UTF_8);
+			length += Integer.BYTES + encoded[entry.getValue()].length;
+		}
+		ByteBuffer bytes = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+		for (byte[] marker : encoded) {
+			bytes.putInt(marker.length).put(marker);
+		}
+		return bytes.flip();
+	}
+
+	/**
+	 * helper
+	 * the sections are x unscaled, y unscaled, x scale, column start, y scale, cell start and marker ids, each starting on 8 bytes, followed by the dictionary
+	 * @return the offsets of the sections and of the dictionary, and the end of the last section as offsets[7]
+	 */
+	private static long[] offsets(int columns, int cells, int points) {
+		long[] sizes = { (long) columns * Long.BYTES, (long) cells * Long.BYTES, (long) columns * Integer.BYTES, (columns + 1L) * Integer.BYTES,
+				(long) cells * Integer.BYTES, (cells + 1L) * Integer.BYTES, (long) points * Integer.BYTES };
+		long[] offsets = new long[sizes.length + 1];
+		offsets[0] = HEADER_BYTES;
+		for (int i = 0; i < sizes.length; i++) {
+			offsets[i + 1] = (offsets[i] + sizes[i] + 7) & ~7L;
+		}
+		return offsets;
+	}
+
+	/**
+	 * helper
+	 * @return the section of the file, in little-endian order
+	 */
+	private static ByteBuffer map(FileChannel channel, FileChannel.MapMode mode, long[] offsets, int section) throws IOException {
+		MappedByteBuffer buffer = channel.map(mode, offsets[section], offsets[section + 1] - offsets[section]);
+		return buffer.order(ByteOrder.LITTLE_ENDIAN);
+	}
+}
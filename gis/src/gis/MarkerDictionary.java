@@ -0,0 +1,69 @@
+package gis;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Gives every marker a small integer id in the order the markers are first seen, so that a cell can keep its markers as bits
+ * ids are added under a lock and read without one, so that counting threads can look markers up while points are added
+ */
+final class MarkerDictionary {
+
+	private final Map<Object, Integer> ids = new ConcurrentHashMap<>();
+	private volatile Object[] markers = new Object[16];
+	private int size;
+
+	/**
+	 * @param the marker to be looked up, which is added if it is new
+	 * @return the id of the marker
+	 */
+	int id(Object marker) {
+		Integer id = ids.get(Objects.requireNonNull(marker));
+		return id != null ? id : add(marker);
+	}
+
+	/**
+	 * @param the marker to be looked up
+	 * @return the id of the marker, or -1 if it has none
+	 */
+	int idOf(Object marker) {
+		Integer id = ids.get(marker);
+		return id != null ? id : -1;
+	}
+
+	/**
+	 * @param an id given by this dictionary
+	 * @return the marker with the id
+	 */
+	Object marker(int id) {
+		return markers[id];
+	}
+
+	/**
+	 * @return a new empty cell encoding its markers with this dictionary
+	 */
+	MarkerSet newCell() {
+		return new MarkerSet(this);
+	}
+
+	/**
+	 * helper
+	 * stores the marker before publishing its id, so that a reader seeing the id also sees the marker
+	 */
+	private synchronized int add(Object marker) {
+		Integer id = ids.get(marker);
+		if (id != null) {
+			return id;
+		}
+		if (size == markers.length) {
+			markers = Arrays.copyOf(markers, size * 2);
+		}
+		Object[] array = markers;
+		array[size] = marker;
+		markers = array;
+		ids.put(marker, size);
+		return size++;
+	}
+}
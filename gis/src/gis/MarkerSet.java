@@ -0,0 +1,208 @@
+package gis;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The collection of one cell of interest points, keeping the coordinate of the cell once and each marker as a bit of its dictionary id
+ * the first 64 ids need no array, so that a cell with a few markers costs a few words instead of a HashSet and an entry per point
+ * a point whose coordinate is not equal to the coordinate of the cell, such as the same position written with another scale, is kept as it is in a small HashSet
+ * like HashSet, it is not safe for several writers
+ */
+final class MarkerSet extends AbstractSet<InterestPoint> {
+
+	private final MarkerDictionary dictionary;
+	private Coordinate coordinate;
+	private long bits;
+	private long[] moreBits;
+	private int bitCount;
+	private Set<InterestPoint> others;
+
+	/**
+	 * @param the dictionary giving the ids of the markers
+	 */
+	MarkerSet(MarkerDictionary dictionary) {
+		this.dictionary = dictionary;
+	}
+
+	public boolean add(InterestPoint point) {
+		InterestPoint.validate(point);
+		if (coordinate == null) {
+			coordinate = point.coordinate();
+		}
+		if (!point.coordinate().equals(coordinate)) {
+			if (others == null) {
+				others = new HashSet<>();
+			}
+			return others.add(point);
+		}
+		return set(dictionary.id(point.marker()));
+	}
+
+	public boolean contains(Object o) {
+		if (!(o instanceof InterestPoint)) {
+			return false;
+		}
+		InterestPoint point = (InterestPoint) o;
+		if (coordinate != null && coordinate.equals(point.coordinate())) {
+			int id = dictionary.idOf(point.marker());
+			return id >= 0 && has(id);
+		}
+		return others != null && others.contains(o);
+	}
+
+	public boolean remove(Object o) {
+		if (!(o instanceof InterestPoint)) {
+			return false;
+		}
+		InterestPoint point = (InterestPoint) o;
+		if (coordinate != null && coordinate.equals(point.coordinate())) {
+			int id = dictionary.idOf(point.marker());
+			return id >= 0 && clear(id);
+		}
+		return others != null && others.remove(o);
+	}
+
+	public int size() {
+		return bitCount + (others == null ? 0 : others.size());
+	}
+
+	public void clear() {
+		bits = 0;
+		moreBits = null;
+		bitCount = 0;
+		others = null;
+	}
+
+	/**
+	 * @param the id of a marker, or -1 if it has none, and the marker
+	 * @return the number of points of the cell with the marker, read from the bit of the marker
+	 */
+	@SuppressWarnings("unchecked")
+	int count(int id, Object marker) {
+		int count = id >= 0 && has(id) ? 1 : 0;
+		if (others != null) {
+			for (InterestPoint point : others) {
+				count += point.hasMarker(marker) ? 1 : 0;
+			}
+		}
+		return count;
+	}
+
+	public Iterator<InterestPoint> iterator() {
+		return new Iterator<InterestPoint>() {
+			private int next = nextId(0);
+			private int last = -1;
+			private final Iterator<InterestPoint> rest = others == null ? null : others.iterator();
+			private boolean inRest;
+
+			public boolean hasNext() {
+				return next >= 0 || (rest != null && rest.hasNext());
+			}
+
+			@SuppressWarnings("unchecked")
+			public InterestPoint next() {
+				if (next >= 0) {
+					last = next;
+					next = nextId(next + 1);
+					return new InterestPoint<>(coordinate, dictionary.marker(last));
+				}
+				if (rest == null) {
+					throw new NoSuchElementException();
+				}
+				inRest = true;
+				return rest.next();
+			}
+
+			public void remove() {
+				if (inRest) {
+					rest.remove();
+				} else if (last >= 0) {
+					clear(last);
+					last = -1;
+				} else {
+					throw new IllegalStateException();
+				}
+			}
+		};
+	}
+
+	/**
+	 * helper
+	 * @return the first id from the given one whose bit is set, or -1
+	 */
+	private int nextId(int from) {
+		if (from < Long.SIZE) {
+			long word = bits & (-1L << from);
+			if (word != 0) {
+				return Long.numberOfTrailingZeros(word);
+			}
+			from = Long.SIZE;
+		}
+		if (moreBits == null) {
+			return -1;
+		}
+		int index = (from - Long.SIZE) >>> 6;
+		if (index >= moreBits.length) {
+			return -1;
+		}
+		long word = moreBits[index] & (-1L << from);
+		while (word == 0) {
+			if (++index == moreBits.length) {
+				return -1;
+			}
+			word = moreBits[index];
+		}
+		return Long.SIZE + index * Long.SIZE + Long.numberOfTrailingZeros(word);
+	}
+
+	private boolean has(int id) {
+		if (id < Long.SIZE) {
+			return (bits & (1L << id)) != 0;
+		}
+		int index = (id - Long.SIZE) >>> 6;
+		return moreBits != null && index < moreBits.length && (moreBits[index] & (1L << id)) != 0;
+	}
+
+	/**
+	 * helper
+	 * @return if the bit was not set before
+	 */
+	private boolean set(int id) {
+		if (has(id)) {
+			return false;
+		}
+		if (id < Long.SIZE) {
+			bits |= 1L << id;
+		} else {
+			int index = (id - Long.SIZE) >>> 6;
+			if (moreBits == null || index >= moreBits.length) {
+				moreBits = moreBits == null ? new long[index + 1] : Arrays.copyOf(moreBits, index + 1);
+			}
+			moreBits[index] |= 1L << id;
+		}
+		bitCount++;
+		return true;
+	}
+
+	/**
+	 * helper
+	 * @return if the bit was set before
+	 */
+	private boolean clear(int id) {
+		if (!has(id)) {
+			return false;
+		}
+		if (id < Long.SIZE) {
+			bits &= ~(1L << id);
+		} else {
+			moreBits[(id - Long.SIZE) >>> 6] &= ~(1L << id);
+		}
+		bitCount--;
+		return true;
+	}
+}
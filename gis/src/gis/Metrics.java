@@ -0,0 +1,144 @@
+package gis;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The switch for the instrumentation of the hot operations of the package, which is off until a sink is installed
+ * while it is off an operation only reads one volatile field, and while it is on it reads the clock and the allocation counter of its thread before and after running
+ * the allocation counter can only be switched on for the whole JVM, which is done when the first sink is installed, so that a program never installing one keeps the JVM setting it had
+ */
+public final class Metrics {
+
+	/**
+	 * the operations that are measured
+	 */
+	public enum Operation {
+
+		/** BiDimensionalMap.get, reading one cell */
+		GET,
+
+		/** BiDimensionalMap.slice, whose cells are not counted */
+		SLICE,
+
+		/** BiDimensionalMap.Updater.add, writing one cell */
+		ADD,
+
+		/** InterestPoints.count and parallelCount, reading the cells of the region that the grid index or the map walk over */
+		COUNT,
+
+		/** InterestPoints.countAll and parallelCountAll, reading the cells within the bounds of the regions */
+		COUNT_ALL,
+
+		/** RectilinearRegion.isOverlapping, also run by RectilinearRegion.of, reading every rectangle */
+		IS_OVERLAPPING,
+
+		/** RectilinearRegion.isConnected, reading every rectangle unless the connectivity is already known */
+		IS_CONNECTED
+	}
+
+	/** the allocation counter of the JVM, or null if it has none or no sink was installed yet, written before the sink so that a probe of the sink sees it */
+	private static com.sun.management.ThreadMXBean threads;
+
+	/** if the allocation counter was looked up and switched on, which happens once */
+	private static boolean allocationsChecked;
+
+	private static volatile MetricsSink sink;
+
+	private Metrics() {
+	}
+
+	/**
+	 * turns the instrumentation on, or off with null, switching on the allocation counter of the JVM the first time it is turned on
+	 * @param the sink receiving the measurements, or null
+	 */
+	public static synchronized void setSink(MetricsSink sink) {
+		if (sink != null && !allocationsChecked) {
+			threads = threads();
+			allocationsChecked = true;
+		}
+		Metrics.sink = sink;
+	}
+
+	/**
+	 * @return the sink receiving the measurements, or null if the instrumentation is off
+	 */
+	public static MetricsSink getSink() {
+		return sink;
+	}
+
+	/**
+	 * starts measuring an operation
+	 * @param the operation
+	 * @return the probe to be stopped when the operation ends, or null if the instrumentation is off
+	 */
+	static Probe start(Operation operation) {
+		MetricsSink current = sink;
+		return current == null ? null : new Probe(current, operation);
+	}
+
+	/**
+	 * the measurement of one running operation
+	 */
+	static final class Probe {
+
+		private final MetricsSink sink;
+		private final Operation operation;
+		private final long bytes;
+		private final AtomicLong cells = new AtomicLong();
+		private final long start;
+
+		private Probe(MetricsSink sink, Operation operation) {
+			this.sink = sink;
+			this.operation = operation;
+			this.bytes = allocatedBytes();
+			this.start = System.nanoTime();
+		}
+
+		/**
+		 * adds to the cells read by the operation, from any thread working on it
+		 * @param the number of cells
+		 */
+		void visited(long count) {
+			cells.addAndGet(count);
+		}
+
+		/**
+		 * hands the measurement to the sink, with the cells added by visited
+		 */
+		void stop() {
+			stop(cells.get());
+		}
+
+		/**
+		 * hands the measurement to the sink
+		 * @param the number of cells read by the operation, or -1 if it does not track them
+		 */
+		void stop(long cells) {
+			long nanos = System.nanoTime() - start;
+			long allocated = allocatedBytes();
+			sink.record(operation, nanos, cells, bytes < 0 || allocated < 0 ? -1 : allocated - bytes);
+		}
+	}
+
+	/**
+	 * helper
+	 * @return the bytes allocated by the current thread so far, or -1 if the JVM cannot tell
+	 */
+	private static long allocatedBytes() {
+		com.sun.management.ThreadMXBean current = threads;
+		return current == null ? -1 : current.getCurrentThreadAllocatedBytes();
+	}
+
+	private static com.sun.management.ThreadMXBean threads() {
+		try {
+			if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads && threads.isThreadAllocatedMemorySupported()) {
+				threads.setThreadAllocatedMemoryEnabled(true);
+				return threads;
+			}
+		} catch (UnsupportedOperationException | LinkageError e) {
+			// the counter is optional, and bytes are reported as -1 without it
+		}
+		return null;
+	}
+}
@@ -0,0 +1,14 @@
+package gis;
+
+/**
+ * receives a measurement of every instrumented operation once it is installed with Metrics.setSink
+ * record is called right after the operation on the thread that ran it, so that a sink has to be quick and safe for several threads
+ */
+@FunctionalInterface
+public interface MetricsSink {
+
+	/**
+	 * @param the operation, how long it took in nanoseconds, the number of cells or rectangles it read, or -1 if the operation does not track them, and the bytes the calling thread allocated during it, or -1 if the JVM cannot tell
+	 */
+	void record(Metrics.Operation operation, long nanos, long cells, long bytes);
+}
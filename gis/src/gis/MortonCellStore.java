@@ -0,0 +1,698 @@
+package gis;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * a cell store keeping the coordinates as primitive doubles in parallel arrays sorted by a Z-order key, which interleaves the bits of the quantized x and y so that cells close in the plane are mostly close in the arrays
+ * a rectangle is walked as a few contiguous ranges of keys covering it, each scanned in one pass over the arrays, instead of a search per x column, and the cells of the ranges are tested against the exact rounded bounds
+ * the ordered operations go through a permutation of the cells by x and then y, built with the key order when an operation needs it
+ * coordinates are rounded to the nearest double like the DOUBLE storage, and the store is not safe for several writers
+ * like the DOUBLE storage, a sort builds new arrays and a new hash table and publishes them by one volatile write, so that threads only reading the store can share it
+ */
+final class MortonCellStore<T> implements CellStore<T> {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	/** the number of key ranges a rectangle is split into before the remaining quadrants are scanned whole */
+	private static final int MAX_RANGES = 64;
+
+	/** the range of a store that is not a view */
+	private static final Range NO_BOUNDS = new Range(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+
+	private volatile Columns<T> columns = new Columns<>(new long[INITIAL_CAPACITY], new double[INITIAL_CAPACITY], new double[INITIAL_CAPACITY], newCells(INITIAL_CAPACITY), 0, INITIAL_CAPACITY * 2);
+	private int size;
+	private volatile boolean sorted = true;
+
+	public Collection<T> get(BigDecimal x, BigDecimal y) {
+		return get(x.doubleValue(), y.doubleValue());
+	}
+
+	public Collection<T> get(double x, double y) {
+		Columns<T> columns = this.columns;
+		int index = columns.indexOf(normalize(x), normalize(y));
+		return index < 0 ? null : columns.cells[index];
+	}
+
+	public Collection<T> put(BigDecimal x, BigDecimal y, Collection<T> collection) {
+		double dx = normalize(x.doubleValue()), dy = normalize(y.doubleValue());
+		Columns<T> columns = this.columns;
+		int index = columns.indexOf(dx, dy);
+		if (index < 0) {
+			append(dx, dy, collection);
+			return null;
+		}
+		Collection<T> previous = columns.cells[index];
+		columns.cells[index] = collection;
+		return previous;
+	}
+
+	public Collection<T> computeIfAbsent(BigDecimal x, BigDecimal y, Supplier<Collection<T>> factory) {
+		double dx = normalize(x.doubleValue()), dy = normalize(y.doubleValue());
+		Columns<T> columns = this.columns;
+		int index = columns.indexOf(dx, dy);
+		if (index >= 0) {
+			return columns.cells[index];
+		}
+		Collection<T> collection = factory.get();
+		append(dx, dy, collection);
+		return collection;
+	}
+
+	/**
+	 * rounds every coordinate once and sorts the values by the keys of the rounded doubles, so that the new cells are appended in key order and never need sorting if the store is empty
+	 * values rounding to the same pair share a key, but a key may hold several pairs, so a value with the key of the one before it is merged through the hash table, like every value if the store had cells
+	 */
+	public boolean addAll(T[] values, Coordinate[] coordinates, Supplier<Collection<T>> factory) {
+		int size = values.length;
+		double[] xs = new double[size], ys = new double[size], high = new double[size], low = new double[size];
+		long[] keys = new long[size];
+		for (int i = 0; i < size; i++) {
+			xs[i] = normalize(coordinates[i].x().doubleValue());
+			ys[i] = normalize(coordinates[i].y().doubleValue());
+			keys[i] = key(quantize(xs[i]), quantize(ys[i]));
+			high[i] = keys[i] >>> Integer.SIZE;
+			low[i] = keys[i] & 0xFFFFFFFFL;
+		}
+		int[] order = CoordinateSort.order(high, low, size);
+		int groups = 0;
+		for (int i = 0; i < size; i++) {
+			if (i == 0 || xs[order[i]] != xs[order[i - 1]] || ys[order[i]] != ys[order[i - 1]]) {
+				groups++;
+			}
+		}
+		if (this.size + groups > columns.xs.length) {
+			grow(Integer.highestOneBit(this.size + groups - 1) << 1);
+		}
+		boolean empty = this.size == 0, changed = false;
+		Collection<T> cell = null;
+		for (int i = 0; i < size; i++) {
+			int value = order[i];
+			double x = xs[value], y = ys[value];
+			if (i == 0 || x != xs[order[i - 1]] || y != ys[order[i - 1]]) {
+				Columns<T> columns = this.columns;
+				int index = empty && (i == 0 || keys[value] != keys[order[i - 1]]) ? -1 : columns.indexOf(x, y);
+				if (index < 0) {
+					cell = factory.get();
+					append(x, y, cell);
+				} else {
+					cell = columns.cells[index];
+				}
+			}
+			changed |= cell.add(values[value]);
+		}
+		return changed;
+	}
+
+	public Set<BigDecimal> xSet() {
+		return xSet(NO_BOUNDS);
+	}
+
+	public Set<BigDecimal> ySet(BigDecimal x) {
+		return ySet(x, NO_BOUNDS);
+	}
+
+	public BigDecimal nextX(BigDecimal x, boolean inclusive) {
+		return nextX(x, inclusive, NO_BOUNDS);
+	}
+
+	public BigDecimal previousX(BigDecimal x, boolean inclusive) {
+		return previousX(x, inclusive, NO_BOUNDS);
+	}
+
+	public BigDecimal nextY(BigDecimal x, BigDecimal y, boolean inclusive) {
+		return nextY(x, y, inclusive, NO_BOUNDS);
+	}
+
+	public BigDecimal previousY(BigDecimal x, BigDecimal y, boolean inclusive) {
+		return previousY(x, y, inclusive, NO_BOUNDS);
+	}
+
+	public void forEach(CellVisitor<T> visitor) {
+		Columns<T> columns = ensureSorted();
+		int[] order = columns.byCoordinate;
+		double[] xs = columns.xs, ys = columns.ys;
+		Collection<T>[] cells = columns.cells;
+		BigDecimal x = null;
+		for (int i = 0; i < order.length; i++) {
+			int cell = order[i];
+			if (i == 0 || xs[cell] != xs[order[i - 1]]) {
+				x = DoubleCellStore.toBigDecimal(xs[cell]);
+			}
+			visitor.visit(x, DoubleCellStore.toBigDecimal(ys[cell]), cells[cell]);
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * copies the cells of the key ranges of the rectangle, which come in key order so that the new store needs no sorting
+	 */
+	public CellStore<T> slice(Rectangle rectangle) {
+		MortonCellStore<T> slice = new MortonCellStore<>();
+		Range range = new Range(rectangle);
+		Columns<T> columns = ensureSorted();
+		scan(columns, range, (cell) -> slice.append(columns.xs[cell], columns.ys[cell], columns.cells[cell]));
+		return slice;
+	}
+
+	public CellStore<T> view(Rectangle rectangle) {
+		return new View(rectangle);
+	}
+
+	/**
+	 * hands the index of every cell within the range to the action, in key order
+	 */
+	@FunctionalInterface
+	private interface CellAction {
+
+		void accept(int cell);
+	}
+
+	/**
+	 * helper
+	 * scans the key ranges covering the range in the columns, testing every cell in them against it
+	 */
+	private void scan(Columns<T> columns, Range range, CellAction action) {
+		if (range.left >= range.right || range.bottom >= range.top) {
+			return;
+		}
+		long[] ranges = ranges(range);
+		long[] keys = columns.keys;
+		double[] xs = columns.xs, ys = columns.ys;
+		int from = 0;
+		for (int r = 0; r < ranges.length; r += 2) {
+			long low = ranges[r], high = ranges[r + 1];
+			for (int i = columns.lowerBound(low, from, size); i < size && Long.compareUnsigned(keys[i], high) <= 0; i++) {
+				if (range.contains(xs[i], ys[i])) {
+					action.accept(i);
+				}
+				from = i + 1;
+			}
+		}
+	}
+
+	/**
+	 * helper
+	 * visits the cells within the range ordered by x and then y, gathering them from the key ranges and sorting only those
+	 */
+	private void forEach(Range range, CellVisitor<T> visitor) {
+		Columns<T> columns = ensureSorted();
+		double[] xs = columns.xs, ys = columns.ys;
+		Collection<T>[] cells = columns.cells;
+		int[] found = new int[16];
+		int[] count = new int[1];
+		int[][] buffer = { found };
+		scan(columns, range, cell -> {
+			if (count[0] == buffer[0].length) {
+				buffer[0] = Arrays.copyOf(buffer[0], count[0] * 2);
+			}
+			buffer[0][count[0]++] = cell;
+		});
+		found = buffer[0];
+		int n = count[0];
+		double[] foundXs = new double[n], foundYs = new double[n];
+		for (int i = 0; i < n; i++) {
+			foundXs[i] = xs[found[i]];
+			foundYs[i] = ys[found[i]];
+		}
+		int[] order = CoordinateSort.order(foundXs, foundYs, n);
+		BigDecimal x = null;
+		for (int i = 0; i < n; i++) {
+			int cell = found[order[i]];
+			if (i == 0 || xs[cell] != xs[found[order[i - 1]]]) {
+				x = DoubleCellStore.toBigDecimal(xs[cell]);
+			}
+			visitor.visit(x, DoubleCellStore.toBigDecimal(ys[cell]), cells[cell]);
+		}
+	}
+
+	/**
+	 * helper
+	 * @return the x coordinates of the columns with a cell within the range in ascending order
+	 */
+	private Set<BigDecimal> xSet(Range range) {
+		Columns<T> columns = ensureSorted();
+		int[] order = columns.byCoordinate;
+		double[] xs = columns.xs, ys = columns.ys;
+		Set<BigDecimal> set = new LinkedHashSet<>();
+		int end = columns.lowerBound(order, range.right, Double.NEGATIVE_INFINITY);
+		for (int i = columns.lowerBound(order, range.left, Double.NEGATIVE_INFINITY); i < end; i = columns.lowerBound(order, Math.nextUp(xs[order[i]]), Double.NEGATIVE_INFINITY)) {
+			int first = columns.lowerBound(order, xs[order[i]], range.bottom);
+			if (first < end && xs[order[first]] == xs[order[i]] && ys[order[first]] < range.top) {
+				set.add(DoubleCellStore.toBigDecimal(xs[order[i]]));
+			}
+		}
+		return Collections.unmodifiableSet(set);
+	}
+
+	/**
+	 * helper
+	 * @return the y coordinates of the column at x within the range in ascending order
+	 */
+	private Set<BigDecimal> ySet(BigDecimal x, Range range) {
+		Columns<T> columns = ensureSorted();
+		int[] order = columns.byCoordinate;
+		double[] xs = columns.xs, ys = columns.ys;
+		double dx = normalize(x.doubleValue());
+		Set<BigDecimal> set = new LinkedHashSet<>();
+		if (dx >= range.left && dx < range.right) {
+			for (int i = columns.lowerBound(order, dx, range.bottom); i < order.length && xs[order[i]] == dx && ys[order[i]] < range.top; i++) {
+				set.add(DoubleCellStore.toBigDecimal(ys[order[i]]));
+			}
+		}
+		return Collections.unmodifiableSet(set);
+	}
+
+	/**
+	 * helper
+	 * @return the x of the first column after x within the range, or null if there is none
+	 */
+	private BigDecimal nextX(BigDecimal x, boolean inclusive, Range range) {
+		Columns<T> columns = ensureSorted();
+		int[] order = columns.byCoordinate;
+		double[] xs = columns.xs, ys = columns.ys;
+		double dx = normalize(x.doubleValue());
+		int next = Math.max(columns.lowerBound(order, inclusive ? dx : Math.nextUp(dx), Double.NEGATIVE_INFINITY), columns.lowerBound(order, range.left, Double.NEGATIVE_INFINITY));
+		return next < columns.lowerBound(order, range.right, Double.NEGATIVE_INFINITY) ? DoubleCellStore.toBigDecimal(xs[order[next]]) : null;
+	}
+
+	/**
+	 * helper
+	 * @return the x of the last column before x within the range, or null if there is none
+	 */
+	private BigDecimal previousX(BigDecimal x, boolean inclusive, Range range) {
+		Columns<T> columns = ensureSorted();
+		int[] order = columns.byCoordinate;
+		double[] xs = columns.xs, ys = columns.ys;
+		double dx = normalize(x.doubleValue());
+		int previous = Math.min(columns.lowerBound(order, inclusive ? Math.nextUp(dx) : dx, Double.NEGATIVE_INFINITY), columns.lowerBound(order, range.right, Double.NEGATIVE_INFINITY)) - 1;
+		return previous >= columns.lowerBound(order, range.left, Double.NEGATIVE_INFINITY) ? DoubleCellStore.toBigDecimal(xs[order[previous]]) : null;
+	}
+
+	/**
+	 * helper
+	 * @return the y of the first cell of the column at x after y within the range, or null if there is none
+	 */
+	private BigDecimal nextY(BigDecimal x, BigDecimal y, boolean inclusive, Range range) {
+		Columns<T> columns = ensureSorted();
+		int[] order = columns.byCoordinate;
+		double[] xs = columns.xs, ys = columns.ys;
+		double dx = normalize(x.doubleValue()), dy = normalize(y.doubleValue());
+		if (dx < range.left || dx >= range.right) {
+			return null;
+		}
+		int next = columns.lowerBound(order, dx, Math.max(inclusive ? dy : Math.nextUp(dy), range.bottom));
+		return next < order.length && xs[order[next]] == dx && ys[order[next]] < range.top ? DoubleCellStore.toBigDecimal(ys[order[next]]) : null;
+	}
+
+	/**
+	 * helper
+	 * @return the y of the last cell of the column at x before y within the range, or null if there is none
+	 */
+	private BigDecimal previousY(BigDecimal x, BigDecimal y, boolean inclusive, Range range) {
+		Columns<T> columns = ensureSorted();
+		int[] order = columns.byCoordinate;
+		double[] xs = columns.xs, ys = columns.ys;
+		double dx = normalize(x.doubleValue()), dy = normalize(y.doubleValue());
+		if (dx < range.left || dx >= range.right) {
+			return null;
+		}
+		int previous = columns.lowerBound(order, dx, Math.min(inclusive ? Math.nextUp(dy) : dy, range.top)) - 1;
+		return previous >= 0 && xs[order[previous]] == dx && ys[order[previous]] >= range.bottom ? DoubleCellStore.toBigDecimal(ys[order[previous]]) : null;
+	}
+
+	/**
+	 * the borders of a rectangle rounded to doubles
+	 */
+	private static final class Range {
+
+		private final double left, right, bottom, top;
+
+		Range(Rectangle rectangle) {
+			this(normalize(rectangle.left().doubleValue()), normalize(rectangle.right().doubleValue()), normalize(rectangle.bottom().doubleValue()), normalize(rectangle.top().doubleValue()));
+		}
+
+		Range(double left, double right, double bottom, double top) {
+			this.left = left;
+			this.right = right;
+			this.bottom = bottom;
+			this.top = top;
+		}
+
+		boolean contains(double x, double y) {
+			return left <= x && x < right && bottom <= y && y < top;
+		}
+	}
+
+	/**
+	 * a part of the store limited to a rectangle, which reads and writes through to the store
+	 */
+	private final class View implements CellStore<T> {
+
+		private final Rectangle bounds;
+		private final Range range;
+
+		View(Rectangle bounds) {
+			this.bounds = bounds;
+			this.range = new Range(bounds);
+		}
+
+		public Collection<T> get(BigDecimal x, BigDecimal y) {
+			return get(x.doubleValue(), y.doubleValue());
+		}
+
+		public Collection<T> get(double x, double y) {
+			return range.contains(normalize(x), normalize(y)) ? MortonCellStore.this.get(x, y) : null;
+		}
+
+		public Collection<T> put(BigDecimal x, BigDecimal y, Collection<T> collection) {
+			check(x, y);
+			return MortonCellStore.this.put(x, y, collection);
+		}
+
+		public Collection<T> computeIfAbsent(BigDecimal x, BigDecimal y, Supplier<Collection<T>> factory) {
+			check(x, y);
+			return MortonCellStore.this.computeIfAbsent(x, y, factory);
+		}
+
+		public Set<BigDecimal> xSet() {
+			return MortonCellStore.this.xSet(range);
+		}
+
+		public Set<BigDecimal> ySet(BigDecimal x) {
+			return MortonCellStore.this.ySet(x, range);
+		}
+
+		public BigDecimal nextX(BigDecimal x, boolean inclusive) {
+			return MortonCellStore.this.nextX(x, inclusive, range);
+		}
+
+		public BigDecimal previousX(BigDecimal x, boolean inclusive) {
+			return MortonCellStore.this.previousX(x, inclusive, range);
+		}
+
+		public BigDecimal nextY(BigDecimal x, BigDecimal y, boolean inclusive) {
+			return MortonCellStore.this.nextY(x, y, inclusive, range);
+		}
+
+		public BigDecimal previousY(BigDecimal x, BigDecimal y, boolean inclusive) {
+			return MortonCellStore.this.previousY(x, y, inclusive, range);
+		}
+
+		public void forEach(CellVisitor<T> visitor) {
+			MortonCellStore.this.forEach(range, visitor);
+		}
+
+		public CellStore<T> slice(Rectangle rectangle) {
+			return MortonCellStore.this.slice(CellStore.clamp(bounds, rectangle));
+		}
+
+		public CellStore<T> view(Rectangle rectangle) {
+			return new View(CellStore.clamp(bounds, rectangle));
+		}
+
+		/**
+		 * helper
+		 * @throws IllegalArgumentException if the coordinate is outside the view
+		 */
+		private void check(BigDecimal x, BigDecimal y) {
+			if (!range.contains(normalize(x.doubleValue()), normalize(y.doubleValue()))) {
+				throw new IllegalArgumentException("key out of range");
+			}
+		}
+	}
+
+	/**
+	 * splits the quantized range into the key ranges of the quadrants of the key space it covers, refining the quadrants it only partly covers until there are MAX_RANGES ranges
+	 * @param the range
+	 * @return the sorted, disjoint key ranges as pairs of inclusive unsigned low and high keys
+	 */
+	private static long[] ranges(Range range) {
+		long left = quantize(range.left), right = quantize(range.right), bottom = quantize(range.bottom), top = quantize(range.top);
+		long[] ranges = new long[2 * MAX_RANGES];
+		int[] count = new int[1];
+		ranges = decompose(0, 0, Integer.SIZE, left, right, bottom, top, ranges, count);
+		return Arrays.copyOf(ranges, count[0]);
+	}
+
+	/**
+	 * helper
+	 * adds the key ranges of the quadrant [x, x + 2^bits) x [y, y + 2^bits) meeting the quantized box [left, right] x [bottom, top], merging a range with the previous one when they are contiguous
+	 * @return the array of ranges, grown if needed
+	 */
+	private static long[] decompose(long x, long y, int bits, long left, long right, long bottom, long top, long[] ranges, int[] count) {
+		long side = (1L << bits) - 1;
+		if (x > right || x + side < left || y > top || y + side < bottom) {
+			return ranges;
+		}
+		boolean inside = left <= x && x + side <= right && bottom <= y && y + side <= top;
+		if (inside || bits == 0 || count[0] >= 2 * MAX_RANGES) {
+			long low = key(x, y), high = low + (bits == Integer.SIZE ? -1L : (1L << (2 * bits)) - 1);
+			if (count[0] > 0 && ranges[count[0] - 1] + 1 == low) {
+				ranges[count[0] - 1] = high;
+			} else {
+				if (count[0] == ranges.length) {
+					ranges = Arrays.copyOf(ranges, ranges.length * 2);
+				}
+				ranges[count[0]++] = low;
+				ranges[count[0]++] = high;
+			}
+			return ranges;
+		}
+		long half = 1L << (bits - 1);
+		ranges = decompose(x, y, bits - 1, left, right, bottom, top, ranges, count);
+		ranges = decompose(x + half, y, bits - 1, left, right, bottom, top, ranges, count);
+		ranges = decompose(x, y + half, bits - 1, left, right, bottom, top, ranges, count);
+		return decompose(x + half, y + half, bits - 1, left, right, bottom, top, ranges, count);
+	}
+
+	/**
+	 * helper
+	 * @return the value mapped to an unsigned 32 bit integer that never decreases as the value grows, keeping its sign, its exponent and the high bits of its mantissa
+	 */
+	private static long quantize(double value) {
+		long bits = Double.doubleToLongBits(value);
+		bits ^= (bits >> 63) & Long.MAX_VALUE;
+		return (bits ^ Long.MIN_VALUE) >>> Integer.SIZE;
+	}
+
+	/**
+	 * helper
+	 * @return the key of the quantized x and y, whose bits are interleaved with x in the even bits
+	 */
+	private static long key(long x, long y) {
+		return spread(x) | (spread(y) << 1);
+	}
+
+	/**
+	 * helper
+	 * @return the 32 low bits of the value moved to the even bits of a long
+	 */
+	private static long spread(long value) {
+		value &= 0xFFFFFFFFL;
+		value = (value | (value << 16)) & 0x0000FFFF0000FFFFL;
+		value = (value | (value << 8)) & 0x00FF00FF00FF00FFL;
+		value = (value | (value << 4)) & 0x0F0F0F0F0F0F0F0FL;
+		value = (value | (value << 2)) & 0x3333333333333333L;
+		return (value | (value << 1)) & 0x5555555555555555L;
+	}
+
+	/**
+	 * helper
+	 * @return the value with negative zero folded into positive zero, so that equal coordinates share a key
+	 */
+	private static double normalize(double value) {
+		return value + 0.0;
+	}
+
+	/**
+	 * helper
+	 * adds a new cell at the end of the arrays, which stay sorted only if its key is not before the last one
+	 */
+	private void append(double x, double y, Collection<T> collection) {
+		if (size == columns.xs.length) {
+			grow(columns.xs.length * 2);
+		}
+		Columns<T> columns = this.columns;
+		long key = key(quantize(x), quantize(y));
+		if (size > 0 && Long.compareUnsigned(columns.keys[size - 1], key) > 0) {
+			sorted = false;
+		}
+		columns.keys[size] = key;
+		columns.xs[size] = x;
+		columns.ys[size] = y;
+		columns.cells[size] = collection;
+		size++;
+		columns.byCoordinate = null;
+		columns.insert(size - 1);
+	}
+
+	/**
+	 * helper
+	 * copies the arrays into arrays of the capacity, a power of two, and rebuilds the hash table
+	 */
+	private void grow(int capacity) {
+		Columns<T> columns = this.columns;
+		this.columns = new Columns<>(Arrays.copyOf(columns.keys, capacity), Arrays.copyOf(columns.xs, capacity), Arrays.copyOf(columns.ys, capacity), Arrays.copyOf(columns.cells, capacity), size, capacity * 2);
+	}
+
+	/**
+	 * helper
+	 * sorts the cells by key if an append broke the order, and orders them by x and then y if a cell was added
+	 * @return the sorted columns, with the indices of their cells ordered by x and then y
+	 */
+	private Columns<T> ensureSorted() {
+		if (sorted) {
+			Columns<T> columns = this.columns;
+			if (columns.byCoordinate != null) {
+				return columns;
+			}
+		}
+		synchronized (this) {
+			if (!sorted) {
+				sortCells();
+			}
+			Columns<T> columns = this.columns;
+			if (columns.byCoordinate == null) {
+				columns.byCoordinate = CoordinateSort.order(columns.xs, columns.ys, size);
+			}
+			return columns;
+		}
+	}
+
+	/**
+	 * helper
+	 * builds arrays ordered by key with their own hash table and publishes them only once they are complete, sorting the high and low halves of the keys as doubles, which hold them exactly
+	 */
+	private void sortCells() {
+		Columns<T> columns = this.columns;
+		double[] high = new double[size], low = new double[size];
+		for (int i = 0; i < size; i++) {
+			high[i] = columns.keys[i] >>> Integer.SIZE;
+			low[i] = columns.keys[i] & 0xFFFFFFFFL;
+		}
+		int[] order = CoordinateSort.order(high, low, size);
+		long[] sortedKeys = new long[columns.keys.length];
+		double[] sortedXs = new double[columns.xs.length];
+		double[] sortedYs = new double[columns.ys.length];
+		Collection<T>[] sortedCells = newCells(columns.cells.length);
+		for (int i = 0; i < size; i++) {
+			sortedKeys[i] = columns.keys[order[i]];
+			sortedXs[i] = columns.xs[order[i]];
+			sortedYs[i] = columns.ys[order[i]];
+			sortedCells[i] = columns.cells[order[i]];
+		}
+		this.columns = new Columns<>(sortedKeys, sortedXs, sortedYs, sortedCells, size, columns.table.length);
+		sorted = true;
+	}
+
+	/**
+	 * the keys, coordinates and cells in parallel arrays, with the hash table indexing them and the order of the cells by x and then y
+	 * a sort or a growth makes new columns instead of changing these arrays, so that a reader holding them always sees a table and an order matching its arrays
+	 */
+	private static final class Columns<T> {
+
+		private final long[] keys;
+		private final double[] xs;
+		private final double[] ys;
+		private final Collection<T>[] cells;
+
+		/** slots holding the index of a cell plus one, or 0 if the slot is empty */
+		private final int[] table;
+
+		/** the indices of the cells ordered by x and then y, or null if a cell was added since it was built */
+		private volatile int[] byCoordinate;
+
+		/**
+		 * @param the arrays, the number of cells in them and the number of slots of the hash table, which is filled with those cells
+		 */
+		Columns(long[] keys, double[] xs, double[] ys, Collection<T>[] cells, int size, int slots) {
+			this.keys = keys;
+			this.xs = xs;
+			this.ys = ys;
+			this.cells = cells;
+			this.table = new int[slots];
+			for (int i = 0; i < size; i++) {
+				insert(i);
+			}
+		}
+
+		/**
+		 * @return the index of the cell at (x, y), or -1 if there is none
+		 */
+		int indexOf(double x, double y) {
+			int mask = table.length - 1;
+			for (int slot = hash(x, y) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+				int index = table[slot] - 1;
+				if (xs[index] == x && ys[index] == y) {
+					return index;
+				}
+			}
+			return -1;
+		}
+
+		/**
+		 * puts the cell at index in the first free slot of its probe sequence
+		 */
+		void insert(int index) {
+			int mask = table.length - 1;
+			int slot = hash(xs[index], ys[index]) & mask;
+			while (table[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = index + 1;
+		}
+
+		/**
+		 * @return the first index in [from, to) whose key is not below the unsigned key
+		 */
+		int lowerBound(long key, int from, int to) {
+			while (from < to) {
+				int mid = (from + to) >>> 1;
+				if (Long.compareUnsigned(keys[mid], key) < 0) {
+					from = mid + 1;
+				} else {
+					to = mid;
+				}
+			}
+			return from;
+		}
+
+		/**
+		 * @return the first position in the order whose cell is not before (x, y)
+		 */
+		int lowerBound(int[] order, double x, double y) {
+			int from = 0, to = order.length;
+			while (from < to) {
+				int mid = (from + to) >>> 1;
+				int cell = order[mid];
+				int compare = Double.compare(xs[cell], x);
+				if (compare < 0 || (compare == 0 && Double.compare(ys[cell], y) < 0)) {
+					from = mid + 1;
+				} else {
+					to = mid;
+				}
+			}
+			return from;
+		}
+	}
+
+	private static int hash(double x, double y) {
+		long h = Double.doubleToLongBits(x) * 0x9E3779B97F4A7C15L + Double.doubleToLongBits(y);
+		h *= 0xBF58476D1CE4E5B9L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> Collection<T>[] newCells(int capacity) {
+		return (Collection<T>[]) new Collection<?>[capacity];
+	}
+}
@@ -0,0 +1,262 @@
+package gis;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A best-first search handing out the values of a map in ascending distance from a coordinate, cells at the same distance coming in the order of their coordinates
+ * the queue holds cells and parts of the map not searched yet, keyed by a lower bound of the squared distance of their cells worked out on doubles, so that a part is only opened once nothing left may be closer
+ * a cell leaving the queue gets its exact squared distance and waits among the ready cells until every entry left in the queue is surely farther, so that the BigDecimal arithmetic is only done for the cells that are handed out or close to them
+ * the search is lazy: it only opens the parts it needs for the values taken so far
+ */
+final class NearestSearch<T> implements Iterator<Neighbor<T>> {
+
+	/** the initial size of the queues, enough for the few buckets or columns around the coordinate without growing */
+	private static final int INITIAL_CAPACITY = 128;
+
+	/**
+	 * a part of the map that is searched once nothing in the queue may be closer than its bound
+	 */
+	@FunctionalInterface
+	interface Part<T> {
+
+		/**
+		 * adds the cells of the part, or smaller parts of it, to the search
+		 * @param the search
+		 */
+		void open(NearestSearch<T> search);
+	}
+
+	/**
+	 * a cell or a part of the search
+	 */
+	private static final class Entry<T> {
+
+		/** the bounds of the squared distance of the cells of the entry, high being only known for a cell */
+		private final double low, high;
+		private final BigDecimal x, y;
+		private final Collection<T> cell;
+		private final Part<T> part;
+		private BigDecimal exact;
+
+		private Entry(double low, double high, BigDecimal x, BigDecimal y, Collection<T> cell, Part<T> part) {
+			this.low = low;
+			this.high = high;
+			this.x = x;
+			this.y = y;
+			this.cell = cell;
+			this.part = part;
+		}
+
+		/**
+		 * orders the queue by the lower bounds, parts coming before cells at the same bound
+		 */
+		private static int byBound(Entry<?> first, Entry<?> second) {
+			int compare = Double.compare(first.low, second.low);
+			return compare != 0 ? compare : Boolean.compare(first.cell != null, second.cell != null);
+		}
+
+		/**
+		 * orders the ready cells by their exact squared distance and then their coordinates
+		 */
+		private static int byDistance(Entry<?> first, Entry<?> second) {
+			int compare = first.exact.compareTo(second.exact);
+			if (compare == 0) {
+				compare = first.x.compareTo(second.x);
+			}
+			return compare != 0 ? compare : first.y.compareTo(second.y);
+		}
+	}
+
+	private final BigDecimal x, y;
+	private final double xValue, yValue;
+	private final PriorityQueue<Entry<T>> queue = new PriorityQueue<>(INITIAL_CAPACITY, Entry::byBound);
+	private final PriorityQueue<Entry<T>> ready = new PriorityQueue<>(INITIAL_CAPACITY, Entry::byDistance);
+	private Iterator<T> values = Collections.emptyIterator();
+	private Coordinate coordinate;
+	private BigDecimal squaredDistance;
+
+	/**
+	 * @param the coordinate the distances are measured from
+	 */
+	NearestSearch(Coordinate center) {
+		this.x = center.x();
+		this.y = center.y();
+		this.xValue = x.doubleValue();
+		this.yValue = y.doubleValue();
+	}
+
+	/**
+	 * starts a search over the columns of a store, walking out from the column of the coordinate to the left and right, and from its row up and down each column
+	 * @param the store to be searched and the coordinate the distances are measured from
+	 * @return the search
+	 */
+	static <T> NearestSearch<T> of(CellStore<T> store, Coordinate center) {
+		NearestSearch<T> search = new NearestSearch<>(center);
+		search.addColumn(store, store.nextX(search.x, true), true);
+		search.addColumn(store, store.previousX(search.x, false), false);
+		return search;
+	}
+
+	/**
+	 * @param the x and y coordinate of a cell and its collection, ignored if null
+	 */
+	void addCell(BigDecimal x, BigDecimal y, Collection<T> cell) {
+		addCell(x, y, x.doubleValue(), y.doubleValue(), cell);
+	}
+
+	/**
+	 * the collection is not read until the cell is reached, so that queuing the cells of a bucket does not touch every collection in it
+	 * @param the x and y coordinate of a cell, the same coordinate rounded to doubles, and its collection, ignored if null
+	 */
+	void addCell(BigDecimal x, BigDecimal y, double xValue, double yValue, Collection<T> cell) {
+		if (cell != null) {
+			double dx = xValue - this.xValue, dy = yValue - this.yValue;
+			double approximate = dx * dx + dy * dy, error = error(xValue, dx, this.xValue, yValue, dy, this.yValue, approximate);
+			queue.add(new Entry<>(approximate - error, approximate + error, x, y, cell, null));
+		}
+	}
+
+	/**
+	 * @param a lower bound of the squared distance of the cells in the part, and the part
+	 */
+	void addPart(double bound, Part<T> part) {
+		queue.add(new Entry<>(bound, bound, null, null, null, part));
+	}
+
+	/**
+	 * @param x and y coordinate
+	 * @return the exact square of the distance from the searched coordinate
+	 */
+	BigDecimal squaredDistance(BigDecimal x, BigDecimal y) {
+		BigDecimal dx = x.subtract(this.x), dy = y.subtract(this.y);
+		return dx.multiply(dx).add(dy.multiply(dy));
+	}
+
+	/**
+	 * @param the largest number of values to be found
+	 * @return the k closest values in ascending distance, as a sequential stream that runs the search as it is consumed
+	 * @throws IllegalArgumentException if k is negative
+	 */
+	Stream<Neighbor<T>> nearest(int k) {
+		if (k < 0) {
+			throw new IllegalArgumentException("k is negative");
+		}
+		return stream().limit(k);
+	}
+
+	/**
+	 * @param the distance
+	 * @return the values within the distance in ascending distance, as a sequential stream that runs the search as it is consumed
+	 * @throws NullPointerException if the distance is null
+	 * @throws IllegalArgumentException if the distance is negative
+	 */
+	Stream<Neighbor<T>> within(BigDecimal distance) {
+		if (Objects.requireNonNull(distance).signum() < 0) {
+			throw new IllegalArgumentException("distance is negative");
+		}
+		BigDecimal squared = distance.multiply(distance);
+		return stream().takeWhile(neighbor -> neighbor.squaredDistance().compareTo(squared) <= 0);
+	}
+
+	/**
+	 * helper
+	 * @return every value in ascending distance, as a sequential stream that runs the search as it is consumed
+	 */
+	private Stream<Neighbor<T>> stream() {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false);
+	}
+
+	public boolean hasNext() {
+		while (!values.hasNext()) {
+			Entry<T> next = queue.peek();
+			if (!ready.isEmpty() && (next == null || ready.peek().high < next.low)) {
+				Entry<T> entry = ready.poll();
+				values = entry.cell.iterator();
+				coordinate = new Coordinate(entry.x, entry.y);
+				squaredDistance = entry.exact;
+			} else if (next == null) {
+				return false;
+			} else if (queue.poll().part != null) {
+				next.part.open(this);
+			} else {
+				next.exact = squaredDistance(next.x, next.y);
+				ready.add(next);
+			}
+		}
+		return true;
+	}
+
+	public Neighbor<T> next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return new Neighbor<>(values.next(), coordinate, squaredDistance);
+	}
+
+	/**
+	 * helper
+	 * bounds the rounding of a squared distance worked out on doubles: each coordinate is within half an ulp of its double, the differences and the squares add half an ulp each, and the result is doubled to cover the rounding of the bound itself
+	 * @return the largest distance between the squared distance on doubles and the exact one
+	 */
+	private static double error(double x, double dx, double centerX, double y, double dy, double centerY, double approximate) {
+		double errorX = (Math.ulp(x) + Math.ulp(centerX) + Math.ulp(dx)) / 2, errorY = (Math.ulp(y) + Math.ulp(centerY) + Math.ulp(dy)) / 2;
+		return 2 * (errorX * (2 * Math.abs(dx) + errorX) + errorY * (2 * Math.abs(dy) + errorY) + 2 * Math.ulp(approximate));
+	}
+
+	/**
+	 * helper
+	 * @return a lower bound of the squared distance of (x, y), worked out on doubles
+	 */
+	private double lowerBound(BigDecimal x, BigDecimal y) {
+		return lowerBound(x.doubleValue(), y.doubleValue());
+	}
+
+	/**
+	 * @param x and y coordinate rounded to doubles
+	 * @return a lower bound of the squared distance of any coordinate rounding to them or to doubles farther from the searched coordinate, worked out on doubles
+	 */
+	double lowerBound(double xValue, double yValue) {
+		double dx = xValue - this.xValue, dy = yValue - this.yValue;
+		double approximate = dx * dx + dy * dy;
+		return approximate - error(xValue, dx, this.xValue, yValue, dy, this.yValue, approximate);
+	}
+
+	/**
+	 * helper
+	 * queues the column at columnX, whose cells are at least as far as the column, followed by the next column in the same direction once it is opened
+	 */
+	private void addColumn(CellStore<T> store, BigDecimal columnX, boolean ascending) {
+		if (columnX == null) {
+			return;
+		}
+		addPart(lowerBound(columnX, y), search -> {
+			addRow(store, columnX, store.nextY(columnX, y, true), true);
+			addRow(store, columnX, store.previousY(columnX, y, false), false);
+			addColumn(store, ascending ? store.nextX(columnX, false) : store.previousX(columnX, false), ascending);
+		});
+	}
+
+	/**
+	 * helper
+	 * queues the cell at (columnX, rowY), followed by the next cell of the column in the same direction once it is reached
+	 */
+	private void addRow(CellStore<T> store, BigDecimal columnX, BigDecimal rowY, boolean ascending) {
+		if (rowY == null) {
+			return;
+		}
+		addPart(lowerBound(columnX, rowY), search -> {
+			addCell(columnX, rowY, store.get(columnX, rowY));
+			addRow(store, columnX, ascending ? store.nextY(columnX, rowY, false) : store.previousY(columnX, rowY, false), ascending);
+		});
+	}
+}
@@ -0,0 +1,17 @@
+package gis;
+
+import java.math.BigDecimal;
+
+/**
+ * A value of a map found by a nearest neighbour search, with the coordinate of its cell and its distance from the searched coordinate
+ * @param the value, the coordinate of its cell and the exact square of its distance
+ */
+public record Neighbor<T>(T value, Coordinate coordinate, BigDecimal squaredDistance) {
+
+	/**
+	 * @return the distance from the searched coordinate, rounded to a double
+	 */
+	public double distance() {
+		return Math.sqrt(squaredDistance.doubleValue());
+	}
+}
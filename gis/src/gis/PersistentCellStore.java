@@ -0,0 +1,397 @@
+package gis;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * An immutable store whose columns and cells are kept in persistent randomized binary search trees, a tree of columns ordered by x holding a tree of cells ordered by y for each column
+ * writing a cell with with copies only the O(log n) nodes on the path to its column and to the cell within it and leaves this store untouched, so that every version shares the rest of the trees and can be read by any thread without locking
+ * the collections of the cells are unmodifiable, and a version is reclaimed by the garbage collector once nothing refers to it
+ */
+final class PersistentCellStore<T> implements CellStore<T> {
+
+	/**
+	 * a node of a tree, which is never changed once it is built
+	 */
+	private static final class Node<V> {
+
+		private final BigDecimal key;
+		private final V value;
+		private final int priority;
+		private final Node<V> left, right;
+
+		private Node(BigDecimal key, V value, int priority, Node<V> left, Node<V> right) {
+			this.key = key;
+			this.value = value;
+			this.priority = priority;
+			this.left = left;
+			this.right = right;
+		}
+	}
+
+	private static final PersistentCellStore<?> EMPTY = new PersistentCellStore<>(null, null);
+
+	private final Node<Node<Collection<T>>> columns;
+	private final Rectangle bounds;
+
+	private PersistentCellStore(Node<Node<Collection<T>>> columns, Rectangle bounds) {
+		this.columns = columns;
+		this.bounds = bounds;
+	}
+
+	/**
+	 * @return the store without any cell
+	 */
+	@SuppressWarnings("unchecked")
+	static <T> PersistentCellStore<T> empty() {
+		return (PersistentCellStore<T>) EMPTY;
+	}
+
+	/**
+	 * copies the non-empty cells of a map into balanced trees
+	 * @param the map to be copied
+	 * @return the store holding unmodifiable copies of the cells
+	 */
+	static <T> PersistentCellStore<T> of(BiDimensionalMap<T> map) {
+		List<BigDecimal> xs = new ArrayList<>();
+		List<Node<Collection<T>>> columnList = new ArrayList<>();
+		List<BigDecimal> ys = new ArrayList<>();
+		List<Collection<T>> cells = new ArrayList<>();
+		map.forEachCell((x, y, values) -> {
+			if (values.isEmpty()) {
+				return;
+			}
+			if (!xs.isEmpty() && xs.get(xs.size() - 1).compareTo(x) != 0) {
+				columnList.add(build(ys, cells, 0, ys.size()));
+				ys.clear();
+				cells.clear();
+			}
+			if (ys.isEmpty()) {
+				xs.add(x);
+			}
+			ys.add(y);
+			cells.add(freeze(values));
+		});
+		if (!ys.isEmpty()) {
+			columnList.add(build(ys, cells, 0, ys.size()));
+		}
+		return new PersistentCellStore<>(build(xs, columnList, 0, xs.size()), null);
+	}
+
+	/**
+	 * @param x and y coordinate and the new collection of the cell, the cell being removed if it is null or empty
+	 * @return a new store with the cell replaced by an unmodifiable copy of the collection, sharing every other column and cell with this store
+	 * @throws UnsupportedOperationException if this store is a view
+	 */
+	PersistentCellStore<T> with(BigDecimal x, BigDecimal y, Collection<T> cell) {
+		if (bounds != null) {
+			throw new UnsupportedOperationException("a view cannot be written to");
+		}
+		Node<Collection<T>> column = get(columns, x);
+		column = cell == null || cell.isEmpty() ? delete(column, y) : insert(column, y, freeze(cell));
+		return new PersistentCellStore<>(column == null ? delete(columns, x) : insert(columns, x, column), null);
+	}
+
+	public Collection<T> get(BigDecimal x, BigDecimal y) {
+		return CellStore.contains(bounds, x, y) ? get(get(columns, x), y) : null;
+	}
+
+	public Collection<T> put(BigDecimal x, BigDecimal y, Collection<T> collection) {
+		throw new UnsupportedOperationException("a version is read-only");
+	}
+
+	public Collection<T> computeIfAbsent(BigDecimal x, BigDecimal y, Supplier<Collection<T>> factory) {
+		throw new UnsupportedOperationException("a version is read-only");
+	}
+
+	public Set<BigDecimal> xSet() {
+		Set<BigDecimal> set = new LinkedHashSet<>();
+		for (BigDecimal x = nextX(left(), true); x != null; x = nextX(x, false)) {
+			set.add(x);
+		}
+		return Collections.unmodifiableSet(set);
+	}
+
+	public Set<BigDecimal> ySet(BigDecimal x) {
+		Set<BigDecimal> set = new LinkedHashSet<>();
+		forEachCell(x, (cellX, y, values) -> set.add(y));
+		return Collections.unmodifiableSet(set);
+	}
+
+	public BigDecimal nextX(BigDecimal x, boolean inclusive) {
+		if (bounds != null && x.compareTo(bounds.left()) < 0) {
+			x = bounds.left();
+			inclusive = true;
+		}
+		for (Node<Node<Collection<T>>> node = ceiling(columns, x, inclusive); node != null; node = ceiling(columns, node.key, false)) {
+			if (bounds != null && node.key.compareTo(bounds.right()) >= 0) {
+				return null;
+			}
+			if (hasCells(node.value)) {
+				return node.key;
+			}
+		}
+		return null;
+	}
+
+	public BigDecimal previousX(BigDecimal x, boolean inclusive) {
+		if (bounds != null && x.compareTo(bounds.right()) >= 0) {
+			x = bounds.right();
+			inclusive = false;
+		}
+		for (Node<Node<Collection<T>>> node = floor(columns, x, inclusive); node != null; node = floor(columns, node.key, false)) {
+			if (bounds != null && node.key.compareTo(bounds.left()) < 0) {
+				return null;
+			}
+			if (hasCells(node.value)) {
+				return node.key;
+			}
+		}
+		return null;
+	}
+
+	public BigDecimal nextY(BigDecimal x, BigDecimal y, boolean inclusive) {
+		Node<Collection<T>> column = column(x);
+		if (bounds != null && y.compareTo(bounds.bottom()) < 0) {
+			y = bounds.bottom();
+			inclusive = true;
+		}
+		Node<Collection<T>> node = ceiling(column, y, inclusive);
+		return node == null || (bounds != null && node.key.compareTo(bounds.top()) >= 0) ? null : node.key;
+	}
+
+	public BigDecimal previousY(BigDecimal x, BigDecimal y, boolean inclusive) {
+		Node<Collection<T>> column = column(x);
+		if (bounds != null && y.compareTo(bounds.top()) >= 0) {
+			y = bounds.top();
+			inclusive = false;
+		}
+		Node<Collection<T>> node = floor(column, y, inclusive);
+		return node == null || (bounds != null && node.key.compareTo(bounds.bottom()) < 0) ? null : node.key;
+	}
+
+	public void forEach(CellVisitor<T> visitor) {
+		forEach(columns, bounds == null ? null : bounds.left(), bounds == null ? null : bounds.right(), (x, column) -> forEach(column, bounds == null ? null : bounds.bottom(), bounds == null ? null : bounds.top(), (y, cell) -> visitor.visit(x, y, cell)));
+	}
+
+	/**
+	 * the store being immutable, a slice shares the trees with it like a view
+	 */
+	public CellStore<T> slice(Rectangle rectangle) {
+		return view(rectangle);
+	}
+
+	public CellStore<T> view(Rectangle rectangle) {
+		return new PersistentCellStore<>(columns, CellStore.clamp(bounds, rectangle));
+	}
+
+	/**
+	 * helper
+	 * @return the column at x if it lies within the bounds, or null
+	 */
+	private Node<Collection<T>> column(BigDecimal x) {
+		if (bounds != null && (x.compareTo(bounds.left()) < 0 || x.compareTo(bounds.right()) >= 0)) {
+			return null;
+		}
+		return get(columns, x);
+	}
+
+	/**
+	 * helper
+	 * @return if the column has a cell within the bottom and top of the bounds
+	 */
+	private boolean hasCells(Node<Collection<T>> column) {
+		if (bounds == null) {
+			return true;
+		}
+		Node<Collection<T>> first = ceiling(column, bounds.bottom(), true);
+		return first != null && first.key.compareTo(bounds.top()) < 0;
+	}
+
+	/**
+	 * helper
+	 * visits the cells of the column at x within the bounds
+	 */
+	private void forEachCell(BigDecimal x, CellVisitor<T> visitor) {
+		forEach(column(x), bounds == null ? null : bounds.bottom(), bounds == null ? null : bounds.top(), (y, cell) -> visitor.visit(x, y, cell));
+	}
+
+	/**
+	 * helper
+	 * @return the left border of the bounds, or the first column if there are none
+	 */
+	private BigDecimal left() {
+		if (bounds != null) {
+			return bounds.left();
+		}
+		Node<Node<Collection<T>>> node = columns;
+		while (node != null && node.left != null) {
+			node = node.left;
+		}
+		return node == null ? BigDecimal.ZERO : node.key;
+	}
+
+	/**
+	 * helper
+	 * @return an unmodifiable copy of the collection
+	 */
+	private static <T> Collection<T> freeze(Collection<T> values) {
+		return Collections.unmodifiableSet(new HashSet<>(values));
+	}
+
+	/**
+	 * a key and value of a tree
+	 */
+	@FunctionalInterface
+	private interface Entry<V> {
+
+		void accept(BigDecimal key, V value);
+	}
+
+	/**
+	 * helper
+	 * hands the entries with keys in [from, to) to the action in order, a null end being unbounded
+	 */
+	private static <V> void forEach(Node<V> node, BigDecimal from, BigDecimal to, Entry<V> action) {
+		if (node == null) {
+			return;
+		}
+		boolean afterFrom = from == null || node.key.compareTo(from) >= 0, beforeTo = to == null || node.key.compareTo(to) < 0;
+		if (afterFrom) {
+			forEach(node.left, from, to, action);
+		}
+		if (afterFrom && beforeTo) {
+			action.accept(node.key, node.value);
+		}
+		if (beforeTo) {
+			forEach(node.right, from, to, action);
+		}
+	}
+
+	private static <V> V get(Node<V> node, BigDecimal key) {
+		while (node != null) {
+			int compare = key.compareTo(node.key);
+			if (compare == 0) {
+				return node.value;
+			}
+			node = compare < 0 ? node.left : node.right;
+		}
+		return null;
+	}
+
+	/**
+	 * helper
+	 * @return the node with the smallest key after the given key, or at it if inclusive, or null if there is none
+	 */
+	private static <V> Node<V> ceiling(Node<V> node, BigDecimal key, boolean inclusive) {
+		Node<V> found = null;
+		while (node != null) {
+			int compare = node.key.compareTo(key);
+			if (compare > 0 || (inclusive && compare == 0)) {
+				found = node;
+				node = node.left;
+			} else {
+				node = node.right;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * helper
+	 * @return the node with the largest key before the given key, or at it if inclusive, or null if there is none
+	 */
+	private static <V> Node<V> floor(Node<V> node, BigDecimal key, boolean inclusive) {
+		Node<V> found = null;
+		while (node != null) {
+			int compare = node.key.compareTo(key);
+			if (compare < 0 || (inclusive && compare == 0)) {
+				found = node;
+				node = node.right;
+			} else {
+				node = node.left;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * helper
+	 * builds the subtree of the sorted keys [from, to) around its middle, every node taking at least the priority of its children
+	 */
+	private static <V> Node<V> build(List<BigDecimal> keys, List<V> values, int from, int to) {
+		if (from >= to) {
+			return null;
+		}
+		int mid = (from + to) >>> 1;
+		Node<V> left = build(keys, values, from, mid);
+		Node<V> right = build(keys, values, mid + 1, to);
+		int priority = ThreadLocalRandom.current().nextInt();
+		if (left != null) {
+			priority = Math.max(priority, left.priority);
+		}
+		if (right != null) {
+			priority = Math.max(priority, right.priority);
+		}
+		return new Node<>(keys.get(mid), values.get(mid), priority, left, right);
+	}
+
+	/**
+	 * helper
+	 * @return the tree with the value at the key, replacing the node of the key if there is one
+	 */
+	private static <V> Node<V> insert(Node<V> node, BigDecimal key, V value) {
+		if (node == null) {
+			return new Node<>(key, value, ThreadLocalRandom.current().nextInt(), null, null);
+		}
+		int compare = key.compareTo(node.key);
+		if (compare == 0) {
+			return new Node<>(node.key, value, node.priority, node.left, node.right);
+		}
+		if (compare < 0) {
+			Node<V> left = insert(node.left, key, value);
+			return left.priority > node.priority ? new Node<>(left.key, left.value, left.priority, left.left, new Node<>(node.key, node.value, node.priority, left.right, node.right))
+					: new Node<>(node.key, node.value, node.priority, left, node.right);
+		}
+		Node<V> right = insert(node.right, key, value);
+		return right.priority > node.priority ? new Node<>(right.key, right.value, right.priority, new Node<>(node.key, node.value, node.priority, node.left, right.left), right.right)
+				: new Node<>(node.key, node.value, node.priority, node.left, right);
+	}
+
+	private static <V> Node<V> delete(Node<V> node, BigDecimal key) {
+		if (node == null) {
+			return null;
+		}
+		int compare = key.compareTo(node.key);
+		if (compare == 0) {
+			return merge(node.left, node.right);
+		}
+		if (compare < 0) {
+			Node<V> left = delete(node.left, key);
+			return left == node.left ? node : new Node<>(node.key, node.value, node.priority, left, node.right);
+		}
+		Node<V> right = delete(node.right, key);
+		return right == node.right ? node : new Node<>(node.key, node.value, node.priority, node.left, right);
+	}
+
+	private static <V> Node<V> merge(Node<V> left, Node<V> right) {
+		if (left == null) {
+			return right;
+		}
+		if (right == null) {
+			return left;
+		}
+		if (left.priority > right.priority) {
+			return new Node<>(left.key, left.value, left.priority, left.left, merge(left.right, right));
+		}
+		return new Node<>(right.key, right.value, right.priority, merge(left, right.left), right.right);
+	}
+}
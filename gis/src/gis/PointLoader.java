@@ -0,0 +1,603 @@
+package gis;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Streams interest points with string markers from a CSV file or a file of GeoJSON features, one per line, into an InterestPoints.Builder
+ * the file is split into chunks that worker threads read through their own buffer, parsing numbers straight from the bytes and interning markers, and the points reach the builder in batches through a bounded queue
+ * a line belongs to the chunk holding its first byte, and the workers wait when the queue is full, so memory stays the same whatever the size of the file
+ */
+public final class PointLoader {
+
+	private static final int BATCH_SIZE = 4096;
+	private static final int CACHED_MARKERS = 1024;
+	private static final List<InterestPoint> DONE = Collections.emptyList();
+	private static final byte[] COORDINATES_KEY = "\"coordinates\"".getBytes(StandardCharsets.UTF_8);
+
+	private final int threads;
+	private final int chunkSize;
+	private final int bufferSize;
+	private final byte delimiter;
+	private final boolean header;
+	private final int xColumn, yColumn, markerColumn;
+	private final byte[] markerKey;
+
+	/** the markers read so far, so that every point with the same marker shares one String */
+	private final ConcurrentHashMap<String, String> markers = new ConcurrentHashMap<>();
+
+	/**
+	 * @param builder for a PointLoader
+	 */
+	private PointLoader(Builder builder) {
+		threads = builder.threads;
+		chunkSize = builder.chunkSize;
+		bufferSize = builder.bufferSize;
+		delimiter = builder.delimiter;
+		header = builder.header;
+		xColumn = builder.xColumn;
+		yColumn = builder.yColumn;
+		markerColumn = builder.markerColumn;
+		markerKey = ('"' + builder.markerProperty + '"').getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * reads the x, y and marker columns of every line, a field being trimmed and unquoted if it starts with a double quote, and blank lines being skipped
+	 * @param the CSV file and the builder receiving the points
+	 * @return the number of points read
+	 * @throws IOException if the file cannot be read or a line is malformed, some of the points having been added
+	 */
+	public final long loadCsv(Path path, InterestPoints.Builder builder) throws IOException {
+		return load(path, builder, this::parseCsv);
+	}
+
+	/**
+	 * reads the first two coordinates and the marker property of every feature, lines being GeoJSON text sequences or newline delimited features, and blank lines being skipped
+	 * @param the file of features and the builder receiving the points
+	 * @return the number of points read
+	 * @throws IOException if the file cannot be read or a line is malformed, some of the points having been added
+	 */
+	public final long loadGeoJson(Path path, InterestPoints.Builder builder) throws IOException {
+		return load(path, builder, this::parseGeoJson);
+	}
+
+	/**
+	 * parses the line in bytes[from, to) starting at the given byte of the file, returning null for a line without a point
+	 */
+	@FunctionalInterface
+	private interface LineParser {
+		InterestPoint<String> parse(byte[] bytes, int from, int to, long offset, Worker worker);
+	}
+
+	/**
+	 * helper
+	 * runs the workers over the chunks of the file and adds their batches to the builder on the calling thread, which is the only one touching the builder
+	 * a builder with CONCURRENT storage is safe for several writers, so the workers add their batches to it themselves and the queue only carries their completion
+	 */
+	private long load(Path path, InterestPoints.Builder builder, LineParser parser) throws IOException {
+		Objects.requireNonNull(builder);
+		try (FileChannel channel = FileChannel.open(Objects.requireNonNull(path), StandardOpenOption.READ)) {
+			long size = channel.size();
+			int workers = (int) Math.max(1, Math.min(threads, (size + chunkSize - 1) / chunkSize));
+			BlockingQueue<List<InterestPoint>> queue = new ArrayBlockingQueue<>(workers * 2);
+			AtomicLong nextChunk = new AtomicLong();
+			AtomicLong count = new AtomicLong();
+			AtomicReference<Throwable> failure = new AtomicReference<>();
+			ExecutorService executor = Executors.newFixedThreadPool(workers);
+			try {
+				for (int i = 0; i < workers; i++) {
+					executor.execute(() -> {
+						try {
+							Worker worker = new Worker(channel, parser, queue, builder.isConcurrent() ? builder : null, count);
+							for (long chunk = nextChunk.getAndIncrement(); chunk * chunkSize < size && failure.get() == null; chunk = nextChunk.getAndIncrement()) {
+								worker.read(chunk * chunkSize, Math.min(size, (chunk + 1) * chunkSize));
+							}
+							worker.flush();
+						} catch (Throwable e) {
+							failure.compareAndSet(null, e);
+						} finally {
+							try {
+								queue.put(DONE);
+							} catch (InterruptedException e) {
+								Thread.currentThread().interrupt();
+							}
+						}
+					});
+				}
+				for (int running = workers; running > 0; ) {
+					List<InterestPoint> batch = queue.take();
+					if (batch == DONE) {
+						running--;
+					} else if (failure.get() == null) {
+						builder.addAll(batch);
+						count.addAndGet(batch.size());
+					}
+				}
+				Throwable e = failure.get();
+				if (e instanceof IOException) {
+					throw (IOException) e;
+				} else if (e instanceof RuntimeException) {
+					throw (RuntimeException) e;
+				} else if (e != null) {
+					throw new IOException(e);
+				}
+				return count.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("interrupted while loading " + path);
+			} finally {
+				executor.shutdownNow();
+			}
+		}
+	}
+
+	/**
+	 * the buffer, batch and marker cache of one worker thread
+	 */
+	private final class Worker {
+
+		private final FileChannel channel;
+		private final LineParser parser;
+		private final BlockingQueue<List<InterestPoint>> queue;
+		private final byte[] bytes = new byte[bufferSize];
+		private final byte[][] cachedBytes = new byte[CACHED_MARKERS][];
+		private final String[] cachedMarkers = new String[CACHED_MARKERS];
+		private final InterestPoints.Builder builder;
+		private final AtomicLong count;
+		private List<InterestPoint> batch = new ArrayList<>(BATCH_SIZE);
+
+		/**
+		 * @param the file, the parser of its lines, the queue to the calling thread, the builder if the worker is to add its batches itself, or null, and the count of added points
+		 */
+		Worker(FileChannel channel, LineParser parser, BlockingQueue<List<InterestPoint>> queue, InterestPoints.Builder builder, AtomicLong count) {
+			this.channel = channel;
+			this.parser = parser;
+			this.queue = queue;
+			this.builder = builder;
+			this.count = count;
+		}
+
+		/**
+		 * parses every line starting in [start, end), reading on past end to finish the last one
+		 * a chunk after the first starts reading one byte early and skips through the first newline, which ends the line owned by the chunk before
+		 */
+		void read(long start, long end) throws IOException, InterruptedException {
+			long base = start > 0 ? start - 1 : 0;
+			boolean skipping = start > 0;
+			int length = 0, scanned = 0, lineStart = 0;
+			while (true) {
+				int read = channel.read(ByteBuffer.wrap(bytes, length, bytes.length - length), base + length);
+				if (read > 0) {
+					length += read;
+				}
+				for (int i = scanned; i < length; i++) {
+					if (bytes[i] == '\n') {
+						if (skipping) {
+							skipping = false;
+						} else if (base + lineStart >= end) {
+							return;
+						} else {
+							line(base + lineStart, lineStart, i);
+						}
+						lineStart = i + 1;
+					}
+				}
+				if (read < 0) {
+					if (!skipping && lineStart < length && base + lineStart < end) {
+						line(base + lineStart, lineStart, length);
+					}
+					return;
+				}
+				if (lineStart == 0 && length == bytes.length) {
+					throw new IOException("line at byte " + base + " is longer than the buffer of " + bytes.length + " bytes");
+				}
+				System.arraycopy(bytes, lineStart, bytes, 0, length - lineStart);
+				base += lineStart;
+				length -= lineStart;
+				scanned = length;
+				lineStart = 0;
+				if (!skipping && base >= end) {
+					return;
+				}
+			}
+		}
+
+		/**
+		 * adds the batch to the builder or hands it to the queue
+		 */
+		void flush() throws InterruptedException {
+			if (batch.isEmpty()) {
+				return;
+			}
+			if (builder != null) {
+				builder.addAll(batch);
+				count.addAndGet(batch.size());
+				batch.clear();
+			} else {
+				queue.put(batch);
+				batch = new ArrayList<>(BATCH_SIZE);
+			}
+		}
+
+		/**
+		 * helper
+		 * parses the line in bytes[from, to), dropping a carriage return, and queues the batch once it is full
+		 */
+		private void line(long offset, int from, int to) throws IOException, InterruptedException {
+			if (to > from && bytes[to - 1] == '\r') {
+				to--;
+			}
+			InterestPoint<String> point;
+			try {
+				point = parser.parse(bytes, from, to, offset, this);
+			} catch (RuntimeException e) {
+				throw new IOException("malformed line at byte " + offset + ": " + new String(bytes, from, Math.min(to - from, 200), StandardCharsets.UTF_8), e);
+			}
+			if (point != null) {
+				batch.add(point);
+				if (batch.size() == BATCH_SIZE) {
+					flush();
+				}
+			}
+		}
+
+		/**
+		 * helper
+		 * @return the marker spelled by bytes[from, to), the same String for the same bytes across all workers
+		 */
+		String marker(int from, int to) {
+			int hash = 1;
+			for (int i = from; i < to; i++) {
+				hash = 31 * hash + bytes[i];
+			}
+			int slot = (hash ^ (hash >>> 16)) & (CACHED_MARKERS - 1);
+			byte[] cached = cachedBytes[slot];
+			if (cached != null && Arrays.equals(cached, 0, cached.length, bytes, from, to)) {
+				return cachedMarkers[slot];
+			}
+			String marker = new String(bytes, from, to - from, StandardCharsets.UTF_8);
+			marker = markers.computeIfAbsent(marker, k -> k);
+			cachedBytes[slot] = Arrays.copyOfRange(bytes, from, to);
+			cachedMarkers[slot] = marker;
+			return marker;
+		}
+	}
+
+	/**
+	 * helper
+	 * @return the point of a CSV line, or null for the header line and blank lines
+	 */
+	private InterestPoint<String> parseCsv(byte[] bytes, int from, int to, long offset, Worker worker) {
+		if ((offset == 0 && header) || isBlank(bytes, from, to)) {
+			return null;
+		}
+		int[] fields = new int[Math.max(xColumn, Math.max(yColumn, markerColumn)) * 2 + 2];
+		int field = 0, start = from;
+		for (int i = from; i <= to && field * 2 < fields.length; i++) {
+			if (i == to || bytes[i] == delimiter) {
+				fields[field * 2] = start;
+				fields[field * 2 + 1] = i;
+				field++;
+				start = i + 1;
+			}
+		}
+		if (field * 2 < fields.length) {
+			throw new IllegalArgumentException("expected at least " + fields.length / 2 + " fields");
+		}
+		BigDecimal x = parseDecimal(bytes, fields[xColumn * 2], fields[xColumn * 2 + 1]);
+		BigDecimal y = parseDecimal(bytes, fields[yColumn * 2], fields[yColumn * 2 + 1]);
+		int markerFrom = skipSpace(bytes, fields[markerColumn * 2], fields[markerColumn * 2 + 1]);
+		int markerTo = trimSpace(bytes, markerFrom, fields[markerColumn * 2 + 1]);
+		if (markerTo - markerFrom >= 2 && bytes[markerFrom] == '"' && bytes[markerTo - 1] == '"') {
+			markerFrom++;
+			markerTo--;
+		}
+		return new InterestPoint<>(new Coordinate(x, y), worker.marker(markerFrom, markerTo));
+	}
+
+	/**
+	 * helper
+	 * @return the point of a feature, or null for a blank line
+	 */
+	private InterestPoint<String> parseGeoJson(byte[] bytes, int from, int to, long offset, Worker worker) {
+		if (isBlank(bytes, from, to)) {
+			return null;
+		}
+		int coordinates = indexOf(bytes, from, to, COORDINATES_KEY);
+		if (coordinates < 0) {
+			throw new IllegalArgumentException("no coordinates");
+		}
+		int xFrom = expect(bytes, expect(bytes, coordinates + COORDINATES_KEY.length, to, ':'), to, '[');
+		int xTo = numberEnd(bytes, xFrom, to);
+		int yFrom = expect(bytes, xTo, to, ',');
+		int yTo = numberEnd(bytes, yFrom, to);
+		BigDecimal x = parseDecimal(bytes, xFrom, xTo);
+		BigDecimal y = parseDecimal(bytes, yFrom, yTo);
+		int key = indexOf(bytes, from, to, markerKey);
+		if (key < 0) {
+			throw new IllegalArgumentException("no marker property");
+		}
+		int value = skipSpace(bytes, expect(bytes, key + markerKey.length, to, ':'), to);
+		if (value < to && bytes[value] == '"') {
+			int end = value + 1;
+			boolean escaped = false;
+			while (end < to && bytes[end] != '"') {
+				escaped |= bytes[end] == '\\';
+				end += bytes[end] == '\\' ? 2 : 1;
+			}
+			if (end >= to) {
+				throw new IllegalArgumentException("unterminated marker");
+			}
+			String marker = escaped ? markers.computeIfAbsent(unescape(bytes, value + 1, end), k -> k) : worker.marker(value + 1, end);
+			return new InterestPoint<>(new Coordinate(x, y), marker);
+		}
+		int end = value;
+		while (end < to && bytes[end] != ',' && bytes[end] != '}' && bytes[end] != ']') {
+			end++;
+		}
+		return new InterestPoint<>(new Coordinate(x, y), worker.marker(value, trimSpace(bytes, value, end)));
+	}
+
+	/**
+	 * parses a decimal number the way new BigDecimal(String) does, keeping its scale, without building a String unless it has more than 18 digits or a large exponent
+	 * @param the bytes and the range [from, to) of the number, which may be surrounded by spaces
+	 * @return the exact value of the number
+	 * @throws NumberFormatException if the range is not a number
+	 */
+	static BigDecimal parseDecimal(byte[] bytes, int from, int to) {
+		from = skipSpace(bytes, from, to);
+		to = trimSpace(bytes, from, to);
+		int i = from;
+		boolean negative = false;
+		if (i < to && (bytes[i] == '-' || bytes[i] == '+')) {
+			negative = bytes[i] == '-';
+			i++;
+		}
+		long unscaled = 0;
+		int scale = 0, digits = 0;
+		boolean point = false, any = false;
+		for (; i < to; i++) {
+			byte c = bytes[i];
+			if (c >= '0' && c <= '9') {
+				if (digits == 18) {
+					return slowDecimal(bytes, from, to);
+				}
+				unscaled = unscaled * 10 + (c - '0');
+				digits += unscaled == 0 ? 0 : 1;
+				scale += point ? 1 : 0;
+				any = true;
+			} else if (c == '.' && !point) {
+				point = true;
+			} else if ((c == 'e' || c == 'E') && any) {
+				break;
+			} else {
+				throw new NumberFormatException("not a number: " + new String(bytes, from, to - from, StandardCharsets.UTF_8));
+			}
+		}
+		if (!any) {
+			throw new NumberFormatException("not a number: " + new String(bytes, from, to - from, StandardCharsets.UTF_8));
+		}
+		if (i < to) {
+			if (to - i > 5) {
+				return slowDecimal(bytes, from, to);
+			}
+			scale -= Integer.parseInt(new String(bytes, i + 1, to - i - 1, StandardCharsets.US_ASCII));
+		}
+		return BigDecimal.valueOf(negative ? -unscaled : unscaled, scale);
+	}
+
+	private static BigDecimal slowDecimal(byte[] bytes, int from, int to) {
+		return new BigDecimal(new String(bytes, from, to - from, StandardCharsets.US_ASCII));
+	}
+
+	private static boolean isBlank(byte[] bytes, int from, int to) {
+		return skipSpace(bytes, from, to) == to;
+	}
+
+	/**
+	 * helper
+	 * @return the first position in [from, to) that is not a space, tab or record separator, or to
+	 */
+	private static int skipSpace(byte[] bytes, int from, int to) {
+		while (from < to && (bytes[from] == ' ' || bytes[from] == '\t' || bytes[from] == 0x1E)) {
+			from++;
+		}
+		return from;
+	}
+
+	/**
+	 * helper
+	 * @return the end of [from, to) without its trailing spaces and tabs
+	 */
+	private static int trimSpace(byte[] bytes, int from, int to) {
+		while (to > from && (bytes[to - 1] == ' ' || bytes[to - 1] == '\t')) {
+			to--;
+		}
+		return to;
+	}
+
+	/**
+	 * helper
+	 * @return the position after the expected byte, which may follow spaces
+	 * @throws IllegalArgumentException if another byte comes first
+	 */
+	private static int expect(byte[] bytes, int from, int to, char expected) {
+		from = skipSpace(bytes, from, to);
+		if (from == to || bytes[from] != expected) {
+			throw new IllegalArgumentException("expected " + expected);
+		}
+		return from + 1;
+	}
+
+	/**
+	 * helper
+	 * @return the end of the number starting at from, before the next comma or closing bracket
+	 */
+	private static int numberEnd(byte[] bytes, int from, int to) {
+		while (from < to && bytes[from] != ',' && bytes[from] != ']') {
+			from++;
+		}
+		return from;
+	}
+
+	/**
+	 * helper
+	 * @return the first position of the key in [from, to), or -1
+	 */
+	private static int indexOf(byte[] bytes, int from, int to, byte[] key) {
+		for (int i = from; i <= to - key.length; i++) {
+			if (Arrays.equals(bytes, i, i + key.length, key, 0, key.length)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * helper
+	 * @return the JSON string in bytes[from, to) with its escapes replaced
+	 */
+	private static String unescape(byte[] bytes, int from, int to) {
+		String escaped = new String(bytes, from, to - from, StandardCharsets.UTF_8);
+		StringBuilder marker = new StringBuilder(escaped.length());
+		for (int i = 0; i < escaped.length(); i++) {
+			char c = escaped.charAt(i);
+			if (c != '\\' || i + 1 == escaped.length()) {
+				marker.append(c);
+				continue;
+			}
+			char next = escaped.charAt(++i);
+			switch (next) {
+			case 'n':
+				marker.append('\n');
+				break;
+			case 't':
+				marker.append('\t');
+				break;
+			case 'r':
+				marker.append('\r');
+				break;
+			case 'b':
+				marker.append('\b');
+				break;
+			case 'f':
+				marker.append('\f');
+				break;
+			case 'u':
+				marker.append((char) Integer.parseInt(escaped.substring(i + 1, i + 5), 16));
+				i += 4;
+				break;
+			default:
+				marker.append(next);
+			}
+		}
+		return marker.toString();
+	}
+
+	/**
+	 * Builder class for the format of the files and the threads reading them
+	 */
+	public static class Builder {
+		private int threads = Runtime.getRuntime().availableProcessors();
+		private int chunkSize = 8 << 20;
+		private int bufferSize = 1 << 20;
+		private byte delimiter = ',';
+		private boolean header;
+		private int xColumn = 0, yColumn = 1, markerColumn = 2;
+		private String markerProperty = "marker";
+
+		/**
+		 * @param the number of threads parsing chunks, at least 1
+		 * @return the current builder
+		 */
+		public final Builder setThreads(int threads) {
+			if (threads < 1) {
+				throw new IllegalArgumentException("threads must be at least 1");
+			}
+			this.threads = threads;
+			return this;
+		}
+
+		/**
+		 * @param the number of bytes in a chunk of the file, at least 1, and the size of the buffer of a thread, which must hold the longest line
+		 * @return the current builder
+		 */
+		public final Builder setChunkSize(int chunkSize, int bufferSize) {
+			if (chunkSize < 1 || bufferSize < 2) {
+				throw new IllegalArgumentException("chunk and buffer sizes must be positive");
+			}
+			this.chunkSize = chunkSize;
+			this.bufferSize = bufferSize;
+			return this;
+		}
+
+		/**
+		 * @param the ASCII character between CSV fields
+		 * @return the current builder
+		 */
+		public final Builder setDelimiter(char delimiter) {
+			if (delimiter > 127 || delimiter == '\n' || delimiter == '"') {
+				throw new IllegalArgumentException("delimiter must be an ASCII character other than a newline or quote");
+			}
+			this.delimiter = (byte) delimiter;
+			return this;
+		}
+
+		/**
+		 * @param if the first line of a CSV file is a header to be skipped
+		 * @return the current builder
+		 */
+		public final Builder setHeader(boolean header) {
+			this.header = header;
+			return this;
+		}
+
+		/**
+		 * @param the zero-based CSV columns of x, y and the marker
+		 * @return the current builder
+		 */
+		public final Builder setColumns(int xColumn, int yColumn, int markerColumn) {
+			if (xColumn < 0 || yColumn < 0 || markerColumn < 0) {
+				throw new IllegalArgumentException("columns must not be negative");
+			}
+			this.xColumn = xColumn;
+			this.yColumn = yColumn;
+			this.markerColumn = markerColumn;
+			return this;
+		}
+
+		/**
+		 * @param the name of the GeoJSON property holding the marker, whose first occurrence on a line is read
+		 * @return the current builder
+		 */
+		public final Builder setMarkerProperty(String markerProperty) {
+			this.markerProperty = Objects.requireNonNull(markerProperty);
+			return this;
+		}
+
+		/**
+		 * @return a new PointLoader
+		 */
+		public final PointLoader build() {
+			return new PointLoader(this);
+		}
+	}
+}
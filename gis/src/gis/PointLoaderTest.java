@@ -0,0 +1,100 @@
+package gis;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import org.junit.Test;
+
+public class PointLoaderTest {
+
+	private static final String CSV = "x,y,marker\n"
+			+ "1.50,2,a\n"
+			+ "-3,4.25,\"b\"\r\n"
+			+ "\n"
+			+ " 1e2 , -0.0 ,c\n"
+			+ "1.50,2,b";
+
+	private static final String GEOJSON = "{\"type\":\"Feature\",\"geometry\":{\"type\":\"Point\",\"coordinates\":[1.50, 2]},\"properties\":{\"marker\":\"a\"}}\n"
+			+ "\u001e{\"type\":\"Feature\",\"geometry\":{\"type\":\"Point\",\"coordinates\":[-3,4.25,7]},\"properties\":{\"marker\":\"b\"}}\n"
+			+ "\n"
+			+ "{\"type\":\"Feature\",\"geometry\":{\"type\":\"Point\",\"coordinates\":[1e2,-0.0]},\"properties\":{\"marker\":\"c\"}}\n"
+			+ "{\"properties\":{\"marker\":\"\\u0062\"},\"geometry\":{\"coordinates\":[1.50,2],\"type\":\"Point\"}}\n";
+
+	private static Path file(String content) throws IOException {
+		Path file = Files.createTempFile("points", ".txt");
+		Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+	private static void assertPoints(InterestPoints.Builder builder) {
+		InterestPoints<String> points = builder.build();
+		Set<InterestPoint<String>> cell = new HashSet<>();
+		Coordinate c1 = new Coordinate(new BigDecimal("1.50"), new BigDecimal("2"));
+		cell.add(new InterestPoint<>(c1, "a"));
+		cell.add(new InterestPoint<>(c1, "b"));
+		assertEquals(cell, points.get(c1));
+		assertEquals(1, points.get(new Coordinate(new BigDecimal("-3"), new BigDecimal("4.25"))).size());
+		Collection<InterestPoint> c2 = points.get(new Coordinate(new BigDecimal("100"), new BigDecimal("0")));
+		assertEquals(1, c2.size());
+		assertEquals("c", c2.iterator().next().marker());
+	}
+
+	//every chunk and buffer size gives the same points, whichever line the chunks split
+	@Test
+	public void testLoadCsv() throws IOException {
+		Path file = file(CSV);
+		try {
+			for (int chunk = 1; chunk < CSV.length() + 2; chunk += 3) {
+				for (BiDimensionalMap.Storage storage : BiDimensionalMap.Storage.values()) {
+					InterestPoints.Builder builder = new InterestPoints.Builder(storage);
+					PointLoader loader = new PointLoader.Builder().setHeader(true).setThreads(3).setChunkSize(chunk, 32).build();
+					assertEquals(4, loader.loadCsv(file, builder));
+					assertPoints(builder);
+				}
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void testLoadGeoJson() throws IOException {
+		Path file = file(GEOJSON);
+		try {
+			for (int chunk = 1; chunk < GEOJSON.length() + 2; chunk += 17) {
+				InterestPoints.Builder builder = new InterestPoints.Builder();
+				assertEquals(4, new PointLoader.Builder().setThreads(2).setChunkSize(chunk, 256).build().loadGeoJson(file, builder));
+				assertPoints(builder);
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	//numbers keep the scale new BigDecimal(String) gives them
+	@Test
+	public void testParseDecimal() {
+		for (String number : new String[] { "0", "-0.0", "1.50", "+7", ".5", "3.", "1e3", "-2.5E-4", "123456789012345678901234.5", "0.000000000000000000001" }) {
+			byte[] bytes = (" " + number + " ").getBytes(StandardCharsets.US_ASCII);
+			BigDecimal parsed = PointLoader.parseDecimal(bytes, 0, bytes.length);
+			assertEquals(number, new BigDecimal(number), parsed);
+			assertEquals(number, new BigDecimal(number).scale(), parsed.scale());
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testMalformedLine() throws IOException {
+		Path file = file("1,2,a\n1,x,b\n");
+		try {
+			new PointLoader.Builder().build().loadCsv(file, new InterestPoints.Builder());
+		} finally {
+			Files.delete(file);
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package gis;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+
+/**
+ * A frozen summed-area table for each of a few markers over the grid of distinct x and y coordinates of a map of interest points
+ * the number of points with one of the markers in any rectangle is then four table lookups after a binary search for each border
+ * the tables hold a number for every pair of distinct x and y coordinates, so they suit maps whose points share few coordinates
+ */
+final class PrefixSumIndex {
+
+	private final BigDecimal[] xs;
+	private final BigDecimal[] ys;
+	private final Map<Object, long[]> tables = new HashMap<>();
+
+	/**
+	 * counts the points of every marker at each pair of coordinates, then sums the counts over each table
+	 * @param the map of interest points and the markers to be indexed
+	 * @throws IllegalStateException if the tables would be too large for an array
+	 */
+	PrefixSumIndex(BiDimensionalMap<InterestPoint> points, Collection<?> markers) {
+		TreeSet<BigDecimal> xSet = new TreeSet<>();
+		TreeSet<BigDecimal> ySet = new TreeSet<>();
+		points.forEachCell((x, y, values) -> {
+			xSet.add(x);
+			ySet.add(y);
+		});
+		xs = xSet.toArray(new BigDecimal[0]);
+		ys = ySet.toArray(new BigDecimal[0]);
+		long cells = (long) (xs.length + 1) * (ys.length + 1);
+		if (cells > Integer.MAX_VALUE - 8) {
+			throw new IllegalStateException("too many distinct coordinates for a prefix-sum index");
+		}
+		for (Object marker : markers) {
+			tables.put(Objects.requireNonNull(marker), new long[(int) cells]);
+		}
+		int width = ys.length + 1;
+		points.forEachCell((x, y, values) -> {
+			int position = (Arrays.binarySearch(xs, x) + 1) * width + Arrays.binarySearch(ys, y) + 1;
+			for (InterestPoint value : values) {
+				long[] table = tables.get(value.marker());
+				if (table != null) {
+					table[position]++;
+				}
+			}
+		});
+		for (long[] table : tables.values()) {
+			for (int i = 1; i <= xs.length; i++) {
+				for (int j = 1; j < width; j++) {
+					table[i * width + j] += table[(i - 1) * width + j] + table[i * width + j - 1] - table[(i - 1) * width + j - 1];
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param the marker to be checked for
+	 * @return if the marker has a table
+	 */
+	boolean contains(Object marker) {
+		return tables.containsKey(marker);
+	}
+
+	/**
+	 * @param the valid rectangle and the indexed marker
+	 * @return the number of points with the marker in the rectangle, with the same borders as BiDimensionalMap.slice
+	 */
+	long count(Rectangle rectangle, Object marker) {
+		long[] table = tables.get(marker);
+		int width = ys.length + 1;
+		int left = lowerBound(xs, rectangle.left()), right = lowerBound(xs, rectangle.right());
+		int bottom = lowerBound(ys, rectangle.bottom()), top = lowerBound(ys, rectangle.top());
+		return table[right * width + top] - table[left * width + top] - table[right * width + bottom] + table[left * width + bottom];
+	}
+
+	/**
+	 * helper
+	 * @return the number of values before the given value
+	 */
+	private static int lowerBound(BigDecimal[] values, BigDecimal value) {
+		int from = 0, to = values.length;
+		while (from < to) {
+			int mid = (from + to) >>> 1;
+			if (values[mid].compareTo(value) < 0) {
+				from = mid + 1;
+			} else {
+				to = mid;
+			}
+		}
+		return from;
+	}
+}
@@ -0,0 +1,306 @@
+package gis;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * An asynchronous facade over InterestPoints for services answering many concurrent count and get queries, every query returning a CompletableFuture instead of blocking its caller
+ * queries run on a virtual thread each when the runtime has them, looked up by reflection so that the library still runs on Java 17, and on a pool of a daemon thread per processor otherwise
+ * at most a given number of evaluations are admitted at once, a query beyond them failing at once with RejectedExecutionException rather than waiting in a queue, and the future of every query fails with TimeoutException once its deadline passes
+ * a count arriving while a count of the same rectangles and marker is being evaluated waits for that evaluation instead of starting another, the deadline of each caller applying only to its own future
+ * an evaluation keeps its permit until it is done, so one whose callers have all timed out or cancelled is skipped if it has not started yet, but one already running cannot be stopped and holds its permit until it finishes
+ */
+public final class QueryService<M> implements AutoCloseable {
+
+	/**
+	 * the future result of a query with the number of callers still waiting for it, or -1 once it was skipped because none was
+	 */
+	private static final class Evaluation<V> {
+
+		private final CompletableFuture<V> future = new CompletableFuture<>();
+		private final AtomicInteger waiting = new AtomicInteger();
+
+		/**
+		 * @return if the caller now waits for the evaluation, or false if it was skipped
+		 */
+		boolean join() {
+			for (int count = waiting.get(); count >= 0; count = waiting.get()) {
+				if (waiting.compareAndSet(count, count + 1)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * stops counting a caller whose future is done, whether it was answered, timed out or cancelled
+		 */
+		void leave() {
+			waiting.decrementAndGet();
+		}
+
+		/**
+		 * @return if no caller waits for the evaluation, which is then marked as skipped so that no caller can join it
+		 */
+		boolean skip() {
+			return waiting.compareAndSet(0, -1);
+		}
+	}
+
+	private final InterestPoints<M> points;
+	private final Executor executor;
+
+	/** the executor made by the service, shut down by close, or null if it was given one */
+	private final ExecutorService ownExecutor;
+
+	private final Semaphore permits;
+	private final Duration deadline;
+	private final Map<RegionKey, Evaluation<Long>> counting = new ConcurrentHashMap<>();
+	private final AtomicLong coalesced = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong skipped = new AtomicLong();
+
+	private QueryService(Builder<M> builder) {
+		points = builder.points;
+		ownExecutor = builder.executor == null ? newExecutor() : null;
+		executor = builder.executor == null ? ownExecutor : builder.executor;
+		permits = new Semaphore(builder.maxInFlight);
+		deadline = builder.deadline;
+	}
+
+	/**
+	 * counts like InterestPoints.count, within the default deadline
+	 * @param the region and the marker
+	 * @return the future count
+	 * @throws NullPointerException if the region is null
+	 */
+	public CompletableFuture<Long> count(RectilinearRegion region, M marker) {
+		return count(region, marker, deadline);
+	}
+
+	/**
+	 * counts like InterestPoints.count, joining the evaluation of the same count if one is in flight
+	 * @param the region, the marker and the time after which the future fails with TimeoutException
+	 * @return the future count
+	 * @throws NullPointerException if the region or the deadline is null
+	 * @throws IllegalArgumentException if the deadline is not positive
+	 */
+	public CompletableFuture<Long> count(RectilinearRegion region, M marker, Duration deadline) {
+		Objects.requireNonNull(region);
+		checkDeadline(deadline);
+		RegionKey key = new RegionKey(region.getRectangles(), marker);
+		while (true) {
+			Evaluation<Long> evaluation = counting.get(key);
+			if (evaluation == null) {
+				Evaluation<Long> created = new Evaluation<>();
+				created.join();
+				evaluation = counting.putIfAbsent(key, created);
+				if (evaluation == null) {
+					created.future.whenComplete((count, failure) -> counting.remove(key, created));
+					submit(created, () -> points.count(region, marker));
+					return withDeadline(created, deadline);
+				}
+			}
+			if (evaluation.join()) {
+				coalesced.incrementAndGet();
+				return withDeadline(evaluation, deadline);
+			}
+			counting.remove(key, evaluation);
+		}
+	}
+
+	/**
+	 * reads the interest points at a coordinate like InterestPoints.get, within the default deadline
+	 * @param the coordinate
+	 * @return the future interest points, or a future of null if there are none
+	 * @throws NullPointerException if the coordinate fails to validate
+	 */
+	public CompletableFuture<Collection<InterestPoint>> get(Coordinate coordinate) {
+		return get(coordinate, deadline);
+	}
+
+	/**
+	 * reads the interest points at a coordinate like InterestPoints.get
+	 * @param the coordinate and the time after which the future fails with TimeoutException
+	 * @return the future interest points, or a future of null if there are none
+	 * @throws NullPointerException if the coordinate fails to validate or the deadline is null
+	 * @throws IllegalArgumentException if the deadline is not positive
+	 */
+	public CompletableFuture<Collection<InterestPoint>> get(Coordinate coordinate, Duration deadline) {
+		Coordinate.validate(coordinate);
+		checkDeadline(deadline);
+		Evaluation<Collection<InterestPoint>> evaluation = new Evaluation<>();
+		evaluation.join();
+		submit(evaluation, () -> points.get(coordinate));
+		return withDeadline(evaluation, deadline);
+	}
+
+	/**
+	 * @return the number of counts that joined an evaluation in flight instead of starting one
+	 */
+	public long coalesced() {
+		return coalesced.get();
+	}
+
+	/**
+	 * @return the number of queries refused because as many evaluations as allowed were in flight
+	 */
+	public long rejected() {
+		return rejected.get();
+	}
+
+	/**
+	 * @return the number of evaluations skipped before they started because every caller had timed out or cancelled
+	 */
+	public long skipped() {
+		return skipped.get();
+	}
+
+	/**
+	 * stops taking queries if the service made its own executor, letting those admitted finish
+	 */
+	public void close() {
+		if (ownExecutor != null) {
+			ownExecutor.shutdown();
+		}
+	}
+
+	/**
+	 * helper
+	 * runs the query on the executor if a permit is free, completing the evaluation with its result, or skipping it if no caller waits for it any more when it starts, and releasing the permit once it is done
+	 */
+	private <V> void submit(Evaluation<V> evaluation, Supplier<V> query) {
+		CompletableFuture<V> future = evaluation.future;
+		if (!permits.tryAcquire()) {
+			rejected.incrementAndGet();
+			future.completeExceptionally(new RejectedExecutionException("too many queries in flight"));
+			return;
+		}
+		try {
+			executor.execute(() -> {
+				try {
+					if (evaluation.skip()) {
+						skipped.incrementAndGet();
+						future.cancel(false);
+					} else {
+						future.complete(query.get());
+					}
+				} catch (Throwable failure) {
+					future.completeExceptionally(failure);
+				} finally {
+					permits.release();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			permits.release();
+			future.completeExceptionally(e);
+		}
+	}
+
+	/**
+	 * helper
+	 * @return a future completed like the evaluation the caller joined that fails once the deadline passes, without cancelling the evaluation, which other callers may share, and leaves it once done
+	 */
+	private static <V> CompletableFuture<V> withDeadline(Evaluation<V> evaluation, Duration deadline) {
+		CompletableFuture<V> future = evaluation.future.copy().orTimeout(deadline.toNanos(), TimeUnit.NANOSECONDS);
+		future.whenComplete((value, failure) -> evaluation.leave());
+		return future;
+	}
+
+	/**
+	 * helper
+	 * @throws IllegalArgumentException if the deadline is not positive
+	 */
+	private static void checkDeadline(Duration deadline) {
+		if (deadline.isNegative() || deadline.isZero()) {
+			throw new IllegalArgumentException("the deadline is not positive");
+		}
+	}
+
+	/**
+	 * helper
+	 * @return an executor starting a virtual thread per task if the runtime has them, or a pool of a daemon thread per processor
+	 */
+	private static ExecutorService newExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException | UnsupportedOperationException e) {
+			return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+				Thread thread = new Thread(runnable, "gis-query");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+	/**
+	 * Builder class to choose the limits of a service
+	 */
+	public static final class Builder<M> {
+
+		private final InterestPoints<M> points;
+		private int maxInFlight = 1024;
+		private Duration deadline = Duration.ofSeconds(1);
+		private Executor executor;
+
+		/**
+		 * @param the interest points to be queried
+		 */
+		public Builder(InterestPoints<M> points) {
+			this.points = Objects.requireNonNull(points);
+		}
+
+		/**
+		 * @param the largest number of evaluations admitted at once, 1024 by default
+		 * @return the current builder
+		 * @throws IllegalArgumentException if the number is not positive
+		 */
+		public Builder<M> setMaxInFlight(int maxInFlight) {
+			if (maxInFlight < 1) {
+				throw new IllegalArgumentException("the number of queries in flight is not positive");
+			}
+			this.maxInFlight = maxInFlight;
+			return this;
+		}
+
+		/**
+		 * @param the deadline of the queries given none, one second by default
+		 * @return the current builder
+		 * @throws IllegalArgumentException if the deadline is not positive
+		 */
+		public Builder<M> setDeadline(Duration deadline) {
+			checkDeadline(deadline);
+			this.deadline = deadline;
+			return this;
+		}
+
+		/**
+		 * @param the executor running the queries, which the service does not shut down, or null for virtual threads where the runtime has them
+		 * @return the current builder
+		 */
+		public Builder<M> setExecutor(Executor executor) {
+			this.executor = executor;
+			return this;
+		}
+
+		/**
+		 * @return a new service
+		 */
+		public QueryService<M> build() {
+			return new QueryService<>(this);
+		}
+	}
+}
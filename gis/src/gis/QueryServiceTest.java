@@ -0,0 +1,109 @@
+package gis;
+
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+public class QueryServiceTest {
+
+	private static InterestPoints<String> points() {
+		InterestPoints.Builder builder = new InterestPoints.Builder();
+		for (int i = 0; i < 10; i++) {
+			for (int j = 0; j < 10; j++) {
+				builder.add(new InterestPoint<>(new Coordinate(new BigDecimal(i), new BigDecimal(j)), (i + j) % 2 == 0 ? "even" : "odd"));
+			}
+		}
+		return builder.build();
+	}
+
+	private static RectilinearRegion region() {
+		Set<Rectangle> rectangles = new HashSet<Rectangle>();
+		rectangles.add(new Rectangle(new Coordinate(new BigDecimal(0), new BigDecimal(0)), new Coordinate(new BigDecimal(2), new BigDecimal(2))));
+		rectangles.add(new Rectangle(new Coordinate(new BigDecimal(2), new BigDecimal(0)), new Coordinate(new BigDecimal(5), new BigDecimal(1))));
+		return RectilinearRegion.of(rectangles);
+	}
+
+	private static Throwable failure(CompletableFuture<?> future) {
+		try {
+			future.join();
+		} catch (CompletionException e) {
+			return e.getCause();
+		}
+		throw new AssertionError("the future did not fail");
+	}
+
+	//counts of the same rectangles and marker in flight share one evaluation, and a new one starts once it is done
+	@Test
+	public void testCoalescing() {
+		List<Runnable> tasks = new ArrayList<>();
+		QueryService<String> service = new QueryService.Builder<>(points()).setExecutor(tasks::add).build();
+		CompletableFuture<Long> first = service.count(region(), "even");
+		CompletableFuture<Long> second = service.count(region(), "even");
+		CompletableFuture<Long> odd = service.count(region(), "odd");
+		assertEquals(2, tasks.size());
+		assertEquals(1, service.coalesced());
+		tasks.forEach(Runnable::run);
+		assertEquals(4L, (long) first.join());
+		assertEquals(4L, (long) second.join());
+		assertEquals(3L, (long) odd.join());
+		service.count(region(), "even");
+		assertEquals(3, tasks.size());
+	}
+
+	//queries beyond the admitted ones are refused at once, and a query whose evaluation does not finish in time times out
+	@Test
+	public void testAdmissionAndDeadline() {
+		List<Runnable> tasks = new ArrayList<>();
+		QueryService<String> service = new QueryService.Builder<>(points()).setExecutor(tasks::add).setMaxInFlight(1).build();
+		CompletableFuture<Long> late = service.count(region(), "even", Duration.ofMillis(10));
+		Coordinate c1 = new Coordinate(new BigDecimal(3), new BigDecimal(4));
+		assertTrue(failure(service.get(c1)) instanceof RejectedExecutionException);
+		assertEquals(1, service.rejected());
+		assertTrue(failure(late) instanceof TimeoutException);
+		tasks.forEach(Runnable::run);
+		CompletableFuture<Collection<InterestPoint>> cell = service.get(c1);
+		tasks.get(1).run();
+		assertEquals(Set.of(new InterestPoint<>(c1, "odd")), cell.join());
+	}
+
+	//an evaluation every caller gave up on is skipped before it starts, freeing its permit, while one a caller still waits for runs
+	@Test
+	public void testSkipAbandoned() {
+		List<Runnable> tasks = new ArrayList<>();
+		QueryService<String> service = new QueryService.Builder<>(points()).setExecutor(tasks::add).setMaxInFlight(1).build();
+		CompletableFuture<Long> first = service.count(region(), "even");
+		CompletableFuture<Long> second = service.count(region(), "even");
+		first.cancel(false);
+		second.cancel(false);
+		tasks.get(0).run();
+		assertEquals(1, service.skipped());
+		CompletableFuture<Long> third = service.count(region(), "even");
+		CompletableFuture<Long> fourth = service.count(region(), "even");
+		third.cancel(false);
+		tasks.get(1).run();
+		assertEquals(1, service.skipped());
+		assertEquals(4L, (long) fourth.join());
+	}
+
+	//the default executor answers many concurrent queries
+	@Test
+	public void testConcurrentQueries() {
+		try (QueryService<String> service = new QueryService.Builder<>(points()).setDeadline(Duration.ofSeconds(30)).build()) {
+			List<CompletableFuture<Long>> counts = new ArrayList<>();
+			for (int i = 0; i < 200; i++) {
+				counts.add(service.count(region(), i % 2 == 0 ? "even" : "odd"));
+			}
+			for (int i = 0; i < counts.size(); i++) {
+				assertEquals(i % 2 == 0 ? 4L : 3L, (long) counts.get(i).join());
+			}
+		}
+	}
+}
@@ -0,0 +1,15 @@
+package gis;
+
+/**
+ * A pair of rectangles that overlap, reported when a set of rectangles cannot form a region
+ * @param the two overlapping rectangles
+ */
+public record RectanglePair(Rectangle first, Rectangle second) {
+
+	/**
+	 * @return a compact and informative string representation of the pair
+	 */
+	public String toString() {
+		return("(" + first + ") overlaps (" + second + ")");
+	}
+}
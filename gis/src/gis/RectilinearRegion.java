@@ -1,14 +1,17 @@
 package gis;
 
-import java.math.BigDecimal;
 import java.util.*;
+import java.util.function.Predicate;
 
 /**
  * a region that contains multiple rectangles
  */
 public final class RectilinearRegion {
 
-	private final Set<Rectangle> rectangles;
+	private volatile Set<Rectangle> rectangles;
+	private volatile RegionIndex index;
+	private volatile int components;
+	private volatile RegionMask mask;
 	private Set<Rectangle> visited;
 	private Queue<Rectangle> visitQueue;
 	
@@ -17,47 +20,73 @@ public final class RectilinearRegion {
 	 * @param rectangles to be set
 	 */
 	private RectilinearRegion(Set<Rectangle> rectangles) {
-		this.rectangles = new HashSet<>(Objects.requireNonNull(rectangles));
-		visited = new HashSet<>();
-		visitQueue = new LinkedList<>();
+		this.rectangles = Collections.unmodifiableSet(new HashSet<>(Objects.requireNonNull(rectangles)));
+		this.components = -1;
 	}
 	
 	/**
-	 * return a two-dimensional map of rectangles, in which a rectangle appears in all the points within the rectangle (left and bottom edges inclusive; right and top edges exclusive)
-	 * set all left and right, top and bot coordinates
-	 * create a new grid which is a two dimensional map with coordinates at xCoord and yCoord and empty contents 
-	 * insert each rectangle everywhere in a grid slice 
-	 * @return the grid
+	 * a region made by editing another one, whose set of rectangles is only built when asked for
+	 * @param the index of the rectangles and their number of connected components, -1 if unknown
 	 */
-	private BiDimensionalMap<Rectangle> rectangleMap() {
-		Set<BigDecimal> xSet = new HashSet<BigDecimal>();
-		Set<BigDecimal> ySet = new HashSet<BigDecimal>();
-		this.rectangles.forEach(rect -> {
-			ySet.add(rect.bottom());
-			ySet.add(rect.top());
-			xSet.add(rect.left());
-			xSet.add(rect.right());
-		});
-		BiDimensionalMap<Rectangle> grid = new BiDimensionalMap<Rectangle>(xSet, ySet);
-		rectangles.forEach(rect -> {
-			BiDimensionalMap<Rectangle> slice = grid.slice(rect);
-			slice.addEverywhere(rect);
-		});	
-		return grid;
+	private RectilinearRegion(RegionIndex index, int components) {
+		this.index = index;
+		this.components = components;
 	}
 	
 	/**
-	 * interates through the rectangle map to check for overlapping rectangles
+	 * checks for overlapping rectangles with a sweep line over their left and right edges, keeping the rectangles that cross the line in an interval tree of their bottom and top edges
 	 * @return if the rectilinear region contains overlapping rectangle
 	 */
 	public boolean isOverlapping() {
-		BiDimensionalMap<Rectangle> map = this.rectangleMap();
-		for (Coordinate coordinate : map.coordinateSet()) {
-			if (map.get(coordinate).size() > 1) {
-				return true;
+		Metrics.Probe probe = Metrics.start(Metrics.Operation.IS_OVERLAPPING);
+		Set<Rectangle> rectangles = getRectangles();
+		boolean overlapping = !sweep(rectangles, pair -> false);
+		if (probe != null) {
+			probe.stop(rectangles.size());
+		}
+		return overlapping;
+	}
+	
+	/**
+	 * finds every pair of overlapping rectangles in O(n log n + k) for k pairs, to explain why a set of rectangles is not a valid region
+	 * @param rectangles to be checked
+	 * @return the overlapping pairs, empty if the rectangles can form a region
+	 * @throws NullPointerException if their is a null rectangle
+	 */
+	public static final List<RectanglePair> overlappingPairs(Set<Rectangle> rectangles) {
+		List<RectanglePair> pairs = new ArrayList<>();
+		sweep(Objects.requireNonNull(rectangles), pair -> pairs.add(pair));
+		return pairs;
+	}
+	
+	/**
+	 * moves a vertical line from left to right over the rectangles, removing those whose right edge it passes before adding those whose left edge it reaches, so that rectangles which only touch never meet
+	 * when a rectangle is added, every rectangle on the line whose bottom and top edges overlap it is handed to the action as a pair
+	 * @param the rectangles to be swept and the action, which stops the sweep by returning false
+	 * @return false if the action stopped the sweep, true otherwise
+	 * @throws IllegalArgumentException if a rectangle is invalid
+	 */
+	private static boolean sweep(Collection<Rectangle> rectangles, Predicate<RectanglePair> action) {
+		Rectangle[] byLeft = rectangles.toArray(new Rectangle[0]);
+		for (Rectangle rect : byLeft) {
+			Rectangle.validate(rect);
+		}
+		Rectangle[] byRight = byLeft.clone();
+		Arrays.sort(byLeft, Comparator.comparing(Rectangle::left));
+		Arrays.sort(byRight, Comparator.comparing(Rectangle::right));
+		IntervalTree<Rectangle> line = new IntervalTree<>();
+		Map<Rectangle, IntervalTree.Interval<Rectangle>> onLine = new HashMap<>();
+		int right = 0;
+		for (Rectangle rect : byLeft) {
+			while (byRight[right].right().compareTo(rect.left()) <= 0) {
+				line.remove(onLine.remove(byRight[right++]));
 			}
+			if (!line.overlapping(rect.bottom(), rect.top(), other -> action.test(new RectanglePair(other.value(), rect)))) {
+				return false;
+			}
+			onLine.put(rect, line.add(rect.bottom(), rect.top(), rect));
 		}
-		return false;
+		return true;
 	}
 	
 	/**
@@ -82,38 +111,171 @@ public final class RectilinearRegion {
 	}
 	
 	/**
-	 * checks whether a region rectangles are connected by using breadth first search through the list of rectangle
+	 * checks whether a region rectangles are connected, using an index of their edges instead of comparing every pair, without changing the region so that it can be called from several threads
 	 * @return false if there is no rectangle or not connected, true if every rectangle is connected
 	 */
 	public boolean isConnected() {
-		if(rectangles.size() == 0) {
+		if(getRectangles().size() == 0) {
 			return false;
 		}
-		visited = new HashSet<>();
-		visitQueue = new LinkedList<>();
-		visitQueue.add(rectangles.stream().findAny().get());
-		while (0 < visitQueue.size()) {
-		    Rectangle cur = visitQueue.remove();
-		    rectangles.forEach(rect -> {
-		    	if (!visited.contains(rect)) {
-		    		queueConnectedRectangle(cur, rect);
-		    	}
-			});
+		Metrics.Probe probe = Metrics.start(Metrics.Operation.IS_CONNECTED);
+		int count = components, visited = 0;
+		if (count < 0) {
+			count = connectedComponents().size();
+			components = count;
+			visited = getRectangles().size();
+		}
+		if (probe != null) {
+			probe.stop(visited);
+		}
+		return count == 1;
+	}
+	
+	/**
+	 * tests a coordinate against the mask of the region, which is built on the first call and kept, so that every later test takes a binary search over the x and y edges
+	 * a region whose edges make too large a grid to be rasterized searches the index of its rectangles instead, built on the first call like the mask
+	 * @param the coordinate to be checked
+	 * @return if one of the rectangles contains the coordinate, its bottom and left borders included but not its top and right ones, like BiDimensionalMap.slice
+	 * @throws NullPointerException if the coordinate is invalid
+	 */
+	public boolean contains(Coordinate coordinate) {
+		Coordinate.validate(coordinate);
+		RegionMask mask = mask();
+		if (mask.isRasterizable()) {
+			return mask.contains(coordinate.x(), coordinate.y());
+		}
+		return index().covers(coordinate.x(), coordinate.y());
+	}
+	
+	/**
+	 * @return the edges and coverage of the rectangles, whose bits are set on the first test, built once for the region
+	 */
+	RegionMask mask() {
+		RegionMask mask = this.mask;
+		if (mask == null) {
+			mask = RegionMask.of(getRectangles());
+			this.mask = mask;
 		}
-		return rectangles.equals(visited);
+		return mask;
 	}
 	
 	/**
-	 * check if two rectangles are connected, it connected then add to visit queue, then add current rect to visited
+	 * returns a new region that also contains the rectangle, checking only the rectangles that touch it for overlap, so that this region is left as it is
+	 * the connectivity is carried over: a rectangle that touches a connected region keeps it connected, and one that touches nothing adds a component
+	 * @param rectangle to be added
+	 * @return the new region, or this region if it already contains the rectangle
+	 * @throws NullPointerException if the rectangle is null
+	 * @throws IllegalArgumentException if the rectangle is invalid
+	 * @throws IllegalStateException if the rectangle overlaps the region
+	 */
+	public RectilinearRegion withRectangle(Rectangle rectangle) {
+		Rectangle.validate(rectangle);
+		RegionIndex index = index();
+		if (index.contains(rectangle)) {
+			return this;
+		}
+		List<Rectangle> touching = index.touching(rectangle);
+		for (Rectangle other : touching) {
+			if (isOverlapping(other, rectangle)) {
+				throw new IllegalStateException("the rectangle overlaps the region");
+			}
+		}
+		int count = components;
+		if (touching.isEmpty()) {
+			count = count < 0 ? -1 : count + 1;
+		} else if (count != 1) {
+			count = -1;
+		}
+		return new RectilinearRegion(index.with(rectangle), count);
+	}
+	
+	/**
+	 * returns a new region without the rectangle, so that this region is left as it is
+	 * the connectivity is carried over unless the rectangle joined neighbours that are not connected to each other, in which case it is found again when asked for
+	 * @param rectangle to be removed
+	 * @return the new region, or this region if it does not contain the rectangle
+	 * @throws NullPointerException if the rectangle is null
+	 */
+	public RectilinearRegion withoutRectangle(Rectangle rectangle) {
+		Objects.requireNonNull(rectangle);
+		RegionIndex index = index();
+		if (!index.contains(rectangle)) {
+			return this;
+		}
+		List<Rectangle> touching = index.touching(rectangle);
+		touching.remove(rectangle);
+		int count = components;
+		if (touching.isEmpty()) {
+			count = count < 0 ? -1 : count - 1;
+		} else if (count >= 0 && touching.size() > 1 && !allConnected(touching)) {
+			count = -1;
+		}
+		return new RectilinearRegion(index.without(rectangle), count);
+	}
+	
+	/**
+	 * helper
+	 * @return the index of the rectangles, built on the first edit of a region made by of, or its first test of a coordinate the mask cannot answer
+	 */
+	private RegionIndex index() {
+		RegionIndex index = this.index;
+		if (index == null) {
+			index = RegionIndex.of(rectangles);
+			this.index = index;
+		}
+		return index;
+	}
+	
+	/**
+	 * helper
+	 * @return if the two rectangles share more than their edges
+	 */
+	private static boolean isOverlapping(Rectangle first, Rectangle second) {
+		return first.left().compareTo(second.right()) < 0 && first.right().compareTo(second.left()) > 0
+				&& first.bottom().compareTo(second.top()) < 0 && first.top().compareTo(second.bottom()) > 0;
+	}
+	
+	/**
+	 * helper
+	 * @return if the rectangles are connected to each other without going through any other rectangle
+	 */
+	private static boolean allConnected(List<Rectangle> rectangles) {
+		for (int label : AdjacencyIndex.components(rectangles.toArray(new Rectangle[0]))) {
+			if (label != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * groups the rectangles of the region into sets of rectangles that are connected to each other
+	 * @return the connected components of the region, or an empty list if there is no rectangle
+	 */
+	public List<Set<Rectangle>> connectedComponents() {
+		Rectangle[] rects = getRectangles().toArray(new Rectangle[0]);
+		int[] labels = AdjacencyIndex.components(rects);
+		List<Set<Rectangle>> components = new ArrayList<>();
+		for (int i = 0; i < rects.length; i++) {
+			if (labels[i] == components.size()) {
+				components.add(new HashSet<>());
+			}
+			components.get(labels[i]).add(rects[i]);
+		}
+		return components;
+	}
+	
+	/**
+	 * a single step of a breadth first search over the rectangles: check if two rectangles are connected, it connected then add to visit queue, then add current rect to visited
 	 * @param the current and next rectangle in the queue
 	 */
 	 void queueConnectedRectangle(Rectangle cur,Rectangle rect) {
 		Rectangle.validate(cur);
 		Rectangle.validate(rect);
 		if (isConnectedTB(cur, rect) || isConnectedLR(cur, rect)) {
-				visitQueue.add(rect);
+				getVisitQueue().add(rect);
 		}
-		visited.add(cur);
+		getVisited().add(cur);
 	}
 	
 	 /**
@@ -141,23 +303,36 @@ public final class RectilinearRegion {
 	}
 	
 	 /**
-	  * @return the set of rectangles
+	  * @return the unmodifiable set of rectangles
 	  */
 	public Set<Rectangle> getRectangles() { 
+		Set<Rectangle> rectangles = this.rectangles;
+		if (rectangles == null) {
+			Set<Rectangle> copy = new HashSet<>();
+			index.forEach(copy::add);
+			rectangles = Collections.unmodifiableSet(copy);
+			this.rectangles = rectangles;
+		}
 		return rectangles;
 	}
 	
 	/**
-	  * @return the set of visited rectangles
+	  * @return the set of visited rectangles, made on the first call since only the single steps of the search use it
 	  */
 	 Set<Rectangle> getVisited() { 
+		if (visited == null) {
+			visited = new HashSet<>();
+		}
 		return visited;
 	}
 	
 	 /**
-	  * @return the visit queue
+	  * @return the visit queue, made on the first call like the set of visited rectangles
 	  */
 	 Queue<Rectangle> getVisitQueue() { 
+		if (visitQueue == null) {
+			visitQueue = new LinkedList<>();
+		}
 		return visitQueue;
 	}
 	
@@ -254,5 +254,128 @@ public class RectilinearRegionTest {
 		RectilinearRegion test = RectilinearRegion.of(rectangles);
 		assertTrue(test.isConnected());
 	}
+	
+	//3 rectangles where the first overlaps both others, which only touch each other
+	@Test
+	public void testOverlappingPairs() {
+		Coordinate c1 = new Coordinate(new BigDecimal(0),new BigDecimal(0));  //left bot
+		Coordinate c2 = new Coordinate(new BigDecimal(4),new BigDecimal(2));  //right top		
+		Coordinate c3 = new Coordinate(new BigDecimal(1),new BigDecimal(1));  //left bot
+		Coordinate c4 = new Coordinate(new BigDecimal(2),new BigDecimal(3));  //right top
+		Coordinate c5 = new Coordinate(new BigDecimal(2),new BigDecimal(1));  //left bot
+		Coordinate c6 = new Coordinate(new BigDecimal(3),new BigDecimal(3));  //right top
+		Rectangle r1 = new Rectangle(c1, c2);
+		Rectangle r2 = new Rectangle(c3, c4);
+		Rectangle r3 = new Rectangle(c5, c6);
+		Set<Rectangle> rectangles = new HashSet<Rectangle>();
+		rectangles.add(r1);
+		rectangles.add(r2);
+		rectangles.add(r3);
+		List<RectanglePair> pairs = RectilinearRegion.overlappingPairs(rectangles);
+		assertEquals(2, pairs.size());
+		for (RectanglePair pair : pairs) {
+			assertTrue(pair.first().equals(r1) || pair.second().equals(r1));
+		}
+	}
+	
+	//generate 20000 rectangles in a grid without overlapping
+	@Test
+	public void OverlapStressTest() {
+		Set<Rectangle> rectangles = new HashSet<Rectangle>();
+		for (int i = 0; i < 200; i++) {
+			for (int j = 0; j < 100; j++) {
+				Coordinate c1 = new Coordinate(new BigDecimal(i),new BigDecimal(j));  //left bot
+				Coordinate c2 = new Coordinate(new BigDecimal(i+1),new BigDecimal(j+1)); //right top		
+				rectangles.add(new Rectangle(c1, c2));
+			}
+		}
+		assertFalse(RectilinearRegion.of(rectangles).isOverlapping());
+	}
+	
+	//2 rectangles touching at a corner and 1 apart from them
+	@Test
+	public void testConnectedComponents() {
+		Coordinate c1 = new Coordinate(new BigDecimal(0),new BigDecimal(0));  //left bot
+		Coordinate c2 = new Coordinate(new BigDecimal(1),new BigDecimal(1));  //right top		
+		Coordinate c3 = new Coordinate(new BigDecimal(1),new BigDecimal(1));  //left bot
+		Coordinate c4 = new Coordinate(new BigDecimal(2),new BigDecimal(2));  //right top
+		Coordinate c5 = new Coordinate(new BigDecimal(5),new BigDecimal(5));  //left bot
+		Coordinate c6 = new Coordinate(new BigDecimal(6),new BigDecimal(6));  //right top
+		Rectangle r1 = new Rectangle(c1, c2);
+		Rectangle r2 = new Rectangle(c3, c4);
+		Rectangle r3 = new Rectangle(c5, c6);
+		Set<Rectangle> rectangles = new HashSet<Rectangle>();
+		rectangles.add(r1);
+		rectangles.add(r2);
+		rectangles.add(r3);
+		RectilinearRegion test = RectilinearRegion.of(rectangles);
+		List<Set<Rectangle>> components = test.connectedComponents();
+		assertEquals(2, components.size());
+		assertTrue(components.contains(Set.of(r1, r2)));
+		assertTrue(components.contains(Set.of(r3)));
+		assertFalse(test.isConnected());
+	}
+	
+	//3 rectangles in a row added one by one, then the middle one removed
+	@Test
+	public void testWithRectangle() {
+		Rectangle r1 = new Rectangle(new Coordinate(new BigDecimal(0),new BigDecimal(0)), new Coordinate(new BigDecimal(1),new BigDecimal(1)));
+		Rectangle r2 = new Rectangle(new Coordinate(new BigDecimal(1),new BigDecimal(0)), new Coordinate(new BigDecimal(2),new BigDecimal(1)));
+		Rectangle r3 = new Rectangle(new Coordinate(new BigDecimal(2),new BigDecimal(0)), new Coordinate(new BigDecimal(3),new BigDecimal(1)));
+		RectilinearRegion empty = RectilinearRegion.of(new HashSet<Rectangle>());
+		RectilinearRegion apart = empty.withRectangle(r1).withRectangle(r3);
+		assertFalse(apart.isConnected());
+		RectilinearRegion row = apart.withRectangle(r2);
+		assertTrue(row.isConnected());
+		assertEquals(Set.of(r1, r2, r3), row.getRectangles());
+		assertSame(row, row.withRectangle(r2));
+		assertEquals(Set.of(r1, r3), apart.getRectangles());
+		RectilinearRegion split = row.withoutRectangle(r2);
+		assertFalse(split.isConnected());
+		assertEquals(2, split.connectedComponents().size());
+		assertTrue(row.withoutRectangle(r3).isConnected());
+		assertTrue(empty.getRectangles().isEmpty());
+	}
+	
+	//a rectangle overlapping one of the region
+	@Test(expected = IllegalStateException.class)
+	public void testWithOverlappingRectangle() {
+		Rectangle r1 = new Rectangle(new Coordinate(new BigDecimal(0),new BigDecimal(0)), new Coordinate(new BigDecimal(2),new BigDecimal(2)));
+		Rectangle r2 = new Rectangle(new Coordinate(new BigDecimal(1),new BigDecimal(1)), new Coordinate(new BigDecimal(3),new BigDecimal(3)));
+		RectilinearRegion.of(new HashSet<Rectangle>(List.of(r1))).withRectangle(r2);
+	}
+	
+	//an L of 2 rectangles tested on their borders, the shared edge and the gap
+	@Test
+	public void testContains() {
+		Rectangle r1 = new Rectangle(new Coordinate(new BigDecimal(0),new BigDecimal(0)), new Coordinate(new BigDecimal(2),new BigDecimal(1)));
+		Rectangle r2 = new Rectangle(new Coordinate(new BigDecimal(0),new BigDecimal(1)), new Coordinate(new BigDecimal(1),new BigDecimal(3)));
+		RectilinearRegion test = RectilinearRegion.of(new HashSet<Rectangle>(List.of(r1, r2)));
+		assertTrue(test.contains(new Coordinate(new BigDecimal(0),new BigDecimal(0))));
+		assertTrue(test.contains(new Coordinate(new BigDecimal("0.5"),new BigDecimal(1))));
+		assertTrue(test.contains(new Coordinate(new BigDecimal("1.99"),new BigDecimal("0.5"))));
+		assertFalse(test.contains(new Coordinate(new BigDecimal(2),new BigDecimal("0.5"))));
+		assertFalse(test.contains(new Coordinate(new BigDecimal("1.5"),new BigDecimal("1.5"))));
+		assertFalse(test.contains(new Coordinate(new BigDecimal("0.5"),new BigDecimal(3))));
+		assertFalse(RectilinearRegion.of(new HashSet<Rectangle>()).contains(new Coordinate(new BigDecimal(0),new BigDecimal(0))));
+	}
+	
+	//a staircase of 5000 squares, whose edges make too large a grid for the mask, tested inside, on the borders and beside the steps
+	@Test
+	public void testContainsNotRasterizable() {
+		Set<Rectangle> rectangles = new HashSet<Rectangle>();
+		for (int i = 0; i < 5000; i++) {
+			rectangles.add(new Rectangle(new Coordinate(new BigDecimal(i),new BigDecimal(i)), new Coordinate(new BigDecimal(i + 1),new BigDecimal(i + 1))));
+		}
+		RectilinearRegion test = RectilinearRegion.of(rectangles);
+		assertFalse(test.mask().isRasterizable());
+		for (int i = 0; i < 5000; i += 7) {
+			assertTrue(test.contains(new Coordinate(new BigDecimal(i),new BigDecimal(i))));
+			assertTrue(test.contains(new Coordinate(new BigDecimal(i).add(new BigDecimal("0.5")),new BigDecimal(i).add(new BigDecimal("0.99")))));
+			assertFalse(test.contains(new Coordinate(new BigDecimal(i + 1),new BigDecimal(i).add(new BigDecimal("0.5")))));
+			assertFalse(test.contains(new Coordinate(new BigDecimal(i),new BigDecimal(i + 2))));
+		}
+		assertFalse(test.contains(new Coordinate(new BigDecimal(5000),new BigDecimal(5000))));
+	}
 
 }
@@ -0,0 +1,259 @@
+package gis;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+/**
+ * A persistent set of non-overlapping rectangles kept in a randomized binary search tree ordered by their left edge, where every node also knows the bounding box of the rectangles below it
+ * adding or removing a rectangle copies only the O(log n) nodes on its path and leaves the old tree untouched, so that every version of a region can share the rest of the tree
+ * the rectangles touching a query are found without looking at the subtrees whose bounding box is apart from it
+ */
+final class RegionIndex {
+
+	private static final Comparator<Rectangle> ORDER = Comparator.comparing(Rectangle::left).thenComparing(Rectangle::bottom).thenComparing(Rectangle::right).thenComparing(Rectangle::top);
+
+	static final RegionIndex EMPTY = new RegionIndex(null);
+
+	/**
+	 * a node of the tree, which is never changed once it is built
+	 */
+	private static final class Node {
+
+		private final Rectangle rectangle;
+		private final int priority;
+		private final Node left, right;
+		private final int size;
+		private final BigDecimal maxRight;
+		private final BigDecimal minBottom;
+		private final BigDecimal maxTop;
+
+		private Node(Rectangle rectangle, int priority, Node left, Node right) {
+			this.rectangle = rectangle;
+			this.priority = priority;
+			this.left = left;
+			this.right = right;
+			this.size = 1 + size(left) + size(right);
+			BigDecimal maxRight = rectangle.right(), minBottom = rectangle.bottom(), maxTop = rectangle.top();
+			for (Node child : new Node[] { left, right }) {
+				if (child != null) {
+					maxRight = maxRight.max(child.maxRight);
+					minBottom = minBottom.min(child.minBottom);
+					maxTop = maxTop.max(child.maxTop);
+				}
+			}
+			this.maxRight = maxRight;
+			this.minBottom = minBottom;
+			this.maxTop = maxTop;
+		}
+	}
+
+	private final Node root;
+
+	private RegionIndex(Node root) {
+		this.root = root;
+	}
+
+	/**
+	 * builds a balanced tree from the rectangles in O(n log n)
+	 * @param the non-overlapping, valid rectangles
+	 * @return the index of the rectangles
+	 */
+	static RegionIndex of(Collection<Rectangle> rectangles) {
+		Rectangle[] sorted = rectangles.toArray(new Rectangle[0]);
+		Arrays.sort(sorted, ORDER);
+		return new RegionIndex(build(sorted, 0, sorted.length));
+	}
+
+	/**
+	 * helper
+	 * builds the subtree of sorted[from, to) around its middle, every node taking at least the priority of its children
+	 */
+	private static Node build(Rectangle[] sorted, int from, int to) {
+		if (from >= to) {
+			return null;
+		}
+		int mid = (from + to) >>> 1;
+		Node left = build(sorted, from, mid);
+		Node right = build(sorted, mid + 1, to);
+		int priority = ThreadLocalRandom.current().nextInt();
+		if (left != null) {
+			priority = Math.max(priority, left.priority);
+		}
+		if (right != null) {
+			priority = Math.max(priority, right.priority);
+		}
+		return new Node(sorted[mid], priority, left, right);
+	}
+
+	/**
+	 * @return the number of rectangles in the index
+	 */
+	int size() {
+		return size(root);
+	}
+
+	/**
+	 * @param rectangle to be found
+	 * @return if the index holds a rectangle equal to the argument
+	 */
+	boolean contains(Rectangle rectangle) {
+		Node node = root;
+		while (node != null) {
+			int compare = ORDER.compare(rectangle, node.rectangle);
+			if (compare == 0) {
+				return node.rectangle.equals(rectangle);
+			}
+			node = compare < 0 ? node.left : node.right;
+		}
+		return false;
+	}
+
+	/**
+	 * @param rectangle to be added, which must not overlap the rectangles of the index
+	 * @return a new index that also holds the rectangle
+	 */
+	RegionIndex with(Rectangle rectangle) {
+		return new RegionIndex(insert(root, new Node(rectangle, ThreadLocalRandom.current().nextInt(), null, null)));
+	}
+
+	/**
+	 * @param rectangle to be removed, which must be in the index
+	 * @return a new index without the rectangle
+	 */
+	RegionIndex without(Rectangle rectangle) {
+		return new RegionIndex(delete(root, rectangle));
+	}
+
+	/**
+	 * finds the rectangles sharing at least a point with the argument, in O(log n + k) for k rectangles when the rectangles are spread out
+	 * @param rectangle to be checked
+	 * @return the rectangles that overlap or touch the argument
+	 */
+	List<Rectangle> touching(Rectangle rectangle) {
+		List<Rectangle> touching = new ArrayList<>();
+		touching(root, rectangle, touching);
+		return touching;
+	}
+
+	/**
+	 * finds a rectangle containing the coordinate without looking at the subtrees whose bounding box is apart from it, in O(log n) when the rectangles are spread out
+	 * @param x and y coordinate
+	 * @return if a rectangle contains the coordinate, its bottom and left borders included but not its top and right ones
+	 */
+	boolean covers(BigDecimal x, BigDecimal y) {
+		return covers(root, x, y);
+	}
+
+	/**
+	 * hands every rectangle to the action, in order of their left edge
+	 * @param the action
+	 */
+	void forEach(Consumer<Rectangle> action) {
+		forEach(root, action);
+	}
+
+	private static void touching(Node node, Rectangle query, List<Rectangle> touching) {
+		if (node == null || node.maxRight.compareTo(query.left()) < 0 || node.minBottom.compareTo(query.top()) > 0 || node.maxTop.compareTo(query.bottom()) < 0) {
+			return;
+		}
+		touching(node.left, query, touching);
+		Rectangle rect = node.rectangle;
+		if (rect.left().compareTo(query.right()) > 0) {
+			return;
+		}
+		if (rect.right().compareTo(query.left()) >= 0 && rect.bottom().compareTo(query.top()) <= 0 && rect.top().compareTo(query.bottom()) >= 0) {
+			touching.add(rect);
+		}
+		touching(node.right, query, touching);
+	}
+
+	private static boolean covers(Node node, BigDecimal x, BigDecimal y) {
+		if (node == null || node.maxRight.compareTo(x) <= 0 || node.minBottom.compareTo(y) > 0 || node.maxTop.compareTo(y) <= 0) {
+			return false;
+		}
+		if (covers(node.left, x, y)) {
+			return true;
+		}
+		if (node.rectangle.left().compareTo(x) > 0) {
+			return false;
+		}
+		return CellStore.contains(node.rectangle, x, y) || covers(node.right, x, y);
+	}
+
+	private static void forEach(Node node, Consumer<Rectangle> action) {
+		if (node != null) {
+			forEach(node.left, action);
+			action.accept(node.rectangle);
+			forEach(node.right, action);
+		}
+	}
+
+	private static Node insert(Node node, Node single) {
+		if (node == null) {
+			return single;
+		}
+		if (single.priority > node.priority) {
+			Node[] parts = split(node, single.rectangle);
+			return new Node(single.rectangle, single.priority, parts[0], parts[1]);
+		}
+		if (ORDER.compare(single.rectangle, node.rectangle) < 0) {
+			return new Node(node.rectangle, node.priority, insert(node.left, single), node.right);
+		}
+		return new Node(node.rectangle, node.priority, node.left, insert(node.right, single));
+	}
+
+	private static Node delete(Node node, Rectangle rectangle) {
+		if (node == null) {
+			return null;
+		}
+		int compare = ORDER.compare(rectangle, node.rectangle);
+		if (compare == 0) {
+			return merge(node.left, node.right);
+		}
+		if (compare < 0) {
+			return new Node(node.rectangle, node.priority, delete(node.left, rectangle), node.right);
+		}
+		return new Node(node.rectangle, node.priority, node.left, delete(node.right, rectangle));
+	}
+
+	/**
+	 * helper
+	 * @return the nodes before the rectangle and the nodes not before it, as two new trees
+	 */
+	private static Node[] split(Node node, Rectangle rectangle) {
+		if (node == null) {
+			return new Node[2];
+		}
+		if (ORDER.compare(node.rectangle, rectangle) < 0) {
+			Node[] parts = split(node.right, rectangle);
+			parts[0] = new Node(node.rectangle, node.priority, node.left, parts[0]);
+			return parts;
+		}
+		Node[] parts = split(node.left, rectangle);
+		parts[1] = new Node(node.rectangle, node.priority, parts[1], node.right);
+		return parts;
+	}
+
+	private static Node merge(Node left, Node right) {
+		if (left == null) {
+			return right;
+		}
+		if (right == null) {
+			return left;
+		}
+		if (left.priority > right.priority) {
+			return new Node(left.rectangle, left.priority, left.left, merge(left.right, right));
+		}
+		return new Node(right.rectangle, right.priority, merge(left, right.left), right.right);
+	}
+
+	private static int size(Node node) {
+		return node == null ? 0 : node.size;
+	}
+}
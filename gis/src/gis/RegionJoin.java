@@ -0,0 +1,106 @@
+package gis;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A plane sweep joining the cells of a map with the rectangles of many regions, each cell being handed over once with every region containing it
+ * a vertical line moves over the cells in the order of their x coordinates, keeping the rectangles it crosses in an interval tree of their bottom and top edges, so that the regions of a cell are found with one query at its y coordinate
+ * regions may overlap each other, while the rectangles of one region do not, so that a cell is in a region at most once
+ */
+final class RegionJoin {
+
+	/**
+	 * receives a cell with the regions containing it
+	 */
+	@FunctionalInterface
+	interface Visitor<T> {
+
+		/**
+		 * @param the collection of the cell, the indices of the regions containing it in the array [0, count), and their number, which is never 0
+		 */
+		void visit(Collection<T> values, int[] regions, int count);
+	}
+
+	/**
+	 * a rectangle of a region
+	 */
+	private record Edge(Rectangle rectangle, int region) {
+	}
+
+	private final Edge[] byLeft, byRight;
+	private final int regions;
+	private final Rectangle bounds;
+
+	/**
+	 * @param the regions to be joined, in the order of their indices
+	 * @throws NullPointerException if a region is null
+	 */
+	RegionJoin(List<RectilinearRegion> regions) {
+		List<Edge> edges = new ArrayList<>();
+		BigDecimal left = null, bottom = null, right = null, top = null;
+		for (int i = 0; i < regions.size(); i++) {
+			for (Rectangle rectangle : Objects.requireNonNull(regions.get(i), "regions contains a null region").getRectangles()) {
+				edges.add(new Edge(rectangle, i));
+				left = left == null ? rectangle.left() : left.min(rectangle.left());
+				bottom = bottom == null ? rectangle.bottom() : bottom.min(rectangle.bottom());
+				right = right == null ? rectangle.right() : right.max(rectangle.right());
+				top = top == null ? rectangle.top() : top.max(rectangle.top());
+			}
+		}
+		byLeft = edges.toArray(new Edge[0]);
+		byRight = byLeft.clone();
+		Arrays.sort(byLeft, Comparator.comparing(edge -> edge.rectangle().left()));
+		Arrays.sort(byRight, Comparator.comparing(edge -> edge.rectangle().right()));
+		this.regions = regions.size();
+		bounds = left == null ? null : new Rectangle(new Coordinate(left, bottom), new Coordinate(right, top));
+	}
+
+	/**
+	 * @return the smallest rectangle around every region, or null if they have no rectangles
+	 */
+	Rectangle bounds() {
+		return bounds;
+	}
+
+	/**
+	 * sweeps the cells of a map, which only needs to hold those within the bounds
+	 * @param the cells and the visitor receiving those inside a region
+	 * @return the number of cells swept
+	 */
+	<T> long sweep(BiDimensionalMap<T> cells, Visitor<T> visitor) {
+		IntervalTree<Edge> line = new IntervalTree<>();
+		Map<Edge, IntervalTree.Interval<Edge>> onLine = new HashMap<>();
+		int[] hits = new int[Math.max(regions, 1)];
+		int[] next = new int[2], found = new int[1];
+		long[] swept = new long[1];
+		cells.forEachCell((x, y, values) -> {
+			while (next[0] < byLeft.length && byLeft[next[0]].rectangle().left().compareTo(x) <= 0) {
+				Edge edge = byLeft[next[0]++];
+				onLine.put(edge, line.add(edge.rectangle().bottom(), edge.rectangle().top(), edge));
+			}
+			while (next[1] < byRight.length && byRight[next[1]].rectangle().right().compareTo(x) <= 0) {
+				line.remove(onLine.remove(byRight[next[1]++]));
+			}
+			swept[0]++;
+			if (line.size() > 0) {
+				found[0] = 0;
+				line.containing(y, interval -> {
+					hits[found[0]++] = interval.value().region();
+					return true;
+				});
+				if (found[0] > 0) {
+					visitor.visit(values, hits, found[0]);
+				}
+			}
+		});
+		return swept[0];
+	}
+}
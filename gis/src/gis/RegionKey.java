@@ -0,0 +1,38 @@
+package gis;
+
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * the rectangles of a region and a marker, keying the counts of the marker in the region, whose hash is worked out once since the rectangles may be many
+ */
+final class RegionKey {
+
+	private final Set<Rectangle> rectangles;
+	private final Object marker;
+	private final int hash;
+
+	/**
+	 * @param the rectangles of the region and the marker
+	 */
+	RegionKey(Set<Rectangle> rectangles, Object marker) {
+		this.rectangles = rectangles;
+		this.marker = marker;
+		this.hash = 31 * rectangles.hashCode() + Objects.hashCode(marker);
+	}
+
+	/**
+	 * @return the rectangles of the region
+	 */
+	Set<Rectangle> rectangles() {
+		return rectangles;
+	}
+
+	public boolean equals(Object other) {
+		return other instanceof RegionKey key && hash == key.hash && Objects.equals(marker, key.marker) && rectangles.equals(key.rectangles);
+	}
+
+	public int hashCode() {
+		return hash;
+	}
+}
@@ -0,0 +1,151 @@
+package gis;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The rectangles of a region rasterized over their distinct x and y edges, a bit per cell of the grid of edges telling if the cell is covered
+ * a coordinate is tested with a binary search over each axis and a bit, with the borders of BiDimensionalMap.slice, so that a coordinate on an edge shared by two rectangles belongs to the one to its right or above
+ * the bits are one per cell of the grid, which is small for regions tiled from a few hundred edges but grows with the product of the edges, so they are only set on the first test and only if the grid has at most MAX_CELLS cells
+ */
+final class RegionMask {
+
+	/** the largest number of cells of a grid that is rasterized, 2 MB of bits */
+	static final long MAX_CELLS = 1L << 24;
+
+	private final BigDecimal[] xs, ys;
+	private final Set<Rectangle> rectangles;
+	private final Rectangle bounds;
+	private final double coverage;
+	private volatile long[] bits;
+
+	private RegionMask(BigDecimal[] xs, BigDecimal[] ys, Set<Rectangle> rectangles, Rectangle bounds, double coverage) {
+		this.xs = xs;
+		this.ys = ys;
+		this.rectangles = rectangles;
+		this.bounds = bounds;
+		this.coverage = coverage;
+	}
+
+	/**
+	 * @param the rectangles of a region, which do not overlap
+	 * @return the mask of the rectangles, rasterized on its first test
+	 */
+	static RegionMask of(Set<Rectangle> rectangles) {
+		TreeSet<BigDecimal> xSet = new TreeSet<>(), ySet = new TreeSet<>();
+		for (Rectangle rectangle : rectangles) {
+			xSet.add(rectangle.left());
+			xSet.add(rectangle.right());
+			ySet.add(rectangle.bottom());
+			ySet.add(rectangle.top());
+		}
+		BigDecimal[] xs = xSet.toArray(new BigDecimal[0]), ys = ySet.toArray(new BigDecimal[0]);
+		if (xs.length == 0) {
+			return new RegionMask(xs, ys, rectangles, null, 0);
+		}
+		double area = 0;
+		for (Rectangle rectangle : rectangles) {
+			area += rectangle.right().subtract(rectangle.left()).doubleValue() * rectangle.top().subtract(rectangle.bottom()).doubleValue();
+		}
+		Rectangle bounds = new Rectangle(new Coordinate(xs[0], ys[0]), new Coordinate(xs[xs.length - 1], ys[ys.length - 1]));
+		double boundsArea = bounds.right().subtract(bounds.left()).doubleValue() * bounds.top().subtract(bounds.bottom()).doubleValue();
+		return new RegionMask(xs, ys, rectangles, bounds, area / boundsArea);
+	}
+
+	/**
+	 * @return if the grid of edges is small enough to be rasterized, which contains needs
+	 */
+	boolean isRasterizable() {
+		return (long) Math.max(xs.length - 1, 0) * Math.max(ys.length - 1, 0) <= MAX_CELLS;
+	}
+
+	/**
+	 * @param the x and y coordinate
+	 * @return if one of the rectangles contains the coordinate
+	 * @throws IllegalStateException if the mask is not rasterizable
+	 */
+	boolean contains(BigDecimal x, BigDecimal y) {
+		int column = cell(xs, x), row = cell(ys, y);
+		if (column < 0 || row < 0) {
+			return false;
+		}
+		long bit = (long) column * (ys.length - 1) + row;
+		return (bits()[(int) (bit >>> 6)] & (1L << bit)) != 0;
+	}
+
+	/**
+	 * @return the smallest rectangle around the region, or null if it has no rectangles
+	 */
+	Rectangle bounds() {
+		return bounds;
+	}
+
+	/**
+	 * @return the share of the bounds covered by the region, 0 if it has no rectangles
+	 */
+	double coverage() {
+		return coverage;
+	}
+
+	/**
+	 * helper
+	 * @return the bits of the grid, set on the first call
+	 * @throws IllegalStateException if the grid is too large to be rasterized
+	 */
+	private long[] bits() {
+		long[] bits = this.bits;
+		if (bits == null) {
+			synchronized (this) {
+				bits = this.bits;
+				if (bits == null) {
+					bits = rasterize();
+					this.bits = bits;
+				}
+			}
+		}
+		return bits;
+	}
+
+	/**
+	 * helper
+	 * @return a bit per cell of the grid, set if a rectangle covers the cell
+	 */
+	private long[] rasterize() {
+		if (!isRasterizable()) {
+			throw new IllegalStateException("the grid of the region has more than " + MAX_CELLS + " cells");
+		}
+		int rows = ys.length - 1;
+		long[] bits = new long[(int) (((long) (xs.length - 1) * rows + Long.SIZE - 1) / Long.SIZE)];
+		for (Rectangle rectangle : rectangles) {
+			int bottom = Arrays.binarySearch(ys, rectangle.bottom()), top = Arrays.binarySearch(ys, rectangle.top());
+			for (int column = Arrays.binarySearch(xs, rectangle.left()), right = Arrays.binarySearch(xs, rectangle.right()); column < right; column++) {
+				set(bits, (long) column * rows + bottom, (long) column * rows + top);
+			}
+		}
+		return bits;
+	}
+
+	/**
+	 * helper
+	 * @return the cell of the edges holding the value, or -1 if it lies outside them
+	 */
+	private static int cell(BigDecimal[] edges, BigDecimal value) {
+		int index = Arrays.binarySearch(edges, value);
+		if (index < 0) {
+			index = -index - 2;
+		}
+		return index < edges.length - 1 ? index : -1;
+	}
+
+	/**
+	 * helper
+	 * sets the bits [from, to)
+	 */
+	private static void set(long[] bits, long from, long to) {
+		for (long bit = from; bit < to; bit++) {
+			bits[(int) (bit >>> 6)] |= 1L << bit;
+		}
+	}
+}
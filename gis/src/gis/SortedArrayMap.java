@@ -0,0 +1,109 @@
+package gis;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedMap;
+
+/**
+ * A read-only SortedMap over a range of two parallel arrays whose keys are already sorted by their compareTo
+ * handing it to the constructor or putAll of an empty TreeMap or ConcurrentSkipListMap builds the tree bottom-up in linear time instead of inserting key by key
+ */
+final class SortedArrayMap<K extends Comparable<? super K>, V> extends AbstractMap<K, V> implements SortedMap<K, V> {
+
+	private final K[] keys;
+	private final V[] values;
+	private final int from;
+	private final int to;
+
+	/**
+	 * @param the sorted keys, their values and the range [from, to) of the arrays in the map
+	 */
+	SortedArrayMap(K[] keys, V[] values, int from, int to) {
+		this.keys = keys;
+		this.values = values;
+		this.from = from;
+		this.to = to;
+	}
+
+	public int size() {
+		return to - from;
+	}
+
+	public Comparator<? super K> comparator() {
+		return null;
+	}
+
+	public K firstKey() {
+		if (from == to) {
+			throw new NoSuchElementException();
+		}
+		return keys[from];
+	}
+
+	public K lastKey() {
+		if (from == to) {
+			throw new NoSuchElementException();
+		}
+		return keys[to - 1];
+	}
+
+	public SortedMap<K, V> subMap(K fromKey, K toKey) {
+		return new SortedArrayMap<>(keys, values, lowerBound(fromKey), Math.max(lowerBound(fromKey), lowerBound(toKey)));
+	}
+
+	public SortedMap<K, V> headMap(K toKey) {
+		return new SortedArrayMap<>(keys, values, from, lowerBound(toKey));
+	}
+
+	public SortedMap<K, V> tailMap(K fromKey) {
+		return new SortedArrayMap<>(keys, values, lowerBound(fromKey), to);
+	}
+
+	public Set<Entry<K, V>> entrySet() {
+		return new AbstractSet<>() {
+			public int size() {
+				return to - from;
+			}
+
+			public Iterator<Entry<K, V>> iterator() {
+				return new Iterator<>() {
+					private int next = from;
+
+					public boolean hasNext() {
+						return next < to;
+					}
+
+					public Entry<K, V> next() {
+						if (next >= to) {
+							throw new NoSuchElementException();
+						}
+						Entry<K, V> entry = new SimpleImmutableEntry<>(keys[next], values[next]);
+						next++;
+						return entry;
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * helper
+	 * @return the first index in the range whose key is not before the given key
+	 */
+	private int lowerBound(K key) {
+		int low = from, high = to;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (keys[mid].compareTo(key) < 0) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+}
@@ -0,0 +1,209 @@
+package gis;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Supplier;
+
+/**
+ * a cell store organized as a SortedMap of SortedMaps keyed by the exact BigDecimal coordinates
+ * a concurrent store uses ConcurrentSkipListMaps for both levels and concurrent sets for its default cells, so that writers need no lock and readers see every cell either before or after a write
+ * a view is a store over the subMap of another store's columns, limited to a rectangle, so that it reads and writes through to that store
+ */
+final class TreeCellStore<T> implements CellStore<T> {
+
+	private final NavigableMap<BigDecimal, NavigableMap<BigDecimal, Collection<T>>> points;
+
+	/** the rectangle a view is limited to, or null if the store is not a view */
+	private final Rectangle bounds;
+
+	private final boolean concurrent;
+
+	/**
+	 * @param if the store is to be safe for several writers
+	 */
+	TreeCellStore(boolean concurrent) {
+		this(concurrent ? new ConcurrentSkipListMap<>() : new TreeMap<>(), null, concurrent);
+	}
+
+	/**
+	 * @param the columns of the store, the rectangle it is limited to, if any, and if it is safe for several writers
+	 */
+	private TreeCellStore(NavigableMap<BigDecimal, NavigableMap<BigDecimal, Collection<T>>> points, Rectangle bounds, boolean concurrent) {
+		this.points = points;
+		this.bounds = bounds;
+		this.concurrent = concurrent;
+	}
+
+	public Collection<T> get(BigDecimal x, BigDecimal y) {
+		SortedMap<BigDecimal, Collection<T>> column = points.get(x);
+		if (column == null || !CellStore.contains(bounds, x, y)) {
+			return null;
+		}
+		return column.get(y);
+	}
+
+	public Collection<T> put(BigDecimal x, BigDecimal y, Collection<T> collection) {
+		return column(x, y).put(y, collection);
+	}
+
+	public Collection<T> computeIfAbsent(BigDecimal x, BigDecimal y, Supplier<Collection<T>> factory) {
+		return column(x, y).computeIfAbsent(y, k -> factory.get());
+	}
+
+	public Set<BigDecimal> xSet() {
+		return points.keySet();
+	}
+
+	public Set<BigDecimal> ySet(BigDecimal x) {
+		return rows(points.get(x)).keySet();
+	}
+
+	public BigDecimal nextX(BigDecimal x, boolean inclusive) {
+		return inclusive ? points.ceilingKey(x) : points.higherKey(x);
+	}
+
+	public BigDecimal previousX(BigDecimal x, boolean inclusive) {
+		return inclusive ? points.floorKey(x) : points.lowerKey(x);
+	}
+
+	public BigDecimal nextY(BigDecimal x, BigDecimal y, boolean inclusive) {
+		NavigableMap<BigDecimal, Collection<T>> column = points.get(x);
+		if (column == null) {
+			return null;
+		}
+		return inclusive ? rows(column).ceilingKey(y) : rows(column).higherKey(y);
+	}
+
+	public BigDecimal previousY(BigDecimal x, BigDecimal y, boolean inclusive) {
+		NavigableMap<BigDecimal, Collection<T>> column = points.get(x);
+		if (column == null) {
+			return null;
+		}
+		return inclusive ? rows(column).floorKey(y) : rows(column).lowerKey(y);
+	}
+
+	public void forEach(CellVisitor<T> visitor) {
+		points.forEach((x, column) -> rows(column).forEach((y, values) -> visitor.visit(x, y, values)));
+	}
+
+	public int size() {
+		int size = 0;
+		for (NavigableMap<BigDecimal, Collection<T>> column : points.values()) {
+			size += rows(column).size();
+		}
+		return size;
+	}
+
+	public CellStore<T> slice(Rectangle rectangle) {
+		Rectangle range = CellStore.clamp(bounds, rectangle);
+		TreeCellStore<T> rect = new TreeCellStore<>(concurrent);
+		if (CellStore.isEmpty(range)) {
+			return rect;
+		}
+		points.subMap(range.left(), range.right()).forEach((x, yCoord) -> {
+			rect.points.put(x, newColumn(yCoord.subMap(range.bottom(), range.top())));
+		});
+		return rect;
+	}
+
+	public CellStore<T> view(Rectangle rectangle) {
+		Rectangle range = CellStore.clamp(bounds, rectangle);
+		if (CellStore.isEmpty(range)) {
+			return new TreeCellStore<>(new TreeMap<>(), range, concurrent);
+		}
+		return new TreeCellStore<>(points.subMap(range.left(), true, range.right(), false), range, concurrent);
+	}
+
+	/**
+	 * builds every column that does not exist yet bottom-up from the sorted cells, and the whole tree at once if the store is empty
+	 * a concurrent store adds each new column with putIfAbsent instead, merging into the column another writer may have added meanwhile
+	 */
+	@SuppressWarnings("unchecked")
+	public boolean load(BigDecimal[] xs, BigDecimal[] ys, Collection<T>[] cells, int size) {
+		if (bounds != null) {
+			return CellStore.super.load(xs, ys, cells, size);
+		}
+		boolean empty = points.isEmpty();
+		BigDecimal[] columnXs = new BigDecimal[size];
+		NavigableMap<BigDecimal, Collection<T>>[] columns = new NavigableMap[size];
+		int columnCount = 0;
+		boolean changed = false;
+		for (int i = 0, end; i < size; i = end) {
+			for (end = i + 1; end < size && xs[end].compareTo(xs[i]) == 0; end++) {
+			}
+			SortedMap<BigDecimal, Collection<T>> column = empty ? null : points.get(xs[i]);
+			if (column == null && concurrent) {
+				column = points.putIfAbsent(xs[i], newColumn(new SortedArrayMap<>(ys, cells, i, end)));
+				changed |= column == null;
+			} else if (column == null) {
+				columnXs[columnCount] = xs[i];
+				columns[columnCount++] = newColumn(new SortedArrayMap<>(ys, cells, i, end));
+				changed = true;
+			}
+			if (column != null) {
+				changed |= merge(column, ys, cells, i, end);
+			}
+		}
+		points.putAll(new SortedArrayMap<>(columnXs, columns, 0, columnCount));
+		return changed;
+	}
+
+	/**
+	 * helper
+	 * adds the cells [from, to) to an existing column
+	 * @return if the column changed
+	 */
+	private static <T> boolean merge(SortedMap<BigDecimal, Collection<T>> column, BigDecimal[] ys, Collection<T>[] cells, int from, int to) {
+		boolean changed = false;
+		for (int j = from; j < to; j++) {
+			Collection<T> cell = cells[j];
+			Collection<T> existing = column.computeIfAbsent(ys[j], k -> cell);
+			changed |= existing == cell || existing.addAll(cell);
+		}
+		return changed;
+	}
+
+	public Supplier<Collection<T>> collectionFactory() {
+		return concurrent ? ConcurrentHashMap::newKeySet : CellStore.super.collectionFactory();
+	}
+
+	/**
+	 * helper
+	 * @param x and y coordinate to be written
+	 * @return the column at x, created if there isnt any
+	 * @throws IllegalArgumentException if the coordinate is outside the bounds of a view
+	 */
+	private SortedMap<BigDecimal, Collection<T>> column(BigDecimal x, BigDecimal y) {
+		if (!CellStore.contains(bounds, x, y)) {
+			throw new IllegalArgumentException("key out of range");
+		}
+		return points.computeIfAbsent(x, k -> newColumn(null));
+	}
+
+	/**
+	 * helper
+	 * @param the cells to be copied into the column, or null
+	 * @return a new column of the same kind as the store
+	 */
+	private NavigableMap<BigDecimal, Collection<T>> newColumn(SortedMap<BigDecimal, Collection<T>> cells) {
+		if (concurrent) {
+			return cells == null ? new ConcurrentSkipListMap<>() : new ConcurrentSkipListMap<>(cells);
+		}
+		return cells == null ? new TreeMap<>() : new TreeMap<>(cells);
+	}
+
+	/**
+	 * helper
+	 * @param a column of the store
+	 * @return the part of the column that lies within the bounds of a view
+	 */
+	private NavigableMap<BigDecimal, Collection<T>> rows(NavigableMap<BigDecimal, Collection<T>> column) {
+		return bounds == null ? column : column.subMap(bounds.bottom(), true, bounds.top(), false);
+	}
+}
@@ -0,0 +1,118 @@
+package gis;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Interest points that readers see as a series of immutable versions while they are being updated
+ * a reader pins the current version with snapshot and keeps reading it without any lock however many updates follow, and an update builds the next version by copying only the columns and cells it touches, sharing the rest with the version before
+ * a version is reclaimed by the garbage collector once no reader holds it
+ */
+public final class VersionedInterestPoints<M> {
+
+	/**
+	 * a version of the points
+	 */
+	private record Version<M>(long number, PersistentCellStore<InterestPoint> store, InterestPoints<M> points) {
+	}
+
+	private final AtomicReference<Version<M>> current;
+
+	/**
+	 * starts from no interest points
+	 */
+	public VersionedInterestPoints() {
+		this(PersistentCellStore.empty());
+	}
+
+	/**
+	 * @param the store of the first version
+	 */
+	private VersionedInterestPoints(PersistentCellStore<InterestPoint> store) {
+		current = new AtomicReference<>(new Version<>(0, store, InterestPoints.of(store)));
+	}
+
+	/**
+	 * starts from a copy of interest points, which may change afterwards without changing the versions
+	 * @param the interest points to be copied
+	 * @return the versioned interest points, whose first version holds the copy
+	 */
+	public static <M> VersionedInterestPoints<M> of(InterestPoints<M> interestPoints) {
+		return new VersionedInterestPoints<>(PersistentCellStore.of(interestPoints.points()));
+	}
+
+	/**
+	 * @return the current version, which never changes and reads like any InterestPoints except that its collections are unmodifiable
+	 */
+	public InterestPoints<M> snapshot() {
+		return current.get().points();
+	}
+
+	/**
+	 * @return the number of updates that changed the points so far
+	 */
+	public long version() {
+		return current.get().number();
+	}
+
+	/**
+	 * makes a new version with the interest points removed and then those added, which readers see as a whole once it is returned
+	 * concurrent updates are applied one after the other, an update being worked out again if another one got in first
+	 * @param the valid interest points to be added and those to be removed
+	 * @return the new version, or the current one if nothing changed
+	 * @throws NullPointerException if an interest point is invalid
+	 */
+	public InterestPoints<M> update(Collection<InterestPoint> added, Collection<InterestPoint> removed) {
+		Map<Coordinate, Collection<InterestPoint>> additions = group(added), removals = group(removed);
+		while (true) {
+			Version<M> version = current.get();
+			PersistentCellStore<InterestPoint> store = version.store();
+			for (Coordinate coordinate : union(additions, removals)) {
+				BigDecimal x = coordinate.x(), y = coordinate.y();
+				Collection<InterestPoint> old = store.get(x, y);
+				Collection<InterestPoint> cell = old == null ? new HashSet<>() : new HashSet<>(old);
+				boolean changed = cell.removeAll(removals.getOrDefault(coordinate, Set.of()));
+				changed |= cell.addAll(additions.getOrDefault(coordinate, Set.of()));
+				if (changed) {
+					store = store.with(x, y, cell);
+				}
+			}
+			if (store == version.store()) {
+				return version.points();
+			}
+			Version<M> next = new Version<>(version.number() + 1, store, InterestPoints.of(store));
+			if (current.compareAndSet(version, next)) {
+				return next.points();
+			}
+		}
+	}
+
+	/**
+	 * helper
+	 * @return the validated interest points grouped by coordinate
+	 */
+	private static Map<Coordinate, Collection<InterestPoint>> group(Collection<InterestPoint> interestPoints) {
+		Map<Coordinate, Collection<InterestPoint>> groups = new TreeMap<>();
+		for (InterestPoint interestPoint : Objects.requireNonNull(interestPoints)) {
+			groups.computeIfAbsent(InterestPoint.validate(interestPoint).coordinate(), coordinate -> new HashSet<>()).add(interestPoint);
+		}
+		return groups;
+	}
+
+	/**
+	 * helper
+	 * @return the coordinates of both groups
+	 */
+	private static Collection<Coordinate> union(Map<Coordinate, ?> first, Map<Coordinate, ?> second) {
+		Collection<Coordinate> union = new TreeSet<>(first.keySet());
+		union.addAll(second.keySet());
+		return union;
+	}
+}